@@ -0,0 +1,78 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tokenizes documents of different size and stopword density with the {@link AnalyzingSentenceTokenizer}.
+ * 
+ * @author Shopping24 GmbH
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AnalyzingSentenceTokenizerBenchmark {
+
+   /**
+    * A single sentence, a typical product description, a comma-heavy spec list, a stopword-heavy SEO text and the
+    * same SEO text repeated to 4 MB.
+    */
+   @Param({ "sentence", "description", "specs", "seo", "seo-4mb" })
+   public String corpus;
+
+   @Param({ "true", "false" })
+   public boolean filter;
+
+   @Param({ "regex", "table" })
+   public String scanner;
+
+   private String text;
+   private Tokenizer tokenizer;
+
+   @Setup
+   public void setUp() throws IOException {
+      text = BenchmarkCorpus.load(corpus);
+
+      Map<String, String> args = new HashMap<>();
+      args.put("stopwordfile", BenchmarkCorpus.STOPWORDS);
+      args.put("filter", Boolean.toString(filter));
+      args.put("scanner", scanner);
+      AnalyzingSentenceTokenizerFactory factory = new AnalyzingSentenceTokenizerFactory(args);
+      factory.inform(new ClasspathResourceLoader(getClass().getClassLoader()));
+      tokenizer = factory.create();
+   }
+
+   @Benchmark
+   public int tokenize() throws IOException {
+      tokenizer.setReader(new StringReader(text));
+      tokenizer.reset();
+      int tokens = 0;
+      while (tokenizer.incrementToken()) {
+         tokens++;
+      }
+      tokenizer.end();
+      tokenizer.close();
+      return tokens;
+   }
+
+}
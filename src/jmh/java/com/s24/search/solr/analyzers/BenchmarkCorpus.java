@@ -0,0 +1,57 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Loads the benchmark corpora from the test resources. A corpus name like <code>seo-4mb</code> repeats the text of
+ * <code>seo</code> until it is 4 MB large.
+ * 
+ * @author Shopping24 GmbH
+ */
+public final class BenchmarkCorpus {
+
+   /**
+    * Stopwords for the benchmark corpora.
+    */
+   public static final String STOPWORDS = "corpus/stopwords.txt";
+
+   private static final Pattern REPEATED = Pattern.compile("(.+)-(\\d+)mb");
+
+   private BenchmarkCorpus() {
+      // static methods only
+   }
+
+   /**
+    * Returns the text of the given corpus.
+    */
+   public static String load(String name) throws IOException {
+      Matcher matcher = REPEATED.matcher(name);
+      if (!matcher.matches()) {
+         return read(name);
+      }
+
+      String text = read(matcher.group(1));
+      int size = Integer.parseInt(matcher.group(2)) * 1024 * 1024;
+      StringBuilder result = new StringBuilder(size + text.length());
+      while (result.length() < size) {
+         result.append(text).append(' ');
+      }
+      return result.toString();
+   }
+
+   private static String read(String name) throws IOException {
+      try (InputStream in = BenchmarkCorpus.class.getClassLoader().getResourceAsStream("corpus/" + name + ".txt")) {
+         if (in == null) {
+            throw new IllegalArgumentException("Unknown corpus " + name);
+         }
+         return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8).trim();
+      }
+   }
+
+}
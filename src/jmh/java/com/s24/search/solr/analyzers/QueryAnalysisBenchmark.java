@@ -0,0 +1,89 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tokenizes typical queries with the {@link AnalyzingSentenceTokenizer} and, as the lower bound, with a
+ * <code>KeywordTokenizer</code>. Queries without sentence terminators and commas take the fast path of the sentence
+ * tokenizer, so both should be close.
+ *
+ * @author Shopping24 GmbH
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryAnalysisBenchmark {
+
+   private static final String[] QUERIES = {
+         "schuhe",
+         "rote schuhe damen",
+         "nike air max 90 größe 42",
+         "waschmaschine 8kg",
+         "jeans herren slim fit blau",
+         "iphone 12 hülle",
+         "bettwäsche 155x220 baumwolle",
+         "sneaker weiß leder",
+   };
+
+   @Param({ "keyword", "sentence", "sentence-streaming" })
+   public String tokenizer;
+
+   @Param({ "regex", "table" })
+   public String scanner;
+
+   private Tokenizer queryTokenizer;
+   private int query;
+
+   @Setup
+   public void setUp() throws IOException {
+      if ("keyword".equals(tokenizer)) {
+         queryTokenizer = new KeywordTokenizer();
+         return;
+      }
+
+      Map<String, String> args = new HashMap<>();
+      args.put("stopwordfile", BenchmarkCorpus.STOPWORDS);
+      args.put("scanner", scanner);
+      args.put("streaming", Boolean.toString("sentence-streaming".equals(tokenizer)));
+      AnalyzingSentenceTokenizerFactory factory = new AnalyzingSentenceTokenizerFactory(args);
+      factory.inform(new ClasspathResourceLoader(getClass().getClassLoader()));
+      queryTokenizer = factory.create();
+   }
+
+   @Benchmark
+   public int tokenize() throws IOException {
+      query = (query + 1) % QUERIES.length;
+      queryTokenizer.setReader(new StringReader(QUERIES[query]));
+      queryTokenizer.reset();
+      int tokens = 0;
+      while (queryTokenizer.incrementToken()) {
+         tokens++;
+      }
+      queryTokenizer.end();
+      queryTokenizer.close();
+      return tokens;
+   }
+
+}
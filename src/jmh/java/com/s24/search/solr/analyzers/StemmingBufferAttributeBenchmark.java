@@ -0,0 +1,140 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.util.Attribute;
+import org.apache.lucene.util.AttributeFactory;
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sets the words of the <code>seo</code> corpus on a {@link StemmingBufferAttributeImpl} and captures and restores
+ * the state of each token, like a synonym or shingle filter behind the {@link StemmingBufferFilter} does. The
+ * <code>exact</code> implementation grows its buffers to the exact token length and allocates on restore, like the
+ * attribute did before; run with <code>-prof gc</code> to compare the allocation rates.
+ *
+ * @author Shopping24 GmbH
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StemmingBufferAttributeBenchmark {
+
+   @Param({ "oversize", "exact" })
+   public String growth;
+
+   private char[][] words;
+   private StemmingBufferAttribute attribute;
+   private AttributeSource source;
+
+   @Setup
+   public void setUp() throws Exception {
+      String[] split = BenchmarkCorpus.load("seo").split("\\s+");
+      words = new char[split.length][];
+      for (int i = 0; i < split.length; i++) {
+         words[i] = split[i].toCharArray();
+      }
+
+      source = new AttributeSource(
+            "exact".equals(growth) ? new ExactGrowthAttributeFactory() : AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY);
+      attribute = source.addAttribute(StemmingBufferAttribute.class);
+   }
+
+   /**
+    * Sets the original and stemmed form of each word, with new attributes per document.
+    */
+   @Benchmark
+   public int set() {
+      StemmingBufferAttribute att = source.cloneAttributes().addAttribute(StemmingBufferAttribute.class);
+      int length = 0;
+      for (char[] word : words) {
+         att.clear();
+         att.setOriginalToken(word, word.length);
+         att.setStemmedToken(word, Math.max(0, word.length - 1));
+         length += att.getStemmedTokenLength();
+      }
+      return length;
+   }
+
+   /**
+    * Captures each token and restores the previous one.
+    */
+   @Benchmark
+   public int captureAndRestore() {
+      AttributeSource.State previous = null;
+      int length = 0;
+      for (char[] word : words) {
+         attribute.clear();
+         attribute.setOriginalToken(word, word.length);
+         attribute.setStemmedToken(word, Math.max(0, word.length - 1));
+         AttributeSource.State state = source.captureState();
+         if (previous != null) {
+            source.restoreState(previous);
+            length += attribute.getOriginalTokenLength();
+         }
+         previous = state;
+      }
+      return length;
+   }
+
+   /**
+    * Creates attributes with the previous implementation.
+    */
+   private static final class ExactGrowthAttributeFactory extends AttributeFactory {
+
+      @Override
+      public AttributeImpl createAttributeInstance(Class<? extends Attribute> attClass) {
+         if (attClass == StemmingBufferAttribute.class) {
+            return new ExactGrowthAttributeImpl();
+         }
+         return AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY.createAttributeInstance(attClass);
+      }
+   }
+
+   /**
+    * The previous growth, which grows buffers to the exact length, also when restoring a state.
+    */
+   private static final class ExactGrowthAttributeImpl extends StemmingBufferAttributeImpl {
+
+      @Override
+      protected char[] assureArrayLenth(char[] array, int length) {
+         if (array.length < length) {
+            char[] newArray = new char[length];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            return newArray;
+         }
+         return array;
+      }
+
+      @Override
+      public void copyTo(AttributeImpl input) {
+         ExactGrowthAttributeImpl target = (ExactGrowthAttributeImpl) input;
+         if (target.stemmedToken.length < stemmedTokenLength) {
+            target.stemmedToken = new char[stemmedTokenLength];
+         }
+         System.arraycopy(stemmedToken, 0, target.stemmedToken, 0, stemmedTokenLength);
+         if (target.originalToken.length < originalTokenLength) {
+            target.originalToken = new char[originalTokenLength];
+         }
+         System.arraycopy(originalToken, 0, target.originalToken, 0, originalTokenLength);
+         target.stemmedTokenLength = stemmedTokenLength;
+         target.originalTokenLength = originalTokenLength;
+         target.setStemmedTokenHasBeenEmitted(isStemmedTokenHasBeenEmitted());
+      }
+   }
+
+}
@@ -0,0 +1,99 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.WordlistLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looks up every word of the <code>seo</code> corpus in a {@link CharArraySetDictionary} and a
+ * {@link PackedStopwordDictionary} with the same words, like the tokenizer does for each sentence.
+ *
+ * @author Shopping24 GmbH
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StopwordDictionaryBenchmark {
+
+   @Param({ "text", "packed" })
+   public String format;
+
+   /**
+    * Number of stopwords. The German stopword list is padded with generated words, like a large combined-language
+    * list.
+    */
+   @Param({ "139", "100000" })
+   public int size;
+
+   private StopwordDictionary dictionary;
+   private char[] text;
+   private int[] words;
+
+   @Setup
+   public void setUp() throws IOException {
+      List<String> stopwords;
+      try (InputStream in = getClass().getClassLoader().getResourceAsStream(BenchmarkCorpus.STOPWORDS)) {
+         stopwords = new ArrayList<>(WordlistLoader.getLines(in, StandardCharsets.UTF_8));
+      }
+      for (int i = 0; stopwords.size() < size; i++) {
+         stopwords.add(Integer.toString(i, Character.MAX_RADIX) + "wort");
+      }
+      dictionary = "packed".equals(format)
+            ? PackedStopwordDictionary.build(stopwords, true)
+            : new CharArraySetDictionary(CharArraySet.unmodifiableSet(new CharArraySet(stopwords, true)));
+
+      // words as start and end pairs, lower-cased like in the tokenizer
+      text = BenchmarkCorpus.load("seo").toLowerCase(Locale.ROOT).toCharArray();
+      List<Integer> bounds = new ArrayList<>();
+      for (int i = 0; i < text.length;) {
+         while (i < text.length && !Character.isLetter(text[i])) {
+            i++;
+         }
+         int start = i;
+         while (i < text.length && Character.isLetter(text[i])) {
+            i++;
+         }
+         if (i > start) {
+            bounds.add(start);
+            bounds.add(i);
+         }
+      }
+      words = new int[bounds.size()];
+      for (int i = 0; i < words.length; i++) {
+         words[i] = bounds.get(i);
+      }
+   }
+
+   @Benchmark
+   public int lookup() {
+      int stopwords = 0;
+      for (int i = 0; i < words.length; i += 2) {
+         if (dictionary.contains(text, words[i], words[i + 1] - words[i])) {
+            stopwords++;
+         }
+      }
+      return stopwords;
+   }
+
+}
@@ -0,0 +1,113 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.util.plugin.SolrCoreAware;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Closes analysis factories when their core is closed. Solr only tells request handlers, search components and a few
+ * other plugins about their core, so an analysis factory cannot add a close hook to its core. Instead, it registers
+ * with this component, which is created through the resource loader of the core while the core is loaded. The loader
+ * informs the component about the core, which then adds a close hook that closes all registered factories.
+ * <p>
+ * The component is not added to any request handler and does nothing during requests. Factories of field types that
+ * are added to a managed schema while the core is running are not closed with the core, as the loader does not inform
+ * components about the core any more.
+ *
+ * @author Shopping24 GmbH
+ */
+public class AnalysisCloseHook extends SearchComponent implements SolrCoreAware {
+
+   private static final Logger logger = LoggerFactory.getLogger(AnalysisCloseHook.class);
+
+   // one component per loader, guarded by the class lock
+   private static final Map<ResourceLoader, AnalysisCloseHook> hooks = new WeakHashMap<>();
+
+   // guarded by the class lock
+   private final List<AutoCloseable> closeables = new ArrayList<>();
+
+   /**
+    * Closes the given factory when the core of the loader is closed.
+    *
+    * @return <code>false</code> if the loader does not belong to a core, i.e. the caller has to close the factory
+    *         itself.
+    */
+   public static synchronized boolean register(ResourceLoader loader, AutoCloseable closeable) {
+      if (!(loader instanceof SolrResourceLoader)) {
+         return false;
+      }
+
+      AnalysisCloseHook hook = hooks.get(loader);
+      if (hook == null) {
+         hook = (AnalysisCloseHook) ((SolrResourceLoader) loader).newInstance(AnalysisCloseHook.class.getName(),
+               SearchComponent.class);
+         hooks.put(loader, hook);
+      }
+      hook.closeables.add(closeable);
+      return true;
+   }
+
+   @Override
+   public void inform(SolrCore core) {
+      core.addCloseHook(new CloseHook() {
+         @Override
+         public void preClose(SolrCore core) {
+            close(core.getResourceLoader());
+         }
+
+         @Override
+         public void postClose(SolrCore core) {
+            // nothing to do
+         }
+      });
+   }
+
+   /**
+    * Closes all factories registered for the loader.
+    */
+   private void close(ResourceLoader loader) {
+      List<AutoCloseable> closing;
+      synchronized (AnalysisCloseHook.class) {
+         closing = new ArrayList<>(closeables);
+         closeables.clear();
+         if (hooks.get(loader) == this) {
+            hooks.remove(loader);
+         }
+      }
+
+      for (AutoCloseable closeable : closing) {
+         try {
+            closeable.close();
+         } catch (Exception e) {
+            logger.warn("Could not close {}.", closeable, e);
+         }
+      }
+   }
+
+   @Override
+   public void prepare(ResponseBuilder rb) {
+      // nothing to do
+   }
+
+   @Override
+   public void process(ResponseBuilder rb) {
+      // nothing to do
+   }
+
+   @Override
+   public String getDescription() {
+      return "Closes the analysis factories of the schema with the core";
+   }
+
+}
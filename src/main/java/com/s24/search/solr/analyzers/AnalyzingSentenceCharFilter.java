@@ -0,0 +1,205 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.lucene.analysis.charfilter.BaseCharFilter;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Char filter which removes the sentences rejected by a {@link SentenceFilter} from the input, so that any tokenizer
+ * can split the remaining sentences into words. Offsets of the tokens are corrected to the original input, so that
+ * highlighting works on the original text.
+ * <p>
+ * The input is read in chunks of a fixed size and only the window from the current sentence up to the next sentence
+ * boundary is held in memory, like the streaming mode of the {@link AnalyzingSentenceTokenizer}. A sentence that does
+ * not fit into the maximum window size is cut at the window edge.
+ * <p>
+ * If a removed sentence follows a word without whitespace in between, e.g. a removed part of a sentence split at its
+ * commas, it is replaced by a single space. Otherwise the words around it would be joined and the end offset of the
+ * word before it would be corrected to the end of the removed sentence.
+ * <p>
+ * Char filters are created per text, so the session of the filter and the window are taken from an idle session of
+ * the current thread and given back when the char filter is closed.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class AnalyzingSentenceCharFilter extends BaseCharFilter {
+
+   private final SentenceFilter filter;
+   private final SentenceFilter.Session session;
+   private final int chunkSize;
+   private final int maxWindowSize;
+
+   // the window of the input
+   private char[] buffer;
+   private int bufferLength;
+   private int bufferOffset;
+   private int index;
+   private boolean inputExhausted;
+   private boolean started;
+   private boolean closed;
+
+   // the part of the current sentence that has not been read yet
+   private int pending;
+   private int pendingEnd;
+   private boolean pendingSpace;
+
+   // true if nothing has been read yet or the last char read is whitespace
+   private boolean separated = true;
+
+   // chars read from the filter and chars removed from the input so far
+   private int outputOffset;
+   private int removed;
+
+   /**
+    * Creates a char filter.
+    *
+    * @param input
+    *           the input.
+    * @param filter
+    *           the filter, which may be shared with other char filters.
+    * @param chunkSize
+    *           number of chars read from the input at once.
+    * @param maxWindowSize
+    *           the maximum number of chars of a single sentence held in memory. Longer sentences are cut at the window
+    *           edge.
+    */
+   public AnalyzingSentenceCharFilter(Reader input, SentenceFilter filter, int chunkSize, int maxWindowSize) {
+      super(input);
+
+      if (chunkSize < 1) {
+         throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+      }
+      if (maxWindowSize < 2) {
+         throw new IllegalArgumentException("maxWindowSize must be at least 2: " + maxWindowSize);
+      }
+
+      this.filter = filter;
+      this.session = filter.acquireSession();
+      this.chunkSize = chunkSize;
+      this.maxWindowSize = maxWindowSize;
+      this.buffer = session.scratchBuffer(chunkSize);
+   }
+
+   @Override
+   public int read(char[] cbuf, int off, int len) throws IOException {
+      if (!started) {
+         // pick up a reloaded stopword set, it is kept for the whole input
+         session.reset();
+         session.setInput(buffer, bufferLength, false);
+         started = true;
+      }
+
+      int read = 0;
+      while (read < len) {
+         if (pendingSpace) {
+            cbuf[off + read] = ' ';
+            pendingSpace = false;
+            read++;
+            outputOffset++;
+         } else if (pending < pendingEnd) {
+            int length = Math.min(len - read, pendingEnd - pending);
+            System.arraycopy(buffer, pending, cbuf, off + read, length);
+            pending += length;
+            read += length;
+            outputOffset += length;
+            separated = Character.isWhitespace(cbuf[off + read - 1]);
+         } else if (!nextSentence()) {
+            break;
+         }
+      }
+
+      return read == 0 && len > 0 ? -1 : read;
+   }
+
+   /**
+    * Moves to the next sentence. A kept sentence becomes pending, a removed sentence is recorded as an offset
+    * correction and may leave a pending space.
+    *
+    * @return <code>false</code> if the input is exhausted.
+    */
+   private boolean nextSentence() throws IOException {
+      while (index >= bufferLength) {
+         if (inputExhausted || !fill()) {
+            return false;
+         }
+      }
+
+      int sentenceEnd;
+      while ((sentenceEnd = session.nextSentenceEnd(index, bufferLength, inputExhausted,
+            maxWindowSize)) == SentenceFilter.NEED_INPUT) {
+         fill();
+      }
+
+      // Is this the only sentence in the input?
+      boolean isOnlySentence = bufferOffset + index == 0 && inputExhausted && sentenceEnd == bufferLength;
+      if (session.accept(index, sentenceEnd, isOnlySentence)) {
+         pending = index;
+         pendingEnd = sentenceEnd;
+      } else if (separated) {
+         removed += sentenceEnd - index;
+         addOffCorrectMap(outputOffset, removed);
+      } else {
+         // the space takes the place of the first char of the sentence
+         pendingSpace = true;
+         separated = true;
+         removed += sentenceEnd - index - 1;
+         addOffCorrectMap(outputOffset + 1, removed);
+      }
+
+      index = sentenceEnd;
+      return true;
+   }
+
+   /**
+    * Reads the next chunk of the input into the window. All chars before the current index are discarded first,
+    * except for the last one which is needed as look-behind for the sentence pattern. Must not be called while a
+    * sentence is pending.
+    *
+    * @return <code>false</code> if the input is exhausted.
+    */
+   private boolean fill() throws IOException {
+      boolean moved = false;
+      if (index > 1) {
+         int discard = index - 1;
+         bufferLength -= discard;
+         System.arraycopy(buffer, discard, buffer, 0, bufferLength);
+         bufferOffset += discard;
+         index -= discard;
+         pending = pendingEnd = index;
+         moved = true;
+      }
+
+      if (buffer.length - bufferLength < chunkSize) {
+         buffer = ArrayUtil.grow(buffer, bufferLength + chunkSize);
+      }
+
+      int read = input.read(buffer, bufferLength, chunkSize);
+      if (read == -1) {
+         inputExhausted = true;
+      } else {
+         bufferLength += read;
+      }
+
+      session.setInput(buffer, bufferLength, moved);
+      return !inputExhausted;
+   }
+
+   /**
+    * Closes the input and gives back the session and the window.
+    */
+   @Override
+   public void close() throws IOException {
+      try {
+         super.close();
+      } finally {
+         if (!closed) {
+            closed = true;
+            session.retainScratchBuffer(buffer);
+            filter.releaseSession(session);
+         }
+      }
+   }
+
+}
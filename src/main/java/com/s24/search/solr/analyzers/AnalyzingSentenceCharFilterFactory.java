@@ -0,0 +1,70 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.util.CharFilterFactory;
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.apache.lucene.analysis.util.ResourceLoaderAware;
+
+/**
+ * Factory of {@link AnalyzingSentenceCharFilter}s. Takes the same arguments as the
+ * {@link AnalyzingSentenceTokenizerFactory}, the input is always read in streaming mode. Unlike the tokenizer, the
+ * char filter filters by default, <code>filter="false"</code> passes the input through unchanged:
+ *
+ * <pre>
+ * &lt;charFilter class="com.s24.search.solr.analyzers.AnalyzingSentenceCharFilterFactory"
+ *             stopwordfile="list_of_stopwords.txt" /&gt;
+ * &lt;tokenizer class="solr.StandardTokenizerFactory" /&gt;
+ * </pre>
+ *
+ * @see AnalyzingSentenceCharFilter
+ *
+ * @author Shopping24 GmbH
+ */
+public class AnalyzingSentenceCharFilterFactory extends CharFilterFactory implements ResourceLoaderAware {
+
+   // pass the input through unchanged if false
+   private static final String FILTER_ARG = "filter";
+   private boolean filter = true;
+
+   // parses the args and loads the stopwords
+   private final AnalyzingSentenceTokenizerFactory config;
+
+   /**
+    * Char filter gets constructed with the configured args.
+    */
+   public AnalyzingSentenceCharFilterFactory(Map<String, String> args) {
+      super(args);
+
+      if (args.containsKey(FILTER_ARG)) {
+         filter = Boolean.parseBoolean(args.get(FILTER_ARG));
+      }
+
+      config = new AnalyzingSentenceTokenizerFactory(new HashMap<>(args));
+   }
+
+   @Override
+   public void inform(ResourceLoader loader) throws IOException {
+      config.inform(loader);
+   }
+
+   /**
+    * Returns the filter shared by all char filters of this factory.
+    */
+   public SentenceFilter getSentenceFilter() {
+      return config.getSentenceFilter();
+   }
+
+   @Override
+   public Reader create(Reader input) {
+      if (!filter) {
+         return input;
+      }
+      return new AnalyzingSentenceCharFilter(input, config.getSentenceFilter(), config.getChunkSize(),
+            config.getMaxWindowSize());
+   }
+
+}
@@ -0,0 +1,130 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.util.TokenFilterFactory;
+import org.apache.solr.analysis.TokenizerChain;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.metrics.SolrMetricsContext;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.util.plugin.SolrCoreAware;
+
+/**
+ * Publishes the metrics of all {@link AnalyzingSentenceTokenizerFactory AnalyzingSentenceTokenizerFactories} and the
+ * stem caches of all {@link StemmingBufferFilterFactory StemmingBufferFilterFactories} in the schema of a core.
+ * Solr does not register analysis factories in the metrics registry, so this component does it when the core is
+ * loaded and removes the metrics when it is closed. It does nothing during requests and does not need to be added to
+ * a request handler:
+ *
+ * <pre>
+ * &lt;searchComponent name="sentenceMetrics" class="com.s24.search.solr.analyzers.AnalyzingSentenceMetricsComponent" /&gt;
+ * </pre>
+ *
+ * The metrics are named <code>ANALYSIS.&lt;field type&gt;.&lt;index|query&gt;.&lt;metric&gt;</code> in the core
+ * registry, the stem cache metrics are named
+ * <code>ANALYSIS.&lt;field type&gt;.&lt;index|query&gt;.stemCache.&lt;metric&gt;</code>. Field types with the same
+ * analyzer for indexing and querying are published once, without <code>index</code> or <code>query</code> in the
+ * name. Field types added to a managed schema later are not registered before the next core reload.
+ *
+ * @author Shopping24 GmbH
+ */
+public class AnalyzingSentenceMetricsComponent extends SearchComponent implements SolrCoreAware {
+
+   // a factory registered twice would move its metrics to the second scope
+   private final Set<AnalyzingSentenceTokenizerFactory> factories = Collections
+         .newSetFromMap(new IdentityHashMap<>());
+   private final Set<StemmingBufferFilterFactory> stemmerFactories = Collections
+         .newSetFromMap(new IdentityHashMap<>());
+
+   @Override
+   public void inform(SolrCore core) {
+      for (Map.Entry<String, FieldType> fieldType : core.getLatestSchema().getFieldTypes().entrySet()) {
+         register(core.getSolrMetricsContext(), fieldType.getKey(), fieldType.getValue());
+      }
+
+      core.addCloseHook(new CloseHook() {
+         @Override
+         public void preClose(SolrCore core) {
+            unregister();
+         }
+
+         @Override
+         public void postClose(SolrCore core) {
+            // nothing to do
+         }
+      });
+   }
+
+   /**
+    * Registers the metrics of the factories of the analyzers of the field type. Each factory is registered once.
+    */
+   void register(SolrMetricsContext context, String name, FieldType fieldType) {
+      if (fieldType.getIndexAnalyzer() == fieldType.getQueryAnalyzer()) {
+         register(context, fieldType.getIndexAnalyzer(), name);
+      } else {
+         register(context, fieldType.getIndexAnalyzer(), name + ".index");
+         register(context, fieldType.getQueryAnalyzer(), name + ".query");
+      }
+   }
+
+   private void register(SolrMetricsContext context, Analyzer analyzer, String scope) {
+      if (!(analyzer instanceof TokenizerChain)) {
+         return;
+      }
+
+      TokenizerChain chain = (TokenizerChain) analyzer;
+      if (chain.getTokenizerFactory() instanceof AnalyzingSentenceTokenizerFactory) {
+         AnalyzingSentenceTokenizerFactory factory = (AnalyzingSentenceTokenizerFactory) chain.getTokenizerFactory();
+         if (factories.add(factory)) {
+            factory.initializeMetrics(context, scope);
+         }
+      }
+
+      for (TokenFilterFactory filterFactory : chain.getTokenFilterFactories()) {
+         if (filterFactory instanceof StemmingBufferFilterFactory
+               && ((StemmingBufferFilterFactory) filterFactory).getStemCache() != null) {
+            StemmingBufferFilterFactory factory = (StemmingBufferFilterFactory) filterFactory;
+            if (stemmerFactories.add(factory)) {
+               factory.initializeMetrics(context, scope + ".stemCache");
+            }
+         }
+      }
+   }
+
+   /**
+    * Closes all registered factories, which removes their metrics.
+    */
+   void unregister() {
+      for (AnalyzingSentenceTokenizerFactory factory : factories) {
+         factory.close();
+      }
+      factories.clear();
+      for (StemmingBufferFilterFactory factory : stemmerFactories) {
+         factory.close();
+      }
+      stemmerFactories.clear();
+   }
+
+   @Override
+   public void prepare(ResponseBuilder rb) {
+      // nothing to do
+   }
+
+   @Override
+   public void process(ResponseBuilder rb) {
+      // nothing to do
+   }
+
+   @Override
+   public String getDescription() {
+      return "Publishes the metrics of the sentence tokenizers in the schema";
+   }
+
+}
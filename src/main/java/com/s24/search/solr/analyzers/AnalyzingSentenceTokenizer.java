@@ -1,37 +1,76 @@
 package com.s24.search.solr.analyzers;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.AttributeFactory;
 
-import com.google.common.base.CharMatcher;
-import com.google.common.base.Splitter;
-import com.google.common.io.CharStreams;
-
 /**
  * Tokenizer which splits the input into sentences and emits only those sentences that do not contain too many
  * stopwords. Sentences that contain many commas are split into their comma-separated parts and analyzed per part. If
  * the input contains only a single sentence, it is always emitted.
+ * <p>
+ * By default, the whole input is read into memory before the first sentence is emitted. In streaming mode, the input
+ * is read in chunks of a fixed size and only the window from the current sentence up to the next sentence boundary is
+ * held in memory. A sentence that does not fit into the maximum window size is cut at the window edge.
+ * <p>
+ * Sentences are handled as <code>[start,end)</code> ranges over a shared char buffer, so that splitting the input
+ * does not allocate per sentence. Sentence boundaries are found either by a regular expression or by the equivalent
+ * {@link SentenceBoundaryScanner}, see {@link Scanner}. The sentences are split and analyzed by a
+ * {@link SentenceFilter}, which may be shared by many tokenizers, the tokenizer only reads the input and emits the
+ * kept sentences.
+ * <p>
+ * Documents above a configurable size can be scored in parallel, see {@link #setParallelThreshold(int)}. An input
+ * without any char that may end a sentence or split it at its commas, like most queries, is emitted as the only
+ * sentence after a single scan.
+ * <p>
+ * Instead of whole sentences, the tokenizer can emit the words of the kept sentences, see {@link Output}. Words are
+ * taken from the sentence while it is still in the buffer, so no second tokenizer is needed to split the sentences.
  * 
  * @author Shopping24 GmbH
  */
 public class AnalyzingSentenceTokenizer extends Tokenizer {
 
-   // determine sentences
-   private static final Pattern SENTENCE_PATTERN = Pattern.compile("(?<=[.?!\\|;-])\\s+(?=\\p{Lu})");
-   private static final Splitter SPACE_SPLITTER = Splitter.on(CharMatcher.WHITESPACE).trimResults();
-   private static final CharMatcher SENTENCE_NOISE = CharMatcher.DIGIT.or(
-         CharMatcher.anyOf(",;.:$!?%&/<>™®\\-–'\"|"));
-   private static final Pattern COMMA_PATTERN = Pattern.compile("(,+(?=\\D))|((?<=\\D),+)|;");
-   private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+   /**
+    * How sentence boundaries are detected.
+    */
+   public enum Scanner {
+
+      /**
+       * Find sentence boundaries with a regular expression.
+       */
+      REGEX,
+
+      /**
+       * Find sentence boundaries and comma split points in a single pass with the {@link FusedSentenceScanner}.
+       */
+      TABLE
+   }
+
+   /**
+    * What is emitted for a kept sentence.
+    */
+   public enum Output {
+
+      /**
+       * Emit each kept sentence as a single token.
+       */
+      SENTENCES,
+
+      /**
+       * Emit each word of a kept sentence as a token, i.e. each run of letters and digits. The first word after a
+       * sentence boundary or a removed sentence is moved by the position gap, see
+       * {@link AnalyzingSentenceTokenizer#setPositionGap(int)}.
+       */
+      WORDS
+   }
 
    // register attributes to manipulate
    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
@@ -39,17 +78,50 @@ public class AnalyzingSentenceTokenizer extends Tokenizer {
    private final PositionIncrementAttribute positionIncrement = addAttribute(PositionIncrementAttribute.class);
 
    // this is the internal state
-   private final StringBuilder inputBuffer = new StringBuilder();
-   private final Matcher sentenceMatcher;
+   private char[] buffer;
+   private int bufferLength;
+   private boolean bufferBorrowed;
+   private final SentenceFilter.Session session;
    private int index;
-   private boolean lastSentenceFromCommaSplit = false;
+   private int bufferOffset;
+   private boolean inputExhausted;
 
    // configuration
    private final boolean removeBadSentences;
-   private final CharArraySet stopWords;
-   private final float commaWordThreshold;
-   private final float maxStopwordRatio;
-   private final int minSentenceLength;
+   private final boolean streaming;
+   private final int chunkSize;
+   private final int maxWindowSize;
+
+   // metrics of the current document, reported in end()
+   private SentenceTokenizerMetrics metrics;
+   private boolean recording;
+   // time spent in reset() and incrementToken(), without the time of the consumer
+   private long documentNanos;
+   private int sentenceCount;
+   private int emittedCount;
+   private int commaSplitCount;
+
+   // buffers above the retained capacity are borrowed and given back at the end of the document
+   private int maxRetainedChars = Integer.MAX_VALUE;
+   private CharBufferPool bufferPool;
+
+   // large documents are segmented up front and their sentences are scored in parallel
+   private int parallelThreshold;
+   private boolean precomputed;
+   private int[] sentenceEnds = new int[0];
+   private boolean[] sentenceSplits = new boolean[0];
+   private boolean[] sentenceQualities = new boolean[0];
+   private int sentenceTotal;
+   private int sentencePosition;
+
+   // the words of the current kept sentence, which have not been emitted yet
+   private Output output = Output.SENTENCES;
+   private int positionGap;
+   private int wordIndex;
+   private int wordEnd;
+   private boolean wordEmitted;
+   private boolean gapPending;
+   private boolean boundaryAfterWords;
 
    /**
     * Construct a token stream processing the given input using the given AttributeFactory.
@@ -70,18 +142,139 @@ public class AnalyzingSentenceTokenizer extends Tokenizer {
     */
    public AnalyzingSentenceTokenizer(AttributeFactory factory, boolean removeBadSentences, CharArraySet stopWords,
          float commaWordThreshold, float maxStopwordRatio, int minSentenceLength) {
+      this(factory, removeBadSentences, new CharArraySetDictionary(stopWords), commaWordThreshold, maxStopwordRatio,
+            minSentenceLength, false, AnalyzingSentenceTokenizerFactory.DEFAULT_CHUNK_SIZE,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE, Scanner.REGEX);
+   }
+
+   /**
+    * Construct a token stream processing the given input using the given AttributeFactory.
+    * 
+    * @param factory
+    *           the factory.
+    * @param removeBadSentences
+    *           if {@code true}, sentences with too many stopwords are filtered out.
+    * @param stopWords
+    *           the stopwords. The {@link StopwordDictionary#current() current} version is taken on each reset.
+    * @param commaWordThreshold
+    *           the threshold that defines the "comma density" that, if exceeded, causes a sentence to be split into
+    *           sub-sentences that are analyzed individually.
+    * @param maxStopwordRatio
+    *           if the ratio of stopwords exceeds this threshold, the sentence is filtered out.
+    * @param minSentenceLength
+    *           a sentence must contain at least this many words, otherwise it is not analyzed and always emitted.
+    * @param streaming
+    *           if {@code true}, the input is read on demand and only a bounded window of it is held in memory.
+    * @param chunkSize
+    *           number of chars read from the input at once.
+    * @param maxWindowSize
+    *           in streaming mode, the maximum number of chars of a single sentence held in memory. Longer sentences
+    *           are cut at the window edge.
+    * @param scanner
+    *           how sentence boundaries are detected.
+    */
+   public AnalyzingSentenceTokenizer(AttributeFactory factory, boolean removeBadSentences,
+         StopwordDictionary stopWords, float commaWordThreshold, float maxStopwordRatio, int minSentenceLength,
+         boolean streaming, int chunkSize, int maxWindowSize, Scanner scanner) {
+      this(factory, new SentenceFilter(stopWords, commaWordThreshold, maxStopwordRatio, minSentenceLength, scanner,
+            Locale.GERMAN), removeBadSentences, streaming, chunkSize, maxWindowSize);
+   }
+
+   /**
+    * Construct a token stream that emits the sentences kept by the given filter.
+    * 
+    * @param factory
+    *           the factory.
+    * @param filter
+    *           the filter, which may be shared with other tokenizers.
+    * @param removeBadSentences
+    *           if {@code true}, sentences rejected by the filter are not emitted.
+    * @param streaming
+    *           if {@code true}, the input is read on demand and only a bounded window of it is held in memory.
+    * @param chunkSize
+    *           number of chars read from the input at once.
+    * @param maxWindowSize
+    *           in streaming mode, the maximum number of chars of a single sentence held in memory. Longer sentences
+    *           are cut at the window edge.
+    */
+   public AnalyzingSentenceTokenizer(AttributeFactory factory, SentenceFilter filter, boolean removeBadSentences,
+         boolean streaming, int chunkSize, int maxWindowSize) {
       super(factory);
 
+      if (chunkSize < 1) {
+         throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+      }
+      if (maxWindowSize < 2) {
+         throw new IllegalArgumentException("maxWindowSize must be at least 2: " + maxWindowSize);
+      }
+
+      this.session = filter.newSession();
       this.removeBadSentences = removeBadSentences;
-      this.stopWords = stopWords;
-      this.commaWordThreshold = commaWordThreshold;
+      this.streaming = streaming;
+      this.chunkSize = chunkSize;
+      this.maxWindowSize = maxWindowSize;
+
+      buffer = new char[chunkSize];
+   }
+
+   /**
+    * Enables parallel scoring for documents of at least the given number of chars. Such documents are split into
+    * sentences up front and the sentences are scored on a shared fork/join pool, which speeds up huge documents that
+    * would otherwise hold up a whole batch. The emitted tokens are the same as without parallel scoring. Has no effect
+    * in streaming mode.
+    * 
+    * @param parallelThreshold
+    *           the minimum number of chars, or 0 to always score sentences one by one.
+    */
+   public void setParallelThreshold(int parallelThreshold) {
+      this.parallelThreshold = parallelThreshold;
+   }
+
+   /**
+    * Sets the maximum size of the input buffer that is kept between documents. A larger buffer, which is needed for a
+    * large document without streaming, is released at the end of the document. Unlimited by default.
+    * 
+    * @param maxRetainedChars
+    *           the maximum number of chars. The buffer always holds at least one chunk.
+    */
+   public void setMaxRetainedChars(int maxRetainedChars) {
+      this.maxRetainedChars = maxRetainedChars;
+   }
+
+   /**
+    * Sets a pool to borrow buffers above the retained capacity from, which may be shared with other tokenizers.
+    * 
+    * @param bufferPool
+    *           the pool, or <code>null</code> to allocate such buffers for each document.
+    */
+   public void setBufferPool(CharBufferPool bufferPool) {
+      this.bufferPool = bufferPool;
+   }
 
-      this.maxStopwordRatio = maxStopwordRatio;
-      this.minSentenceLength = minSentenceLength;
+   /**
+    * Sets what is emitted for a kept sentence. Defaults to whole sentences.
+    */
+   public void setOutput(Output output) {
+      this.output = output;
+   }
 
-      // Use "" instead of str so don't consume chars
-      // (fillBuffer) from the input on throwing IAE below:
-      sentenceMatcher = SENTENCE_PATTERN.matcher("");
+   /**
+    * Sets the number of positions that are skipped between the words of two sentences, or of two kept sentences
+    * with a removed sentence in between. Only used if words are emitted, defaults to 0.
+    */
+   public void setPositionGap(int positionGap) {
+      this.positionGap = positionGap;
+   }
+
+   /**
+    * Sets the metrics to report each document to, which may be shared with other tokenizers. Documents are only
+    * reported while the metrics are enabled.
+    * 
+    * @param metrics
+    *           the metrics, or <code>null</code> to not report documents.
+    */
+   public void setMetrics(SentenceTokenizerMetrics metrics) {
+      this.metrics = metrics;
    }
 
    /**
@@ -94,8 +287,21 @@ public class AnalyzingSentenceTokenizer extends Tokenizer {
       super.end();
 
       // do a offset correction. Taken from PatternTokenzier
-      final int ofs = correctOffset(inputBuffer.length());
+      final int ofs = correctOffset(bufferOffset + bufferLength);
       offsetAtt.setOffset(ofs, ofs);
+
+      if (recording) {
+         metrics.record(sentenceCount, emittedCount, commaSplitCount, buffer.length, documentNanos);
+         recording = false;
+      }
+
+      shrinkBuffer();
+   }
+
+   @Override
+   public void close() throws IOException {
+      super.close();
+      shrinkBuffer();
    }
 
    /**
@@ -107,17 +313,155 @@ public class AnalyzingSentenceTokenizer extends Tokenizer {
    public void reset() throws IOException {
       super.reset();
 
-      // read full input into string buffer. This is not very memory efficient
-      // but we need a full view of the input document in order to do our
-      // pattern matching
-      inputBuffer.setLength(0);
-      inputBuffer.append(CharStreams.toString(input));
+      recording = metrics != null && metrics.isEnabled();
+      long start = 0;
+      if (recording) {
+         start = System.nanoTime();
+         documentNanos = 0;
+         sentenceCount = 0;
+         emittedCount = 0;
+         commaSplitCount = 0;
+      }
+
+      // pick up a reloaded stopword set, it is kept for the whole document
+      session.reset();
 
-      // reset matcher to the new input
-      sentenceMatcher.reset(inputBuffer);
+      bufferLength = 0;
+      inputExhausted = false;
 
       // we're starting from 0
       index = 0;
+      bufferOffset = 0;
+      wordIndex = 0;
+      wordEnd = 0;
+      wordEmitted = false;
+      gapPending = false;
+      boundaryAfterWords = false;
+
+      // without streaming, read full input into the buffer. This is not
+      // very memory efficient but we need a full view of the input document in
+      // order to do our pattern matching. In streaming mode, the buffer is
+      // filled on demand.
+      if (!streaming) {
+         while (fill()) {
+            // read on
+         }
+      }
+
+      // point the session to the new input
+      session.setInput(buffer, bufferLength, false);
+
+      precomputed = false;
+      if (!streaming && removeBadSentences && parallelThreshold > 0 && bufferLength >= parallelThreshold) {
+         scoreInParallel();
+      }
+
+      if (recording) {
+         documentNanos += System.nanoTime() - start;
+      }
+   }
+
+   /**
+    * Splits the whole input into sentences and scores them in parallel. The scanners are cheap compared to the
+    * stopword analysis, so the input is split on the calling thread and only the analysis runs in parallel.
+    */
+   private void scoreInParallel() throws IOException {
+      sentenceTotal = 0;
+      while (index < bufferLength) {
+         int sentenceEnd = nextSentenceEnd();
+         if (sentenceTotal == sentenceEnds.length) {
+            int size = ArrayUtil.oversize(sentenceTotal + 1, Integer.BYTES);
+            sentenceEnds = Arrays.copyOf(sentenceEnds, size);
+            sentenceSplits = Arrays.copyOf(sentenceSplits, size);
+            sentenceQualities = Arrays.copyOf(sentenceQualities, size);
+         }
+         sentenceEnds[sentenceTotal] = sentenceEnd;
+         sentenceSplits[sentenceTotal] = session.isLastSentenceFromCommaSplit();
+         sentenceTotal++;
+         index = sentenceEnd;
+      }
+
+      session.scoreInParallel(sentenceEnds, sentenceTotal, sentenceQualities);
+
+      // rewind to emit the scored sentences
+      index = 0;
+      session.rewind();
+      sentencePosition = 0;
+      precomputed = true;
+   }
+
+   /**
+    * Reads the next chunk of the input into the input buffer. In streaming mode, all chars before the current index
+    * are discarded first, except for the last one which is needed as look-behind for the sentence pattern.
+    * 
+    * @return <code>false</code> if the input is exhausted.
+    */
+   private boolean fill() throws IOException {
+      boolean moved = false;
+      if (streaming && index > 1) {
+         int discard = index - 1;
+         bufferLength -= discard;
+         System.arraycopy(buffer, discard, buffer, 0, bufferLength);
+         bufferOffset += discard;
+         index -= discard;
+         moved = true;
+      }
+
+      if (buffer.length - bufferLength < chunkSize) {
+         growBuffer(bufferLength + chunkSize);
+      }
+
+      int read = input.read(buffer, bufferLength, chunkSize);
+      if (read == -1) {
+         inputExhausted = true;
+      } else {
+         bufferLength += read;
+      }
+
+      session.setInput(buffer, bufferLength, moved);
+      return !inputExhausted;
+   }
+
+   /**
+    * Replaces the input buffer by a larger one, which is borrowed from the pool if it exceeds the retained capacity.
+    */
+   private void growBuffer(int minLength) {
+      boolean borrow = minLength > maxRetainedChars && bufferPool != null;
+      char[] grown = borrow ? bufferPool.borrow(minLength)
+            : new char[ArrayUtil.oversize(minLength, Character.BYTES)];
+      System.arraycopy(buffer, 0, grown, 0, bufferLength);
+      if (bufferBorrowed) {
+         bufferPool.release(buffer);
+      }
+      buffer = grown;
+      bufferBorrowed = borrow;
+   }
+
+   /**
+    * Releases an input buffer above the retained capacity, together with the per-sentence arrays of the document it
+    * was needed for. The input of the current document is dropped.
+    */
+   private void shrinkBuffer() {
+      if (buffer.length <= Math.max(maxRetainedChars, chunkSize)) {
+         return;
+      }
+
+      if (bufferBorrowed) {
+         bufferPool.release(buffer);
+         bufferBorrowed = false;
+      }
+      buffer = new char[chunkSize];
+      bufferLength = 0;
+      index = 0;
+      wordIndex = 0;
+      wordEnd = 0;
+      session.setInput(buffer, 0, false);
+
+      sentenceEnds = new int[0];
+      sentenceSplits = new boolean[0];
+      sentenceQualities = new boolean[0];
+      sentenceTotal = 0;
+      precomputed = false;
    }
 
    /**
@@ -128,14 +472,36 @@ public class AnalyzingSentenceTokenizer extends Tokenizer {
     */
    @Override
    public final boolean incrementToken() throws IOException {
+      if (!recording) {
+         return nextToken();
+      }
+
+      long start = System.nanoTime();
+      try {
+         return nextToken();
+      } finally {
+         documentNanos += System.nanoTime() - start;
+      }
+   }
+
+   /**
+    * Sets the attributes to the next token.
+    */
+   private boolean nextToken() throws IOException {
+
+      // emit the remaining words of the current sentence. They are read before
+      // the buffer is filled again, which may discard them
+      if (output == Output.WORDS && nextWord()) {
+         return true;
+      }
 
       // increment the internal token state but check that we do not overrun the
       // input buffer length
-      while (index < inputBuffer.length()) {
+      while (index < bufferLength || (!inputExhausted && fill())) {
 
          // increment the internal token state until the current state should be
          // emitted from the token stream-
-         if (incrementTokenInternal()) {
+         if (incrementTokenInternal() && (output == Output.SENTENCES || nextWord())) {
             return true;
          }
       }
@@ -149,137 +515,148 @@ public class AnalyzingSentenceTokenizer extends Tokenizer {
     */
    protected boolean incrementTokenInternal() throws IOException {
 
-      // find the next split sentence occurence from our current index
-      String sentence = null;
-      if (sentenceMatcher.find(index)) {
-
-         // get sentence up to the current match
-         sentence = inputBuffer.substring(index, sentenceMatcher.end());
-      } else {
-
-         // no more matches. Check the remaining chars as candidate
-         sentence = inputBuffer.substring(index, inputBuffer.length());
-      }
-
-      Matcher commaMatcher = COMMA_PATTERN.matcher(sentence);
-
-      // check for commas in the current sentence.
-      if (commaMatcher.find()) {
-
-         // update the comma to word ratio of the whole sentence. If we exceed
-         // the threshold,
-         int commaCount = 1;
-         while (commaMatcher.find()) {
-            commaCount++;
-         }
-         float commaToWordRatio = commaCount / (float) (CharMatcher.WHITESPACE.countIn(sentence) - 1);
-
-         // comma to word ratio does not exceed threshold
-         if (commaToWordRatio > commaWordThreshold || lastSentenceFromCommaSplit) {
-
-            commaMatcher.reset();
-            commaMatcher.find();
-            sentence = sentence.substring(0, commaMatcher.end());
-
-            lastSentenceFromCommaSplit = true;
-
-         }
+      // take the next sentence, which may already be scored
+      int sentenceEnd;
+      boolean split;
+      if (precomputed) {
+         sentenceEnd = sentenceEnds[sentencePosition];
+         split = sentenceSplits[sentencePosition];
+      } else if (bufferOffset + index == 0 && isSingleSentenceInput()) {
+         // short inputs like queries are usually a single sentence
+         sentenceEnd = bufferLength;
+         split = false;
       } else {
-         lastSentenceFromCommaSplit = false;
+         sentenceEnd = nextSentenceEnd();
+         split = session.isLastSentenceFromCommaSplit();
       }
 
       // Is this the only sentence in the input?
-      boolean isOnlySentence = sentence.length() == inputBuffer.length();
+      boolean isOnlySentence = bufferOffset + index == 0 && inputExhausted && sentenceEnd == bufferLength;
 
       // should we emit the current sentence?
-      boolean emit = isQualitySentence(sentence) || isOnlySentence || !removeBadSentences;
-      if (emit) {
-         emitSentence(sentence);
+      boolean emit;
+      if (!removeBadSentences) {
+         emit = true;
+      } else if (precomputed) {
+         emit = isOnlySentence
+               || (sentenceQualities[sentencePosition] && !session.isBoilerplate(index, sentenceEnd));
+      } else {
+         emit = session.accept(index, sentenceEnd, isOnlySentence);
+      }
+      if (output == Output.WORDS) {
+         // the gap is taken by the first word after a sentence boundary or a
+         // removed sentence, but not between the parts of a comma split
+         gapPending |= boundaryAfterWords || !emit;
+         boundaryAfterWords = emit && !split;
+         if (emit) {
+            wordIndex = index;
+            wordEnd = sentenceEnd;
+         }
+      } else if (emit) {
+         emitSentence(index, sentenceEnd);
+      }
+      if (recording) {
+         sentenceCount++;
+         emittedCount += emit ? 1 : 0;
+         commaSplitCount += split ? 1 : 0;
       }
 
       // emitted or not, increase the working index
-      index = index + sentence.length();
+      index = sentenceEnd;
+      if (precomputed) {
+         sentencePosition++;
+      }
 
       // return whether to emit the current sentence
       return emit;
    }
 
    /**
-    * Returns true if the sentence has a high quality.
-    * 
-    * @param sentence
-    *           the sentence.
+    * Returns <code>true</code> if the whole input is a single sentence without comma splits, see
+    * {@link SentenceFilter#isSingleSentence(char[], int, int)}. In streaming mode, the input is read until a char
+    * that may split it is found, the input is exhausted or the maximum window size is reached.
     */
-   private boolean isQualitySentence(CharSequence sentence) {
-      SentenceStatistics sentenceStatistics = analyzeSentence(sentence);
-
-      // check information gain
-      boolean highInformationGain = sentenceStatistics.getStopwordsRatio() <= maxStopwordRatio;
-      boolean shortSentence = sentenceStatistics.getWordCount() < minSentenceLength;
-
-      return highInformationGain || shortSentence;
+   private boolean isSingleSentenceInput() throws IOException {
+      int scanned = 0;
+      while (SentenceFilter.isSingleSentence(buffer, scanned, bufferLength - scanned)) {
+         if (inputExhausted) {
+            return true;
+         }
+         if (bufferLength >= maxWindowSize) {
+            return false;
+         }
+         scanned = bufferLength;
+         fill();
+      }
+      return false;
    }
 
    /**
-    * Emits the given sentence as a token.
-    * 
-    * @param sentence
-    *           Sentence to emit.
+    * Returns the end of the next sentence from the current index, or of its first part if the sentence is split at
+    * its commas. In streaming mode, the input is read until the next sentence boundary is found, the input is
+    * exhausted or the maximum window size is reached.
     */
-   private void emitSentence(CharSequence sentence) {
-      termAtt.setEmpty().append(sentence);
-      offsetAtt
-            .setOffset(correctOffset(index),
-                  correctOffset(index + sentence.length()));
-      positionIncrement.setPositionIncrement(1);
+   private int nextSentenceEnd() throws IOException {
+      while (true) {
+         int sentenceEnd = session.nextSentenceEnd(index, bufferLength, inputExhausted, maxWindowSize);
+         if (sentenceEnd != SentenceFilter.NEED_INPUT) {
+            return sentenceEnd;
+         }
+         fill();
+      }
    }
 
    /**
-    * Analyzes the sentence for stopwords appearances. It will remove whitespaces and symbols from the sentence to
-    * guarantee a high stopwords match.
+    * Emits the next word of the current sentence as a token.
     * 
-    * @param sentence
-    *           Sentence to analyze.
+    * @return <code>false</code> if the sentence has no more words.
     */
-   private SentenceStatistics analyzeSentence(CharSequence sentence) {
-      // remove noise: trim, noise(|<>:;...), multiple whitespace and to lower
-      String cleanSentence = WHITESPACE_PATTERN.matcher(SENTENCE_NOISE.removeFrom(
-            CharMatcher.WHITESPACE.trimFrom(sentence))).replaceAll(" ")
-            .toLowerCase(Locale.GERMAN);
-
-      // split sentence into words
-      Iterable<String> words = SPACE_SPLITTER.split(cleanSentence);
-      int stopWordCount = 0;
-      int wordCount = 0;
-      for (String w : words) {
-         if (stopWords.contains(w)) {
-            stopWordCount++;
+   private boolean nextWord() {
+      // skip to the start of the next word
+      int start = wordIndex;
+      while (start < wordEnd) {
+         int codePoint = Character.codePointAt(buffer, start, wordEnd);
+         if (Character.isLetterOrDigit(codePoint)) {
+            break;
          }
-
-         wordCount++;
+         start += Character.charCount(codePoint);
       }
-
-      // calculate ratio
-      return new SentenceStatistics(wordCount, stopWordCount);
-   }
-
-   private static class SentenceStatistics {
-
-      private final int wordCount;
-      private final int stopwordCount;
-
-      public SentenceStatistics(int wordCount, int stopwordCount) {
-         this.wordCount = wordCount;
-         this.stopwordCount = stopwordCount;
+      if (start >= wordEnd) {
+         wordIndex = wordEnd;
+         return false;
       }
 
-      public int getWordCount() {
-         return wordCount;
-      }
-
-      public float getStopwordsRatio() {
-         return wordCount > 0 ? stopwordCount / (float) wordCount : 0;
+      int end = start;
+      while (end < wordEnd) {
+         int codePoint = Character.codePointAt(buffer, end, wordEnd);
+         if (!Character.isLetterOrDigit(codePoint)) {
+            break;
+         }
+         end += Character.charCount(codePoint);
       }
+      wordIndex = end;
+
+      termAtt.copyBuffer(buffer, start, end - start);
+      offsetAtt.setOffset(correctOffset(bufferOffset + start), correctOffset(bufferOffset + end));
+      positionIncrement.setPositionIncrement(gapPending && wordEmitted ? 1 + positionGap : 1);
+      gapPending = false;
+      wordEmitted = true;
+      return true;
+   }
 
+   /**
+    * Emits the given sentence as a token.
+    * 
+    * @param start
+    *           start of the sentence in the buffer.
+    * @param end
+    *           end of the sentence in the buffer.
+    */
+   private void emitSentence(int start, int end) {
+      termAtt.copyBuffer(buffer, start, end - start);
+      offsetAtt
+            .setOffset(correctOffset(bufferOffset + start),
+                  correctOffset(bufferOffset + end));
+      positionIncrement.setPositionIncrement(1);
    }
 }
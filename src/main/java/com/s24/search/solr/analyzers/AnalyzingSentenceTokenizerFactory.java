@@ -1,7 +1,15 @@
 package com.s24.search.solr.analyzers;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.CharArraySet;
@@ -9,17 +17,27 @@ import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.analysis.util.ResourceLoaderAware;
 import org.apache.lucene.analysis.util.TokenizerFactory;
 import org.apache.lucene.util.AttributeFactory;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.metrics.SolrMetricProducer;
+import org.apache.solr.metrics.SolrMetricsContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 
 /**
+ * Factory of {@link AnalyzingSentenceTokenizer}s. Analysis factories are not registered in the metrics registry by
+ * Solr, their metrics are published by the {@link AnalyzingSentenceMetricsComponent}. The factory is closed with its
+ * core, see {@link AnalysisCloseHook}.
+ * 
  * @see AnalyzingSentenceTokenizer
  * 
  * @author Shopping24 GmbH
  */
-public class AnalyzingSentenceTokenizerFactory extends TokenizerFactory implements ResourceLoaderAware {
+public class AnalyzingSentenceTokenizerFactory extends TokenizerFactory
+      implements ResourceLoaderAware, SolrMetricProducer {
 
    private static final Logger logger = LoggerFactory.getLogger(AnalyzingSentenceTokenizerFactory.class);
 
@@ -30,7 +48,15 @@ public class AnalyzingSentenceTokenizerFactory extends TokenizerFactory implemen
    // stopwords
    private static final String STOP_WORD_FILE = "stopwordfile";
    private String stopWordFilePath;
-   private CharArraySet stopWords = null;
+   private StopwordDictionary stopWords = null;
+
+   // text or precompiled stopword files
+   private static final String STOP_WORD_FORMAT_ARG = "stopwordFormat";
+   private StopwordDictionary.Format stopWordFormat = StopwordDictionary.Format.TEXT;
+
+   // check the stopword files for changes every n seconds, 0 disables reloading
+   private static final String STOP_WORD_RELOAD_INTERVAL_ARG = "stopwordReloadInterval";
+   private int stopWordReloadInterval = 0;
 
    // the magic threshold
    @VisibleForTesting
@@ -46,6 +72,92 @@ public class AnalyzingSentenceTokenizerFactory extends TokenizerFactory implemen
    private static final String MIN_SENTENCE_LENGTH_ARG = "minSentenceLength";
    private int minSentenceLength = DEFAULT_MIN_SENTENCE_LENGTH;
 
+   // read the input in chunks instead of buffering the whole document?
+   private static final String STREAMING_ARG = "streaming";
+   private boolean streaming = false;
+
+   static final int DEFAULT_CHUNK_SIZE = 8192;
+   private static final String CHUNK_SIZE_ARG = "chunkSize";
+   private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+   static final int DEFAULT_MAX_WINDOW_SIZE = 65536;
+   private static final String MAX_WINDOW_SIZE_ARG = "maxWindowSize";
+   private int maxWindowSize = DEFAULT_MAX_WINDOW_SIZE;
+
+   // release input buffers above n chars at the end of a document
+   static final int DEFAULT_MAX_RETAINED_CHARS = 1 << 20;
+   private static final String MAX_RETAINED_CHARS_ARG = "maxRetainedChars";
+   private int maxRetainedChars = DEFAULT_MAX_RETAINED_CHARS;
+
+   // keep up to n chars of released buffers for the next large document, 0 disables pooling
+   private static final String BUFFER_POOL_SIZE_ARG = "bufferPoolSize";
+   private CharBufferPool bufferPool;
+
+   // score the sentences of documents with at least n chars in parallel, 0 disables parallel scoring
+   private static final String PARALLEL_THRESHOLD_ARG = "parallelThreshold";
+   private int parallelThreshold = 0;
+
+   // how to detect sentence boundaries
+   private static final String SCANNER_ARG = "scanner";
+   private AnalyzingSentenceTokenizer.Scanner scanner = AnalyzingSentenceTokenizer.Scanner.REGEX;
+
+   // emit whole sentences or their words
+   private static final String OUTPUT_ARG = "output";
+   private AnalyzingSentenceTokenizer.Output output = AnalyzingSentenceTokenizer.Output.SENTENCES;
+
+   // skip n positions between the words of two sentences
+   private static final String POSITION_GAP_ARG = "positionGap";
+   private int positionGap = 0;
+
+   // the language of the input, used to lower-case words
+   private static final String LOCALE_ARG = "locale";
+   private Locale locale = Locale.GERMAN;
+
+   // cache the verdicts of up to n sentences, 0 disables the cache
+   private static final String VERDICT_CACHE_SIZE_ARG = "verdictCacheSize";
+   private SentenceVerdictCache verdictCache = null;
+
+   // rules that decide sentences before their stopwords are counted, cheapest first. Rule args are prefixed with
+   // the rule name, e.g. digitRatio.minRatio, and <rule>.cost overrides the cost of a rule. None by default
+   static final String DEFAULT_QUALITY_RULES = "";
+   private static final String QUALITY_RULES_ARG = "qualityRules";
+   private static final String COST_ARG = "cost";
+   private final Map<String, Map<String, String>> qualityRuleArgs = new LinkedHashMap<>();
+   private SentenceQualityCascade qualityRules;
+
+   // reject sentences whose words occur in too many documents of the corpus, see TermFrequencySketch
+   private static final String TERM_SKETCH_ARG = "termSketch";
+   private String termSketchPath;
+
+   static final float DEFAULT_MIN_INFORMATIVENESS = 0.2f;
+   private static final String MIN_INFORMATIVENESS_ARG = "minInformativeness";
+   private float minInformativeness = DEFAULT_MIN_INFORMATIVENESS;
+   private TermFrequencySketch termSketch;
+
+   // drop sentences seen more often than n times across documents, 0 disables the boilerplate check
+   private static final String MAX_SENTENCE_FREQUENCY_ARG = "maxSentenceFrequency";
+   private int maxSentenceFrequency = 0;
+
+   // keep the sentence counts in this file, relative to the instance dir of the core
+   private static final String BOILERPLATE_SKETCH_ARG = "boilerplateSketch";
+   private String boilerplateSketchPath;
+
+   static final int DEFAULT_BOILERPLATE_SKETCH_WIDTH = 1 << 18;
+   private static final String BOILERPLATE_SKETCH_WIDTH_ARG = "boilerplateSketchWidth";
+   private int boilerplateSketchWidth = DEFAULT_BOILERPLATE_SKETCH_WIDTH;
+
+   // halve the sentence counts after n sentences, defaults to ten times the sketch width
+   private static final String BOILERPLATE_HALVING_INTERVAL_ARG = "boilerplateHalvingInterval";
+   private long boilerplateHalvingInterval = -1;
+   private BoilerplateSketch boilerplateSketch = null;
+
+   // splits and analyzes the sentences of all tokenizers
+   private SentenceFilter sentenceFilter;
+
+   // metrics of all tokenizers, only recorded while registered
+   private final SentenceTokenizerMetrics metrics = new SentenceTokenizerMetrics();
+   private SolrMetricsContext solrMetricsContext;
+
    /**
     * Tokenizer gets constructed with the configured args.
     */
@@ -68,6 +180,101 @@ public class AnalyzingSentenceTokenizerFactory extends TokenizerFactory implemen
          minSentenceLength = Integer.parseInt(args.get(MIN_SENTENCE_LENGTH_ARG));
       }
 
+      if (args.containsKey(STREAMING_ARG)) {
+         streaming = Boolean.parseBoolean(args.get(STREAMING_ARG));
+      }
+
+      if (args.containsKey(CHUNK_SIZE_ARG)) {
+         chunkSize = Integer.parseInt(args.get(CHUNK_SIZE_ARG));
+      }
+
+      if (args.containsKey(MAX_WINDOW_SIZE_ARG)) {
+         maxWindowSize = Integer.parseInt(args.get(MAX_WINDOW_SIZE_ARG));
+      }
+
+      if (args.containsKey(MAX_RETAINED_CHARS_ARG)) {
+         maxRetainedChars = Integer.parseInt(args.get(MAX_RETAINED_CHARS_ARG));
+      }
+
+      bufferPool = new CharBufferPool(
+            args.containsKey(BUFFER_POOL_SIZE_ARG) ? Long.parseLong(args.get(BUFFER_POOL_SIZE_ARG)) : 0);
+
+      if (args.containsKey(PARALLEL_THRESHOLD_ARG)) {
+         parallelThreshold = Integer.parseInt(args.get(PARALLEL_THRESHOLD_ARG));
+      }
+
+      if (args.containsKey(SCANNER_ARG)) {
+         scanner = AnalyzingSentenceTokenizer.Scanner.valueOf(args.get(SCANNER_ARG).toUpperCase(Locale.ROOT));
+      }
+
+      if (args.containsKey(OUTPUT_ARG)) {
+         output = AnalyzingSentenceTokenizer.Output.valueOf(args.get(OUTPUT_ARG).toUpperCase(Locale.ROOT));
+      }
+
+      if (args.containsKey(POSITION_GAP_ARG)) {
+         positionGap = Integer.parseInt(args.get(POSITION_GAP_ARG));
+      }
+
+      if (args.containsKey(STOP_WORD_FORMAT_ARG)) {
+         stopWordFormat = StopwordDictionary.Format.valueOf(args.get(STOP_WORD_FORMAT_ARG).toUpperCase(Locale.ROOT));
+      }
+
+      if (args.containsKey(STOP_WORD_RELOAD_INTERVAL_ARG)) {
+         stopWordReloadInterval = Integer.parseInt(args.get(STOP_WORD_RELOAD_INTERVAL_ARG));
+      }
+
+      if (args.containsKey(LOCALE_ARG)) {
+         locale = Locale.forLanguageTag(args.get(LOCALE_ARG));
+      }
+
+      if (args.containsKey(VERDICT_CACHE_SIZE_ARG)) {
+         int verdictCacheSize = Integer.parseInt(args.get(VERDICT_CACHE_SIZE_ARG));
+         if (verdictCacheSize > 0) {
+            verdictCache = new SentenceVerdictCache(verdictCacheSize);
+         }
+      }
+
+      String ruleNames = args.containsKey(QUALITY_RULES_ARG) ? args.get(QUALITY_RULES_ARG) : DEFAULT_QUALITY_RULES;
+      for (String rule : splitFileNames(ruleNames)) {
+         rule = rule.trim();
+         if (rule.isEmpty()) {
+            continue;
+         }
+
+         Map<String, String> ruleArgs = new HashMap<>();
+         ruleArgs.put(ShortSentenceRule.MIN_SENTENCE_LENGTH_ARG, Integer.toString(minSentenceLength));
+         for (Map.Entry<String, String> arg : args.entrySet()) {
+            if (arg.getKey().startsWith(rule + ".")) {
+               ruleArgs.put(arg.getKey().substring(rule.length() + 1), arg.getValue());
+            }
+         }
+         qualityRuleArgs.put(rule, ruleArgs);
+      }
+
+      if (args.containsKey(TERM_SKETCH_ARG)) {
+         termSketchPath = args.get(TERM_SKETCH_ARG);
+      }
+
+      if (args.containsKey(MIN_INFORMATIVENESS_ARG)) {
+         minInformativeness = Float.parseFloat(args.get(MIN_INFORMATIVENESS_ARG));
+      }
+
+      if (args.containsKey(MAX_SENTENCE_FREQUENCY_ARG)) {
+         maxSentenceFrequency = Integer.parseInt(args.get(MAX_SENTENCE_FREQUENCY_ARG));
+      }
+
+      if (args.containsKey(BOILERPLATE_SKETCH_ARG)) {
+         boilerplateSketchPath = args.get(BOILERPLATE_SKETCH_ARG);
+      }
+
+      if (args.containsKey(BOILERPLATE_SKETCH_WIDTH_ARG)) {
+         boilerplateSketchWidth = Integer.parseInt(args.get(BOILERPLATE_SKETCH_WIDTH_ARG));
+      }
+
+      if (args.containsKey(BOILERPLATE_HALVING_INTERVAL_ARG)) {
+         boilerplateHalvingInterval = Long.parseLong(args.get(BOILERPLATE_HALVING_INTERVAL_ARG));
+      }
+
       if (args.containsKey(STOP_WORD_FILE)) {
          stopWordFilePath = args.get(STOP_WORD_FILE);
       } else {
@@ -78,18 +285,221 @@ public class AnalyzingSentenceTokenizerFactory extends TokenizerFactory implemen
    }
 
    /**
-    * Reload the stop words
+    * Reload the stop words. Factories with the same stopword files share a single set, see {@link StopwordSetCache}.
+    * If a reload interval is set, the files are checked for changes in the background, see
+    * {@link ReloadingStopwordDictionary}, until the factory is closed.
     */
    @Override
    public void inform(ResourceLoader loader) throws IOException {
+      AnalysisCloseHook.register(loader, this);
+
       if (stopWordFilePath != null) {
          try {
-            stopWords = getWordSet(loader, stopWordFilePath, true);
+            if (stopWordReloadInterval > 0) {
+               ReloadingStopwordDictionary reloading = new ReloadingStopwordDictionary(this, loader,
+                     splitFileNames(stopWordFilePath), true, stopWordFormat);
+               reloading.start(stopWordReloadInterval, TimeUnit.SECONDS);
+               stopWords = reloading;
+            } else {
+               stopWords = StopwordSetCache.acquire(this, loader, splitFileNames(stopWordFilePath), true,
+                     stopWordFormat);
+            }
          } catch (IOException e) {
             throw new RuntimeException(e);
          }
       } else {
-         stopWords = new CharArraySet(0, false);
+         stopWords = new CharArraySetDictionary(new CharArraySet(0, false));
+      }
+
+      if (maxSentenceFrequency > 0) {
+         long halvingInterval = boilerplateHalvingInterval >= 0 ? boilerplateHalvingInterval
+               : 10L * boilerplateSketchWidth;
+         if (boilerplateSketchPath != null) {
+            boilerplateSketch = BoilerplateSketch.open(sketchFile(loader, boilerplateSketchPath),
+                  boilerplateSketchWidth, halvingInterval);
+         } else {
+            boilerplateSketch = BoilerplateSketch.create(boilerplateSketchWidth, halvingInterval);
+         }
+      }
+
+      if (termSketchPath != null) {
+         termSketch = TermFrequencySketch.open(sketchFile(loader, termSketchPath));
+      }
+
+      sentenceFilter = new SentenceFilter(stopWords, commaWordThreshold, maxStopwordRatio, minSentenceLength, scanner,
+            locale);
+      sentenceFilter.setVerdictCache(verdictCache);
+      sentenceFilter.setQualityRules(qualityRules(loader));
+      sentenceFilter.setBoilerplateSketch(boilerplateSketch, maxSentenceFrequency);
+      sentenceFilter.setMaxRetainedChars(maxRetainedChars);
+   }
+
+   /**
+    * Creates the configured quality rules, or returns <code>null</code> if there are none.
+    */
+   private SentenceQualityCascade qualityRules(ResourceLoader loader) {
+      if (qualityRuleArgs.isEmpty() && termSketch == null) {
+         return null;
+      }
+
+      List<SentenceQualityCascade.Stage> stages = new ArrayList<>();
+      for (Map.Entry<String, Map<String, String>> rule : qualityRuleArgs.entrySet()) {
+         Map<String, String> ruleArgs = rule.getValue();
+         SentenceQualityRule qualityRule = SentenceQualityCascade.createRule(rule.getKey(), ruleArgs, loader);
+         int cost = ruleArgs.containsKey(COST_ARG) ? Integer.parseInt(ruleArgs.get(COST_ARG)) : qualityRule.cost();
+         stages.add(new SentenceQualityCascade.Stage(rule.getKey(), qualityRule, cost));
+      }
+      if (termSketch != null) {
+         stages.add(new SentenceQualityCascade.Stage("informativeness",
+               new InformativenessRule(termSketch, minInformativeness)));
+      }
+      qualityRules = new SentenceQualityCascade(stages);
+      return qualityRules;
+   }
+
+   /**
+    * Resolves a relative sketch file against the instance dir of the core.
+    */
+   private static Path sketchFile(ResourceLoader loader, String file) {
+      Path path = Paths.get(file);
+      if (!path.isAbsolute() && loader instanceof SolrResourceLoader) {
+         path = ((SolrResourceLoader) loader).getInstancePath().resolve(file);
+      }
+      return path;
+   }
+
+   /**
+    * Returns the stopwords, which are a {@link ReloadingStopwordDictionary} with reload counts and timestamps if a
+    * reload interval is set.
+    */
+   public StopwordDictionary getStopWords() {
+      return stopWords;
+   }
+
+   /**
+    * Returns the filter shared by all tokenizers of this factory, which can also filter texts outside of analysis.
+    */
+   public SentenceFilter getSentenceFilter() {
+      return sentenceFilter;
+   }
+
+   /**
+    * Returns <code>true</code> if tokenizers remove bad sentences, <code>false</code> if they emit all sentences.
+    */
+   boolean isFilter() {
+      return filter;
+   }
+
+   /**
+    * Returns the number of chars read from the input at once.
+    */
+   int getChunkSize() {
+      return chunkSize;
+   }
+
+   /**
+    * Returns the maximum number of chars of a single sentence held in memory in streaming mode.
+    */
+   int getMaxWindowSize() {
+      return maxWindowSize;
+   }
+
+   /**
+    * Returns the pool of large input buffers shared by all tokenizers of this factory.
+    */
+   public CharBufferPool getBufferPool() {
+      return bufferPool;
+   }
+
+   /**
+    * Returns the cache of sentence verdicts shared by all tokenizers of this factory, with its hit rate, or
+    * <code>null</code> if no cache size is set.
+    */
+   public SentenceVerdictCache getVerdictCache() {
+      return verdictCache;
+   }
+
+   /**
+    * Returns the rules that decide sentences before their stopwords are counted, with their statistics, or
+    * <code>null</code> if there are none.
+    */
+   public SentenceQualityCascade getQualityRules() {
+      return qualityRules;
+   }
+
+   /**
+    * Returns the document frequencies of words in the corpus, or <code>null</code> if no term sketch is set.
+    */
+   public TermFrequencySketch getTermSketch() {
+      return termSketch;
+   }
+
+   /**
+    * Returns the sketch that counts sentences across documents, or <code>null</code> if boilerplate is not filtered.
+    */
+   public BoilerplateSketch getBoilerplateSketch() {
+      return boilerplateSketch;
+   }
+
+   /**
+    * Returns the metrics of all tokenizers of this factory.
+    */
+   public SentenceTokenizerMetrics getMetrics() {
+      return metrics;
+   }
+
+   /**
+    * Publishes the metrics of all tokenizers of this factory, the heap held by the stopwords and large input buffers
+    * and, if enabled, the stopword reloads, the hit rate of the verdict cache and the statistics of the quality rules.
+    */
+   @Override
+   public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+      solrMetricsContext = parentContext;
+
+      Map<String, Gauge<?>> gauges = new LinkedHashMap<>();
+      gauges.put("stopwords.ramBytesUsed", (Gauge<Long>) () -> stopWords != null ? stopWords.ramBytesUsed() : 0L);
+      gauges.put("stopwords.size", (Gauge<Integer>) () -> stopWords != null ? stopWords.size() : 0);
+      if (stopWords instanceof ReloadingStopwordDictionary) {
+         ReloadingStopwordDictionary reloading = (ReloadingStopwordDictionary) stopWords;
+         gauges.put("stopwords.reloadCount", (Gauge<Long>) reloading::getReloadCount);
+         gauges.put("stopwords.lastReloadTime", (Gauge<Long>) reloading::getLastReloadTime);
+      }
+      gauges.put("buffers.pooledBytes", (Gauge<Long>) bufferPool::getPooledBytes);
+      gauges.put("buffers.borrowedBytes", (Gauge<Long>) bufferPool::getBorrowedBytes);
+      if (verdictCache != null) {
+         gauges.put("verdictCache.hitRate", (Gauge<Double>) verdictCache::getHitRate);
+      }
+      if (qualityRules != null) {
+         for (SentenceQualityCascade.Stage stage : qualityRules.getStages()) {
+            String prefix = MetricRegistry.name("qualityRules", stage.getName());
+            gauges.put(prefix + ".evaluations", (Gauge<Long>) stage::getEvaluationCount);
+            gauges.put(prefix + ".decisionRate", (Gauge<Double>) stage::getDecisionRate);
+            gauges.put(prefix + ".averageNanos", (Gauge<Double>) stage::getAverageNanos);
+         }
+      }
+      metrics.register(parentContext.getMetricRegistry(), MetricRegistry.name("ANALYSIS", scope), gauges);
+   }
+
+   @Override
+   public SolrMetricsContext getSolrMetricsContext() {
+      return solrMetricsContext;
+   }
+
+   /**
+    * Removes the metrics from the registry, stops checking the stopword files for changes, releases the shared
+    * stopword set and writes the boilerplate sketch to disk. Called when the core is closed, tokenizers must not be
+    * used afterwards.
+    */
+   @Override
+   public void close() {
+      metrics.unregister();
+      solrMetricsContext = null;
+      if (stopWords instanceof ReloadingStopwordDictionary) {
+         ((ReloadingStopwordDictionary) stopWords).stop();
+      }
+      StopwordSetCache.release(this);
+      if (boilerplateSketch != null) {
+         boilerplateSketch.flush();
       }
    }
 
@@ -98,8 +508,15 @@ public class AnalyzingSentenceTokenizerFactory extends TokenizerFactory implemen
     */
    @Override
    public Tokenizer create(AttributeFactory factory) {
-      return new AnalyzingSentenceTokenizer(factory, filter, stopWords, commaWordThreshold, maxStopwordRatio,
-            minSentenceLength);
+      AnalyzingSentenceTokenizer tokenizer = new AnalyzingSentenceTokenizer(factory, sentenceFilter, filter,
+            streaming, chunkSize, maxWindowSize);
+      tokenizer.setParallelThreshold(parallelThreshold);
+      tokenizer.setMaxRetainedChars(maxRetainedChars);
+      tokenizer.setBufferPool(bufferPool);
+      tokenizer.setOutput(output);
+      tokenizer.setPositionGap(positionGap);
+      tokenizer.setMetrics(metrics);
+      return tokenizer;
    }
 
 }
@@ -0,0 +1,250 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.apache.solr.analysis.TokenizerChain;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
+import org.apache.solr.util.plugin.SolrCoreAware;
+
+/**
+ * Filters the sentences of a source field once at index time and writes the kept sentences to one or more target
+ * fields. Schemas that copy a text into several fields with their own analysis chains then only need to filter it
+ * once, the target fields can be analyzed with a plain tokenizer.
+ * <p>
+ * The filter is either taken from the {@link AnalyzingSentenceTokenizerFactory} of the index analyzer of a field type
+ * in the schema, or configured with the same arguments as the tokenizer factory:
+ *
+ * <pre>
+ * &lt;processor class="com.s24.search.solr.analyzers.AnalyzingSentenceUpdateProcessorFactory"&gt;
+ *   &lt;str name="source"&gt;description&lt;/str&gt;
+ *   &lt;arr name="dest"&gt;
+ *     &lt;str&gt;description_search&lt;/str&gt;
+ *     &lt;str&gt;description_stemmed&lt;/str&gt;
+ *   &lt;/arr&gt;
+ *   &lt;str name="fieldType"&gt;text_sentences&lt;/str&gt;
+ * &lt;/processor&gt;
+ * </pre>
+ *
+ * As with the tokenizer, sentences are only removed with <code>filter="true"</code>, either in the args of the
+ * processor or of the tokenizer of the field type. Otherwise, the values of the source field are copied to the target
+ * fields unchanged.
+ * <p>
+ * All values of the source field of a document are filtered as a batch, large batches in parallel on the shared pool
+ * of the {@link SentenceFilter}. The kept sentences of a value are concatenated as they appear in the text, including
+ * the whitespace that follows them, just like the tokenizer emits them. Values without kept sentences are dropped.
+ * The target fields are replaced.
+ * <p>
+ * If the filter drops boilerplate, see the <code>maxSentenceFrequency</code> argument of the tokenizer, this processor
+ * is where sentences are counted. Each value is counted once before it is filtered, analysis only reads the counts.
+ * With <code>fieldType</code>, the counts are shared with the tokenizers of the field type.
+ *
+ * @author Shopping24 GmbH
+ */
+public class AnalyzingSentenceUpdateProcessorFactory extends UpdateRequestProcessorFactory implements SolrCoreAware {
+
+   // the field to filter
+   private static final String SOURCE_ARG = "source";
+   private String source;
+
+   // the fields to write the kept sentences to
+   private static final String DEST_ARG = "dest";
+   private final List<String> dests = new ArrayList<>();
+
+   // take the filter of the tokenizer of this field type
+   private static final String FIELD_TYPE_ARG = "fieldType";
+   private String fieldType;
+
+   // the filter configured with the tokenizer args, if no field type is given. The factory holds the stopwords of
+   // the filter and is closed with the core
+   private Map<String, String> tokenizerArgs;
+   private AnalyzingSentenceTokenizerFactory tokenizerFactory;
+
+   @Override
+   public void init(@SuppressWarnings("rawtypes") NamedList args) {
+      Map<String, String> remaining = new HashMap<>();
+      for (int i = 0; i < args.size(); i++) {
+         String name = args.getName(i);
+         Object value = args.getVal(i);
+         if (SOURCE_ARG.equals(name)) {
+            source = value.toString();
+         } else if (DEST_ARG.equals(name)) {
+            if (value instanceof Collection) {
+               for (Object dest : (Collection<?>) value) {
+                  dests.add(dest.toString());
+               }
+            } else {
+               dests.add(value.toString());
+            }
+         } else if (FIELD_TYPE_ARG.equals(name)) {
+            fieldType = value.toString();
+         } else {
+            remaining.put(name, value.toString());
+         }
+      }
+
+      if (source == null) {
+         throw new SolrException(ErrorCode.SERVER_ERROR, "The " + SOURCE_ARG + " param is not set.");
+      }
+      if (dests.isEmpty()) {
+         throw new SolrException(ErrorCode.SERVER_ERROR, "The " + DEST_ARG + " param is not set.");
+      }
+      if (fieldType == null) {
+         tokenizerArgs = remaining;
+      }
+   }
+
+   @Override
+   public void inform(SolrCore core) {
+      inform(core.getResourceLoader());
+
+      core.addCloseHook(new CloseHook() {
+         @Override
+         public void preClose(SolrCore core) {
+            close();
+         }
+
+         @Override
+         public void postClose(SolrCore core) {
+            // nothing to do
+         }
+      });
+   }
+
+   /**
+    * Builds the filter from the tokenizer args, unless it is taken from a field type.
+    */
+   void inform(ResourceLoader loader) {
+      if (tokenizerArgs != null) {
+         tokenizerFactory = new AnalyzingSentenceTokenizerFactory(tokenizerArgs);
+         try {
+            tokenizerFactory.inform(loader);
+         } catch (IOException e) {
+            throw new SolrException(ErrorCode.SERVER_ERROR, "Could not configure the sentence filter", e);
+         }
+      }
+   }
+
+   /**
+    * Closes the factory of the filter built from the tokenizer args, which releases its stopwords.
+    */
+   void close() {
+      if (tokenizerFactory != null) {
+         tokenizerFactory.close();
+      }
+   }
+
+   /**
+    * Returns the tokenizer factory of the configured field type in the given schema, or the factory built from the
+    * tokenizer args.
+    */
+   AnalyzingSentenceTokenizerFactory getTokenizerFactory(IndexSchema schema) {
+      if (fieldType == null) {
+         return tokenizerFactory;
+      }
+
+      FieldType type = schema.getFieldTypeByName(fieldType);
+      if (type == null) {
+         throw new SolrException(ErrorCode.SERVER_ERROR, "Unknown field type " + fieldType);
+      }
+      if (!(type.getIndexAnalyzer() instanceof TokenizerChain)
+            || !(((TokenizerChain) type.getIndexAnalyzer())
+                  .getTokenizerFactory() instanceof AnalyzingSentenceTokenizerFactory)) {
+         throw new SolrException(ErrorCode.SERVER_ERROR,
+               "Field type " + fieldType + " does not use the AnalyzingSentenceTokenizerFactory");
+      }
+      return (AnalyzingSentenceTokenizerFactory) ((TokenizerChain) type.getIndexAnalyzer()).getTokenizerFactory();
+   }
+
+   @Override
+   public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp,
+         UpdateRequestProcessor next) {
+      AnalyzingSentenceTokenizerFactory factory = getTokenizerFactory(req.getSchema());
+      return new AnalyzingSentenceUpdateProcessor(factory.isFilter() ? factory.getSentenceFilter() : null, next);
+   }
+
+   /**
+    * Filters the source field of each added document, or copies it unchanged if the filter is <code>null</code>.
+    */
+   private final class AnalyzingSentenceUpdateProcessor extends UpdateRequestProcessor {
+
+      private final SentenceFilter filter;
+      private final List<String> texts = new ArrayList<>();
+      private final StringBuilder kept = new StringBuilder();
+
+      AnalyzingSentenceUpdateProcessor(SentenceFilter filter, UpdateRequestProcessor next) {
+         super(next);
+         this.filter = filter;
+      }
+
+      @Override
+      public void processAdd(AddUpdateCommand cmd) throws IOException {
+         SolrInputDocument doc = cmd.getSolrInputDocument();
+         Collection<Object> values = doc.getFieldValues(source);
+         if (values != null && filter == null) {
+            for (String dest : dests) {
+               doc.removeField(dest);
+               doc.setField(dest, values.size() == 1 ? values.iterator().next() : new ArrayList<>(values));
+            }
+         } else if (values != null) {
+            texts.clear();
+            for (Object value : values) {
+               if (value instanceof CharSequence) {
+                  texts.add(value.toString());
+               }
+            }
+
+            // count the sentences before filtering, so that a sentence is dropped as soon as it is too frequent
+            for (String text : texts) {
+               filter.countSentences(text);
+            }
+
+            // a single value is filtered on this thread
+            int[][] spans = texts.size() == 1 ? new int[][] { filter.filter(texts.get(0)) } : filter.filter(texts);
+
+            List<Object> filtered = new ArrayList<>(texts.size());
+            for (int i = 0; i < texts.size(); i++) {
+               String text = texts.get(i);
+               kept.setLength(0);
+               for (int j = 0; j < spans[i].length; j += 2) {
+                  kept.append(text, spans[i][j], spans[i][j + 1]);
+               }
+               String sentences = kept.toString();
+               if (!sentences.isEmpty()) {
+                  filtered.add(sentences);
+               }
+            }
+
+            for (String dest : dests) {
+               doc.removeField(dest);
+               if (filtered.size() == 1) {
+                  doc.setField(dest, filtered.get(0));
+               } else if (!filtered.isEmpty()) {
+                  doc.setField(dest, new ArrayList<>(filtered));
+               }
+            }
+            texts.clear();
+         }
+
+         super.processAdd(cmd);
+      }
+   }
+
+}
@@ -0,0 +1,313 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts how often sentences have been seen across documents, so that boilerplate sentences that are repeated all
+ * over a catalogue (shipping notes, SEO phrases, manufacturer blurbs) can be dropped even if they contain few
+ * stopwords.
+ * <p>
+ * Sentences are reduced to a MinHash {@link #fingerprint(char[], int, int) fingerprint}, so that sentences that only
+ * differ in case, punctuation or numbers get the same fingerprint, and sentences that differ in a single word often
+ * do. Fingerprints are counted in a Count-Min sketch with conservative update, which never underestimates a count and
+ * needs a fixed amount of memory no matter how many sentences are counted. After a configurable number of additions,
+ * all counts are halved, so the counts follow what has been indexed recently and repeated full reindexes of the same
+ * documents do not add up.
+ * <p>
+ * A sketch is either held on the heap or memory-mapped from a file, which keeps the counts across restarts. Sketches
+ * for the same file are shared, see {@link #open(Path, int, long)}. Counts are updated without locks, so concurrent
+ * additions of the same fingerprint may be lost, which only makes the sketch drop a sentence a little later.
+ * <p>
+ * The file format is:
+ *
+ * <pre>
+ * int    magic ("BPSK")
+ * int    version
+ * int    depth
+ * int    width
+ * long   additions since the last halving
+ * int[]  depth * width counts
+ * </pre>
+ *
+ * @author Shopping24 GmbH
+ */
+public final class BoilerplateSketch {
+
+   private static final Logger logger = LoggerFactory.getLogger(BoilerplateSketch.class);
+
+   private static final int MAGIC = 0x4250534B;
+   private static final int VERSION = 1;
+   private static final int HEADER_SIZE = 24;
+   private static final int ADDITIONS_OFFSET = 16;
+
+   // rows of the count-min sketch
+   private static final int DEPTH = 4;
+
+   // fingerprints are built from word pairs
+   private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+   // guarded by the class lock
+   private static final Map<Path, WeakReference<BoilerplateSketch>> mapped = new HashMap<>();
+
+   // the mapped file, or null for a sketch on the heap
+   private final MappedByteBuffer file;
+   private final IntBuffer counts;
+   private final int widthMask;
+   private final long halvingInterval;
+   private final AtomicLong additions;
+
+   private BoilerplateSketch(MappedByteBuffer file, IntBuffer counts, int width, long halvingInterval,
+         long additions) {
+      this.file = file;
+      this.counts = counts;
+      this.widthMask = width - 1;
+      this.halvingInterval = halvingInterval;
+      this.additions = new AtomicLong(additions);
+   }
+
+   /**
+    * Creates a sketch on the heap.
+    *
+    * @param width
+    *           the number of counts per row. Rounded up to a power of two.
+    * @param halvingInterval
+    *           the number of additions after which all counts are halved, or 0 to never halve them.
+    */
+   public static BoilerplateSketch create(int width, long halvingInterval) {
+      width = checkWidth(width);
+      return new BoilerplateSketch(null, IntBuffer.allocate(DEPTH * width), width, halvingInterval, 0);
+   }
+
+   /**
+    * Opens the sketch stored in the given file, or creates the file if it does not exist. All callers that open the
+    * same file share a single sketch as long as one of them holds it.
+    *
+    * @param width
+    *           the number of counts per row of a new file. Rounded up to a power of two. Existing files keep their
+    *           width.
+    * @param halvingInterval
+    *           the number of additions after which all counts are halved, or 0 to never halve them.
+    */
+   public static synchronized BoilerplateSketch open(Path file, int width, long halvingInterval) throws IOException {
+      Path key = file.toAbsolutePath().normalize();
+      WeakReference<BoilerplateSketch> reference = mapped.get(key);
+      BoilerplateSketch sketch = reference != null ? reference.get() : null;
+      if (sketch != null) {
+         return sketch;
+      }
+
+      width = checkWidth(width);
+      try (FileChannel channel = FileChannel.open(key, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+         long size = channel.size();
+         if (size == 0) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                  HEADER_SIZE + (long) DEPTH * width * Integer.BYTES);
+            writeHeader(buffer, width);
+            sketch = new BoilerplateSketch(buffer, counts(buffer), width, halvingInterval, 0);
+            logger.info("Created boilerplate sketch {} with {} counts per row.", key, width);
+         } else {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                  || buffer.getInt(8) != DEPTH) {
+               throw new IOException("Not a boilerplate sketch: " + key);
+            }
+            int fileWidth = buffer.getInt(12);
+            if (Integer.bitCount(fileWidth) != 1 || size != HEADER_SIZE + (long) DEPTH * fileWidth * Integer.BYTES) {
+               throw new IOException("Corrupt boilerplate sketch: " + key);
+            }
+            if (fileWidth != width) {
+               logger.warn("Boilerplate sketch {} has {} counts per row instead of {}, keeping the file.", key,
+                     fileWidth, width);
+            }
+            sketch = new BoilerplateSketch(buffer, counts(buffer), fileWidth, halvingInterval,
+                  buffer.getLong(ADDITIONS_OFFSET));
+            logger.info("Opened boilerplate sketch {} with {} counts per row.", key, fileWidth);
+         }
+      }
+
+      mapped.put(key, new WeakReference<>(sketch));
+      return sketch;
+   }
+
+   private static int checkWidth(int width) {
+      if (width < 1 || width > (1 << 28)) {
+         throw new IllegalArgumentException("width must be between 1 and 2^28: " + width);
+      }
+      return width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+   }
+
+   /**
+    * Returns a view of the counts of a mapped file.
+    */
+   private static IntBuffer counts(MappedByteBuffer buffer) {
+      ByteBuffer counts = buffer.duplicate();
+      counts.position(HEADER_SIZE);
+      return counts.slice().asIntBuffer();
+   }
+
+   private static void writeHeader(ByteBuffer buffer, int width) {
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, VERSION);
+      buffer.putInt(8, DEPTH);
+      buffer.putInt(12, width);
+      buffer.putLong(ADDITIONS_OFFSET, 0);
+   }
+
+   /**
+    * Returns the MinHash fingerprint of the sentence in <code>[start,end)</code> of the buffer. The sentence is
+    * reduced to its lower-cased words of letters, digits and other chars are dropped. The fingerprint combines the two
+    * smallest hashes of all pairs of adjacent words. A sentence with a single word is fingerprinted by that word.
+    *
+    * @return the fingerprint, or 0 if the sentence has no words.
+    */
+   public static long fingerprint(char[] buffer, int start, int end) {
+      long min1 = Long.MAX_VALUE;
+      long min2 = Long.MAX_VALUE;
+      long firstWord = 0;
+      long previousWord = 0;
+      long word = 0;
+      int words = 0;
+      boolean inWord = false;
+      for (int i = start; i <= end; i++) {
+         char c = i < end ? buffer[i] : ' ';
+         if (Character.isLetter(c)) {
+            word = (word + Character.toLowerCase(c)) * HASH_MULTIPLIER;
+            inWord = true;
+         } else if (inWord && !Character.isDigit(c)) {
+            // digits are dropped but do not end a word
+            word = mix(word);
+            words++;
+            if (words == 1) {
+               firstWord = word;
+            } else {
+               long pair = mix(previousWord * HASH_MULTIPLIER + word);
+               if (pair < min1) {
+                  min2 = min1;
+                  min1 = pair;
+               } else if (pair < min2 && pair != min1) {
+                  min2 = pair;
+               }
+            }
+            previousWord = word;
+            word = 0;
+            inWord = false;
+         }
+      }
+
+      if (words == 0) {
+         return 0;
+      }
+      return words == 1 ? firstWord : mix(min1 * HASH_MULTIPLIER + min2);
+   }
+
+   /**
+    * Finalization step of MurmurHash3, spreads all bits of the hash.
+    */
+   private static long mix(long hash) {
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      hash *= 0xc4ceb9fe1a85ec53L;
+      hash ^= hash >>> 33;
+      return hash;
+   }
+
+   /**
+    * Returns the index of the count of the fingerprint in the given row. The rows are hashed by combining both halves
+    * of the fingerprint (Kirsch and Mitzenmacher).
+    */
+   private int index(long fingerprint, int row) {
+      int hash = (int) fingerprint + row * (int) (fingerprint >>> 32);
+      return row * (widthMask + 1) + (hash & widthMask);
+   }
+
+   /**
+    * Counts the fingerprint and returns its estimated count including this addition.
+    */
+   public int add(long fingerprint) {
+      // conservative update: only the smallest counts are incremented
+      int estimate = estimate(fingerprint);
+      if (estimate < Integer.MAX_VALUE) {
+         estimate++;
+         for (int row = 0; row < DEPTH; row++) {
+            int index = index(fingerprint, row);
+            if (counts.get(index) < estimate) {
+               counts.put(index, estimate);
+            }
+         }
+      }
+
+      if (halvingInterval > 0 && additions.incrementAndGet() >= halvingInterval) {
+         halve();
+      }
+      return estimate;
+   }
+
+   /**
+    * Returns the estimated count of the fingerprint.
+    */
+   public int estimate(long fingerprint) {
+      int estimate = Integer.MAX_VALUE;
+      for (int row = 0; row < DEPTH; row++) {
+         estimate = Math.min(estimate, counts.get(index(fingerprint, row)));
+      }
+      return estimate;
+   }
+
+   /**
+    * Halves all counts.
+    */
+   private synchronized void halve() {
+      if (additions.get() < halvingInterval) {
+         // another thread has just halved the counts
+         return;
+      }
+
+      for (int index = 0; index < counts.capacity(); index++) {
+         counts.put(index, counts.get(index) >>> 1);
+      }
+      additions.set(0);
+   }
+
+   /**
+    * Writes the counts and the number of additions since the last halving of a memory-mapped sketch to disk. Until
+    * then, the counts are written back by the operating system at its own pace, and the number of additions is lost.
+    * Called by {@link AnalyzingSentenceTokenizerFactory#close()} when the core is closed, see
+    * {@link AnalysisCloseHook}.
+    */
+   public synchronized void flush() {
+      if (file != null) {
+         file.putLong(ADDITIONS_OFFSET, additions.get());
+         file.force();
+      }
+   }
+
+   /**
+    * Returns the number of additions since the last halving.
+    */
+   public long additions() {
+      return additions.get();
+   }
+
+   /**
+    * Returns the number of counts per row.
+    */
+   public int width() {
+      return widthMask + 1;
+   }
+
+}
@@ -0,0 +1,61 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.Locale;
+
+/**
+ * Lower-cases words in place for the stopword lookup. Latin-1 chars are mapped with a precomputed table, all other
+ * code points with {@link Character#toLowerCase(int)}.
+ * <p>
+ * Lower-casing only depends on the language for Turkish and Azerbaijani, where the dotless capital <code>I</code> is
+ * lower-cased to a dotless <code>ı</code>. The rules of other languages that change the length of a word, like the
+ * Lithuanian dots above, are not applied, as words are lower-cased in place.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class CaseFolder {
+
+   private static final int TABLE_SIZE = 256;
+
+   private static final CaseFolder DEFAULT = new CaseFolder(false);
+   private static final CaseFolder TURKIC = new CaseFolder(true);
+
+   private final char[] table = new char[TABLE_SIZE];
+
+   private CaseFolder(boolean turkic) {
+      for (int c = 0; c < TABLE_SIZE; c++) {
+         table[c] = (char) Character.toLowerCase(c);
+      }
+      if (turkic) {
+         table['I'] = '\u0131';
+      }
+   }
+
+   /**
+    * Returns the case folder for the given language.
+    */
+   public static CaseFolder forLocale(Locale locale) {
+      String language = locale.getLanguage();
+      return "tr".equals(language) || "az".equals(language) ? TURKIC : DEFAULT;
+   }
+
+   /**
+    * Lower-cases the chars in <code>[offset,offset+length)</code> of the buffer in place.
+    */
+   public void toLowerCase(char[] buffer, int offset, int length) {
+      int end = offset + length;
+      for (int i = offset; i < end; i++) {
+         char c = buffer[i];
+         if (c < TABLE_SIZE) {
+            buffer[i] = table[c];
+         } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(buffer[i + 1])) {
+            // supplementary code points are lower-cased to supplementary code points
+            int codePoint = Character.toLowerCase(Character.toCodePoint(c, buffer[i + 1]));
+            Character.toChars(codePoint, buffer, i);
+            i++;
+         } else {
+            buffer[i] = Character.toLowerCase(c);
+         }
+      }
+   }
+
+}
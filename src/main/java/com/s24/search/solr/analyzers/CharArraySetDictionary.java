@@ -0,0 +1,55 @@
+package com.s24.search.solr.analyzers;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * {@link StopwordDictionary} backed by a {@link CharArraySet}.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class CharArraySetDictionary implements StopwordDictionary {
+
+   private final CharArraySet set;
+
+   public CharArraySetDictionary(CharArraySet set) {
+      this.set = set;
+   }
+
+   @Override
+   public boolean contains(char[] text, int offset, int length) {
+      return set.contains(text, offset, length);
+   }
+
+   @Override
+   public int size() {
+      return set.size();
+   }
+
+   /**
+    * Returns the underlying set.
+    */
+   public CharArraySet getSet() {
+      return set;
+   }
+
+   /**
+    * Estimates the heap of the set's hash table: the table arrays for keys and values plus one char array per word.
+    */
+   @Override
+   public long ramBytesUsed() {
+      int capacity = 8;
+      while (set.size() + (set.size() >> 2) > capacity) {
+         capacity <<= 1;
+      }
+
+      long bytes = 2 * RamUsageEstimator.alignObjectSize(
+            RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * capacity);
+      for (Object word : set) {
+         bytes += RamUsageEstimator.alignObjectSize(
+               RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) Character.BYTES * ((char[]) word).length);
+      }
+      return bytes;
+   }
+
+}
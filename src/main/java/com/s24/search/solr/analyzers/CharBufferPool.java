@@ -0,0 +1,89 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Pool of large input buffers, shared by all tokenizers of a factory. Tokenizers are reused per thread and field, so
+ * a tokenizer that keeps the buffer of the largest document it has seen retains it for the lifetime of the core.
+ * Instead, buffers above the retained capacity of a tokenizer are borrowed from this pool and given back at the end
+ * of the document.
+ * <p>
+ * The pool keeps returned buffers up to a bounded total size, larger buffers are left to the garbage collector. A
+ * borrowed buffer is the smallest pooled buffer that is large enough, or a new one if there is none.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class CharBufferPool {
+
+   private final long maxPooledChars;
+
+   // guarded by this
+   private final List<char[]> buffers = new ArrayList<>();
+   private long pooledChars;
+   private long borrowedChars;
+
+   /**
+    * Creates a pool.
+    *
+    * @param maxPooledChars
+    *           the maximum number of chars of all pooled buffers, or 0 to not pool buffers.
+    */
+   public CharBufferPool(long maxPooledChars) {
+      if (maxPooledChars < 0) {
+         throw new IllegalArgumentException("maxPooledChars must not be negative: " + maxPooledChars);
+      }
+      this.maxPooledChars = maxPooledChars;
+   }
+
+   /**
+    * Borrows a buffer of at least the given length. Its content is undefined.
+    */
+   public synchronized char[] borrow(int minLength) {
+      int best = -1;
+      for (int i = 0; i < buffers.size(); i++) {
+         int length = buffers.get(i).length;
+         if (length >= minLength && (best == -1 || length < buffers.get(best).length)) {
+            best = i;
+         }
+      }
+
+      char[] buffer;
+      if (best != -1) {
+         buffer = buffers.remove(best);
+         pooledChars -= buffer.length;
+      } else {
+         buffer = new char[ArrayUtil.oversize(minLength, Character.BYTES)];
+      }
+      borrowedChars += buffer.length;
+      return buffer;
+   }
+
+   /**
+    * Gives back a borrowed buffer. It is pooled if the pool has room for it.
+    */
+   public synchronized void release(char[] buffer) {
+      borrowedChars -= buffer.length;
+      if (pooledChars + buffer.length <= maxPooledChars) {
+         buffers.add(buffer);
+         pooledChars += buffer.length;
+      }
+   }
+
+   /**
+    * Returns the bytes held by pooled buffers.
+    */
+   public synchronized long getPooledBytes() {
+      return pooledChars * Character.BYTES;
+   }
+
+   /**
+    * Returns the bytes held by borrowed buffers, i.e. by tokenizers in the middle of a large document.
+    */
+   public synchronized long getBorrowedBytes() {
+      return borrowedChars * Character.BYTES;
+   }
+
+}
@@ -0,0 +1,54 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.Map;
+
+/**
+ * Accepts sentences in which the ratio of digits to letters and digits is at least <code>minRatio</code>. Such
+ * sentences are measures and specs, like "90% cotton, size 42", whose digits are not counted as words by the
+ * stopword analysis:
+ *
+ * <pre>
+ * qualityRules="shortSentence,digitRatio" digitRatio.minRatio="0.3"
+ * </pre>
+ *
+ * @author Shopping24 GmbH
+ */
+public class DigitRatioRule implements SentenceQualityRule {
+
+   static final String MIN_RATIO_ARG = "minRatio";
+   private final float minRatio;
+
+   /**
+    * Rule gets constructed with the configured args.
+    */
+   public DigitRatioRule(Map<String, String> args) {
+      String minRatio = args.get(MIN_RATIO_ARG);
+      if (minRatio == null) {
+         throw new IllegalArgumentException("The " + MIN_RATIO_ARG + " param is not set.");
+      }
+      this.minRatio = Float.parseFloat(minRatio);
+   }
+
+   @Override
+   public Decision decide(char[] buffer, int start, int end) {
+      int digits = 0;
+      int letters = 0;
+      for (int i = start; i < end; i++) {
+         char c = buffer[i];
+         if (c >= '0' && c <= '9') {
+            digits++;
+         } else if (Character.isLetter(c)) {
+            letters++;
+         }
+      }
+
+      int total = digits + letters;
+      return total > 0 && digits >= minRatio * total ? Decision.ACCEPT : Decision.ABSTAIN;
+   }
+
+   @Override
+   public int cost() {
+      return 10;
+   }
+
+}
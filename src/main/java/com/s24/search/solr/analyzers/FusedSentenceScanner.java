@@ -0,0 +1,237 @@
+package com.s24.search.solr.analyzers;
+
+import org.apache.lucene.util.ArrayUtil;
+
+import com.google.common.base.CharMatcher;
+
+/**
+ * Finds the end of a sentence, its comma split points and its whitespace count in a single walk over the buffer.
+ * Sentence boundaries are the same as found by {@link SentenceBoundaryScanner}, comma split points are the same as
+ * the matches of <code>(,+(?=\D))|((?&lt;=\D),+)|;</code> restricted to the sentence.
+ * <p>
+ * The split points are cached, so splitting a sentence with many commas into its parts does not rescan the rest of
+ * the sentence for each part. Instances hold the state of the last scanned sentence and must not be shared.
+ *
+ * @author Shopping24 GmbH
+ */
+final class FusedSentenceScanner {
+
+   private static final int COMMAS = 0;
+   private static final int SEMICOLON = 1;
+
+   // the current sentence
+   private int start;
+   private int end;
+   private int scannedTo;
+   private int whitespaceCount;
+   private boolean cacheable;
+
+   // raw comma runs and semicolons as triples of start, end and type
+   private int[] runs = new int[48];
+   private int runCount;
+
+   // comma matches as triples of start, end and whether the match depends on the char before it
+   private int[] matches = new int[48];
+   private int matchCount;
+   private int matchStart;
+   private int nextMatch;
+
+   /**
+    * Walks the buffer from the given position up to the next sentence boundary and records commas and whitespace on
+    * the way. {@link #finish(char[], int, boolean)} has to be called once the end of the sentence is known.
+    *
+    * @param buffer
+    *           the text.
+    * @param from
+    *           start of the sentence.
+    * @param limit
+    *           end of the text in the buffer.
+    * @return the end of the sentence boundary, or <code>-1</code> if there is none up to the limit.
+    */
+   int scan(char[] buffer, int from, int limit) {
+      start = from;
+      end = -1;
+      cacheable = false;
+      whitespaceCount = 0;
+      runCount = 0;
+
+      for (int i = from; i < limit; i++) {
+         char c = buffer[i];
+         if (c == ',') {
+            int runStart = i;
+            while (i + 1 < limit && buffer[i + 1] == ',') {
+               i++;
+            }
+            addRun(runStart, i + 1, COMMAS);
+         } else if (c == ';') {
+            addRun(i, i + 1, SEMICOLON);
+         } else if (SentenceBoundaryScanner.isWhitespace(c)) {
+            int runStart = i;
+            while (i + 1 < limit && SentenceBoundaryScanner.isWhitespace(buffer[i + 1])) {
+               i++;
+            }
+            whitespaceCount += i + 1 - runStart;
+
+            // same as the boundary scanner, the char before the sentence counts as terminator
+            if (runStart > 0 && SentenceBoundaryScanner.isTerminator(buffer[runStart - 1]) && i + 1 < limit
+                  && SentenceBoundaryScanner.isUppercase(buffer, i + 1, limit)) {
+               scannedTo = i + 1;
+               return scannedTo;
+            }
+         } else if (CharMatcher.WHITESPACE.matches(c)) {
+            whitespaceCount++;
+         }
+      }
+
+      scannedTo = limit;
+      return -1;
+   }
+
+   /**
+    * Sets the end of the current sentence and computes its comma split points.
+    *
+    * @param buffer
+    *           the text.
+    * @param sentenceEnd
+    *           end of the sentence, at most the position the scan stopped at.
+    * @param cacheable
+    *           whether the parts of the sentence after a comma split may be taken from the cache. This is only the
+    *           case if the end of the sentence does not depend on the buffer content after it.
+    */
+   void finish(char[] buffer, int sentenceEnd, boolean cacheable) {
+      this.end = sentenceEnd;
+      this.cacheable = cacheable;
+
+      // the sentence was cut before the scanned end
+      if (sentenceEnd < scannedTo) {
+         whitespaceCount = 0;
+         for (int i = start; i < sentenceEnd; i++) {
+            if (CharMatcher.WHITESPACE.matches(buffer[i])) {
+               whitespaceCount++;
+            }
+         }
+      }
+
+      computeMatches(buffer, start);
+   }
+
+   /**
+    * Forgets the current sentence, e.g. because the buffer content has moved.
+    */
+   void reset() {
+      cacheable = false;
+   }
+
+   /**
+    * Returns <code>true</code> if the given position is within the current sentence after one of its split points, so
+    * the sentence end and the remaining split points are known.
+    */
+   boolean continues(int index) {
+      return cacheable && index > start && index < end;
+   }
+
+   /**
+    * Returns the end of the current sentence.
+    */
+   int end() {
+      return end;
+   }
+
+   /**
+    * Returns the ratio of commas to words of the whole sentence.
+    */
+   float commaToWordRatio() {
+      return matchCount / (float) (whitespaceCount - 1);
+   }
+
+   /**
+    * Returns the end of the first comma split point in the part of the sentence that starts at the given position,
+    * which is either the start of the sentence or the end of a split point.
+    *
+    * @return the end of the split point, or <code>-1</code> if there is none.
+    */
+   int nextCommaEnd(char[] buffer, int index) {
+      while (nextMatch < matchCount && matches[3 * nextMatch] < index) {
+         nextMatch++;
+      }
+      if (nextMatch == matchCount) {
+         return -1;
+      }
+
+      // a part is matched on its own, so a match that needs the char before
+      // the part is none. Matches after that may differ, too.
+      if (index > matchStart && matches[3 * nextMatch] == index && matches[3 * nextMatch + 2] != 0) {
+         computeMatches(buffer, index);
+         return nextCommaEnd(buffer, index);
+      }
+
+      return matches[3 * nextMatch + 1];
+   }
+
+   /**
+    * Computes the comma matches within <code>[regionStart,end)</code> from the raw comma runs. The regex cannot look
+    * around the region, so a run at the end of the region is not followed by a non-digit and a run at the start of
+    * the region is not preceded by one.
+    */
+   private void computeMatches(char[] buffer, int regionStart) {
+      matchStart = regionStart;
+      matchCount = 0;
+      nextMatch = 0;
+
+      for (int r = 0; r < runCount; r++) {
+         int i = Math.max(runs[3 * r], regionStart);
+         int runEnd = Math.min(runs[3 * r + 1], end);
+         if (i >= runEnd) {
+            continue;
+         }
+
+         if (runs[3 * r + 2] == SEMICOLON) {
+            addMatch(i, runEnd, false);
+            continue;
+         }
+
+         while (i < runEnd) {
+            if (runEnd < end && !isDigit(buffer[runEnd])) {
+               // ,+(?=\D) matches the whole run
+               addMatch(i, runEnd, false);
+               i = runEnd;
+            } else if (runEnd - i >= 2) {
+               // ,+(?=\D) backtracks to the last comma in the run
+               addMatch(i, runEnd - 1, false);
+               i = runEnd - 1;
+            } else if (i > regionStart && !isDigit(buffer[i - 1])) {
+               // (?<=\D),+
+               addMatch(i, runEnd, true);
+               i = runEnd;
+            } else {
+               i = runEnd;
+            }
+         }
+      }
+   }
+
+   private static boolean isDigit(char c) {
+      return c >= '0' && c <= '9';
+   }
+
+   private void addRun(int runStart, int runEnd, int type) {
+      if (3 * runCount + 3 > runs.length) {
+         runs = ArrayUtil.grow(runs, 3 * runCount + 3);
+      }
+      runs[3 * runCount] = runStart;
+      runs[3 * runCount + 1] = runEnd;
+      runs[3 * runCount + 2] = type;
+      runCount++;
+   }
+
+   private void addMatch(int from, int to, boolean lookBehind) {
+      if (3 * matchCount + 3 > matches.length) {
+         matches = ArrayUtil.grow(matches, 3 * matchCount + 3);
+      }
+      matches[3 * matchCount] = from;
+      matches[3 * matchCount + 1] = to;
+      matches[3 * matchCount + 2] = lookBehind ? 1 : 0;
+      matchCount++;
+   }
+
+}
@@ -0,0 +1,42 @@
+package com.s24.search.solr.analyzers;
+
+/**
+ * Rejects sentences whose words are too common in the corpus, i.e. whose mean informativeness in a
+ * {@link TermFrequencySketch} is below a threshold. Catalogue phrases like "versandkostenfrei bestellen" contain no
+ * stopwords, but their words occur in a large part of all documents. Other sentences are left to the other rules and
+ * the stopwords.
+ * <p>
+ * The rule is configured by the <code>termSketch</code> and <code>minInformativeness</code> args of the
+ * {@link AnalyzingSentenceTokenizerFactory}.
+ *
+ * @author Shopping24 GmbH
+ */
+public class InformativenessRule implements SentenceQualityRule {
+
+   private final TermFrequencySketch sketch;
+   private final float minInformativeness;
+
+   /**
+    * @param minInformativeness
+    *           sentences with a lower mean informativeness of their words are rejected.
+    */
+   public InformativenessRule(TermFrequencySketch sketch, float minInformativeness) {
+      this.sketch = sketch;
+      this.minInformativeness = minInformativeness;
+   }
+
+   @Override
+   public Decision decide(char[] buffer, int start, int end) {
+      double informativeness = sketch.meanInformativeness(buffer, start, end);
+      return informativeness >= 0 && informativeness < minInformativeness ? Decision.REJECT : Decision.ABSTAIN;
+   }
+
+   /**
+    * A pass over the chars and a few reads from the sketch per word.
+    */
+   @Override
+   public int cost() {
+      return 30;
+   }
+
+}
@@ -0,0 +1,354 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.analysis.WordlistLoader;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.SuppressForbidden;
+
+/**
+ * {@link StopwordDictionary} that packs all words into a single char array and finds them with an open-addressing
+ * hash table over word ids. Compared to a {@link org.apache.lucene.analysis.CharArraySet}, there is no object per
+ * word, and the table slots hold the hash of their word, so a lookup touches one slot per probe and compares chars
+ * only if the hash matches.
+ * <p>
+ * Dictionaries are precompiled from text files with {@link #main(String[])} and stored in a binary format. Loading
+ * a dictionary copies the arrays to the heap with a few bulk reads instead of parsing and hashing every word, and
+ * validates them, so that a corrupt file is rejected on load instead of failing lookups:
+ *
+ * <pre>
+ * int       magic, version, flags (1 = ignore case), word count, char count, table size
+ * int[]     word offsets into the chars, word count + 1 entries
+ * int[]     table of hash and word id + 1 pairs, 0 marks an empty slot
+ * char[]    the words, lower-cased if case is ignored
+ * </pre>
+ *
+ * All values are big-endian.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class PackedStopwordDictionary implements StopwordDictionary {
+
+   private static final int MAGIC = 0x53574443;
+   private static final int VERSION = 1;
+   private static final int HEADER_BYTES = 6 * Integer.BYTES;
+   private static final int IGNORE_CASE = 1;
+
+   private final boolean ignoreCase;
+   private final int[] offsets;
+   private final int[] table;
+   private final int mask;
+   private final char[] chars;
+
+   private PackedStopwordDictionary(boolean ignoreCase, int[] offsets, int[] table, char[] chars) {
+      this.ignoreCase = ignoreCase;
+      this.offsets = offsets;
+      this.table = table;
+      this.mask = table.length / 2 - 1;
+      this.chars = chars;
+   }
+
+   /**
+    * Builds a dictionary from the given words. Duplicates are dropped.
+    */
+   public static PackedStopwordDictionary build(Iterable<String> words, boolean ignoreCase) {
+      Set<String> unique = new LinkedHashSet<>();
+      for (String word : words) {
+         unique.add(ignoreCase ? lowerCase(word) : word);
+      }
+
+      int charCount = 0;
+      for (String word : unique) {
+         charCount += word.length();
+      }
+      int tableSize = 2;
+      while (tableSize < 2 * unique.size()) {
+         tableSize <<= 1;
+      }
+
+      int[] offsets = new int[unique.size() + 1];
+      int[] table = new int[2 * tableSize];
+      char[] chars = new char[charCount];
+      int id = 0;
+      for (String word : unique) {
+         int offset = offsets[id];
+         word.getChars(0, word.length(), chars, offset);
+         offsets[id + 1] = offset + word.length();
+
+         int hash = hash(chars, offset, word.length(), false);
+         int slot = hash & (tableSize - 1);
+         while (table[2 * slot + 1] != 0) {
+            slot = (slot + 1) & (tableSize - 1);
+         }
+         table[2 * slot] = hash;
+         table[2 * slot + 1] = id + 1;
+         id++;
+      }
+
+      return new PackedStopwordDictionary(ignoreCase, offsets, table, chars);
+   }
+
+   /**
+    * Loads a compiled dictionary file into the heap. The file is read through a memory mapping, which is not kept.
+    */
+   public static PackedStopwordDictionary load(Path file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+         return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+   }
+
+   /**
+    * Reads a compiled dictionary from the remaining bytes of the given buffer into the heap. The position of the
+    * buffer is not changed.
+    */
+   public static PackedStopwordDictionary read(ByteBuffer buffer) throws IOException {
+      ByteBuffer in = buffer.duplicate();
+      try {
+         if (in.getInt() != MAGIC) {
+            throw new IOException("Not a packed stopword dictionary.");
+         }
+         int version = in.getInt();
+         if (version != VERSION) {
+            throw new IOException("Unsupported packed stopword dictionary version " + version + ".");
+         }
+         boolean ignoreCase = (in.getInt() & IGNORE_CASE) != 0;
+         int wordCount = in.getInt();
+         int charCount = in.getInt();
+         int tableSize = in.getInt();
+         if (wordCount < 0 || charCount < 0 || Integer.bitCount(tableSize) != 1 || tableSize <= wordCount) {
+            throw new IOException("Corrupt packed stopword dictionary header.");
+         }
+
+         int[] offsets = new int[wordCount + 1];
+         in.asIntBuffer().get(offsets);
+         in.position(in.position() + offsets.length * Integer.BYTES);
+         int[] table = new int[2 * tableSize];
+         in.asIntBuffer().get(table);
+         in.position(in.position() + table.length * Integer.BYTES);
+         char[] chars = new char[charCount];
+         in.asCharBuffer().get(chars);
+
+         validate(offsets, table, chars);
+         return new PackedStopwordDictionary(ignoreCase, offsets, table, chars);
+      } catch (BufferUnderflowException e) {
+         throw new IOException("Truncated packed stopword dictionary.", e);
+      }
+   }
+
+   /**
+    * Checks that the offsets are ascending and within the chars, and that the table holds every word exactly once,
+    * with its hash, where a lookup finds it.
+    */
+   private static void validate(int[] offsets, int[] table, char[] chars) throws IOException {
+      int wordCount = offsets.length - 1;
+      if (offsets[0] != 0 || offsets[wordCount] != chars.length) {
+         throw new IOException("Corrupt packed stopword dictionary offsets.");
+      }
+      for (int id = 0; id < wordCount; id++) {
+         if (offsets[id] > offsets[id + 1]) {
+            throw new IOException("Corrupt packed stopword dictionary offsets.");
+         }
+      }
+
+      int tableSize = table.length / 2;
+      int mask = tableSize - 1;
+      boolean[] seen = new boolean[wordCount];
+      for (int slot = 0; slot < tableSize; slot++) {
+         int id = table[2 * slot + 1];
+         if (id == 0) {
+            continue;
+         }
+         if (id < 0 || id > wordCount || seen[id - 1]) {
+            throw new IOException("Corrupt packed stopword dictionary table.");
+         }
+         seen[id - 1] = true;
+
+         int hash = hash(chars, offsets[id - 1], offsets[id] - offsets[id - 1], false);
+         if (table[2 * slot] != hash) {
+            throw new IOException("Corrupt packed stopword dictionary table.");
+         }
+         // a lookup probes from the home slot of the word up to the first empty slot
+         for (int probe = hash & mask; probe != slot; probe = (probe + 1) & mask) {
+            if (table[2 * probe + 1] == 0) {
+               throw new IOException("Corrupt packed stopword dictionary table.");
+            }
+         }
+      }
+      for (boolean found : seen) {
+         if (!found) {
+            throw new IOException("Corrupt packed stopword dictionary table.");
+         }
+      }
+   }
+
+   /**
+    * Returns the dictionary in the binary format.
+    */
+   public ByteBuffer toByteBuffer() {
+      ByteBuffer out = ByteBuffer.allocate(
+            HEADER_BYTES + (offsets.length + table.length) * Integer.BYTES + chars.length * Character.BYTES);
+      out.putInt(MAGIC).putInt(VERSION).putInt(ignoreCase ? IGNORE_CASE : 0);
+      out.putInt(size()).putInt(chars.length).putInt(table.length / 2);
+      out.asIntBuffer().put(offsets);
+      out.position(out.position() + offsets.length * Integer.BYTES);
+      out.asIntBuffer().put(table);
+      out.position(out.position() + table.length * Integer.BYTES);
+      out.asCharBuffer().put(chars);
+      out.rewind();
+      return out;
+   }
+
+   /**
+    * Writes the dictionary to a file in the binary format.
+    */
+   public void write(Path file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+         ByteBuffer out = toByteBuffer();
+         while (out.hasRemaining()) {
+            channel.write(out);
+         }
+      }
+   }
+
+   @Override
+   public boolean contains(char[] text, int offset, int length) {
+      int hash = hash(text, offset, length, ignoreCase);
+      for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+         int id = table[2 * slot + 1];
+         if (id == 0) {
+            return false;
+         }
+         if (table[2 * slot] == hash && matches(id - 1, text, offset, length)) {
+            return true;
+         }
+      }
+   }
+
+   @Override
+   public int size() {
+      return offsets.length - 1;
+   }
+
+   /**
+    * Returns <code>true</code> if case is ignored on lookup.
+    */
+   public boolean isIgnoreCase() {
+      return ignoreCase;
+   }
+
+   @Override
+   public long ramBytesUsed() {
+      return RamUsageEstimator.shallowSizeOfInstance(PackedStopwordDictionary.class) + RamUsageEstimator.sizeOf(offsets)
+            + RamUsageEstimator.sizeOf(table) + RamUsageEstimator.sizeOf(chars);
+   }
+
+   /**
+    * Compares the given chars to a word code point by code point, lower-casing the given chars if case is ignored.
+    * Stored words are already lower-cased.
+    */
+   private boolean matches(int id, char[] text, int offset, int length) {
+      int j = offsets[id];
+      int end = offsets[id + 1];
+      for (int i = offset, limit = offset + length; i < limit;) {
+         int codePoint = codePointAt(text, i, limit);
+         i += Character.charCount(codePoint);
+         if (j >= end) {
+            return false;
+         }
+         int stored = codePointAt(chars, j, end);
+         if ((ignoreCase ? toLowerCase(codePoint) : codePoint) != stored) {
+            return false;
+         }
+         j += Character.charCount(stored);
+      }
+      return j == end;
+   }
+
+   /**
+    * Hashes the code points of the given chars, like {@link String#hashCode()} if all chars are in the BMP, and mixes
+    * the bits so that the low bits can be used as table index.
+    */
+   private static int hash(char[] text, int offset, int length, boolean ignoreCase) {
+      int hash = 0;
+      for (int i = offset, limit = offset + length; i < limit;) {
+         int codePoint = codePointAt(text, i, limit);
+         i += Character.charCount(codePoint);
+         hash = 31 * hash + (ignoreCase ? toLowerCase(codePoint) : codePoint);
+      }
+
+      // murmur3 finalizer
+      hash ^= hash >>> 16;
+      hash *= 0x85ebca6b;
+      hash ^= hash >>> 13;
+      hash *= 0xc2b2ae35;
+      hash ^= hash >>> 16;
+      return hash;
+   }
+
+   private static int codePointAt(char[] text, int index, int limit) {
+      char c = text[index];
+      return Character.isHighSurrogate(c) ? Character.codePointAt(text, index, limit) : c;
+   }
+
+   private static int toLowerCase(int codePoint) {
+      if (codePoint < 128) {
+         return codePoint >= 'A' && codePoint <= 'Z' ? codePoint + ('a' - 'A') : codePoint;
+      }
+      return Character.toLowerCase(codePoint);
+   }
+
+   /**
+    * Lower-cases code point by code point, the same as {@link org.apache.lucene.analysis.CharArraySet} does when case
+    * is ignored.
+    */
+   private static String lowerCase(String word) {
+      StringBuilder result = new StringBuilder(word.length());
+      for (int i = 0; i < word.length();) {
+         int codePoint = word.codePointAt(i);
+         i += Character.charCount(codePoint);
+         result.appendCodePoint(toLowerCase(codePoint));
+      }
+      return result.toString();
+   }
+
+   /**
+    * Compiles text stopword files into a packed dictionary that ignores case.
+    * <p>
+    * Usage: <code>PackedStopwordDictionary &lt;output&gt; &lt;stopwords.txt&gt;...</code>
+    */
+   @SuppressForbidden(reason = "command line tool")
+   public static void main(String[] args) throws IOException {
+      if (args.length < 2) {
+         System.err.println("Usage: " + PackedStopwordDictionary.class.getName() + " <output> <stopwords.txt>...");
+         System.exit(1);
+      }
+
+      List<String> words = new ArrayList<>();
+      for (int i = 1; i < args.length; i++) {
+         try (InputStream in = Files.newInputStream(Paths.get(args[i]))) {
+            words.addAll(WordlistLoader.getLines(in, StandardCharsets.UTF_8));
+         }
+      }
+
+      Path output = Paths.get(args[0]);
+      PackedStopwordDictionary dictionary = build(words, true);
+      dictionary.write(output);
+      System.err.println("Wrote " + dictionary.size() + " stopwords to " + output + " (" + Files.size(output)
+            + " bytes on disk, " + dictionary.ramBytesUsed() + " bytes on heap).");
+   }
+
+}
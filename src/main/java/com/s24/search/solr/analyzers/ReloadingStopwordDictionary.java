@@ -0,0 +1,186 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link StopwordDictionary} that polls its stopword files and swaps in a new dictionary when their content changes.
+ * Tokenizers take the latest dictionary from {@link #current()} when they are reset, so a document is analyzed with a
+ * single dictionary and lookups do not go through a lock or a volatile read.
+ * <p>
+ * The files are re-read through the resource loader of the core, so changes are picked up for local config dirs as
+ * well as for configs in ZooKeeper. The files are polled by the {@link StopwordSetCache}, which reads them once per
+ * interval for all dictionaries of the same files and loader, and shares the dictionaries, so a change is only parsed
+ * once, no matter how many factories use the files. If a changed file cannot be loaded, the last dictionary is kept.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class ReloadingStopwordDictionary implements StopwordDictionary {
+
+   private static final Logger logger = LoggerFactory.getLogger(ReloadingStopwordDictionary.class);
+
+   private final Object owner;
+   private final ResourceLoader loader;
+   private final List<String> files;
+   private final boolean ignoreCase;
+   private final Format format;
+
+   private volatile StopwordDictionary dictionary;
+   private final AtomicLong reloadCount = new AtomicLong();
+   private final AtomicLong failureCount = new AtomicLong();
+   private volatile long lastCheckTime;
+   private volatile long lastReloadTime;
+
+   /**
+    * Loads the stopword files.
+    *
+    * @param owner
+    *           the object the dictionary is acquired for in the {@link StopwordSetCache}, usually a factory.
+    * @see StopwordSetCache#acquire(Object, ResourceLoader, List, boolean, StopwordDictionary.Format)
+    */
+   public ReloadingStopwordDictionary(Object owner, ResourceLoader loader, List<String> files, boolean ignoreCase,
+         Format format) throws IOException {
+      this.owner = owner;
+      this.loader = loader;
+      this.files = files;
+      this.ignoreCase = ignoreCase;
+      this.format = format;
+      this.dictionary = StopwordSetCache.acquire(owner, loader, files, ignoreCase, format);
+      this.lastCheckTime = System.currentTimeMillis();
+      this.lastReloadTime = lastCheckTime;
+   }
+
+   /**
+    * Checks the files for changes in the given interval until {@link #stop()} is called or this dictionary is garbage
+    * collected.
+    */
+   public void start(long interval, TimeUnit unit) {
+      StopwordSetCache.watch(this, interval, unit);
+   }
+
+   /**
+    * Stops checking the files.
+    */
+   public void stop() {
+      StopwordSetCache.unwatch(this);
+   }
+
+   /**
+    * Re-reads the files and swaps in a new dictionary if their content has changed.
+    *
+    * @return <code>true</code> if a new dictionary has been swapped in.
+    */
+   public boolean reload() {
+      StopwordSetCache.Contents contents;
+      try {
+         contents = StopwordSetCache.read(loader, files, ignoreCase, format);
+      } catch (IOException | RuntimeException e) {
+         failed(e);
+         return false;
+      }
+      return reload(contents);
+   }
+
+   /**
+    * Swaps in the dictionary of the given contents, if they differ from the current one.
+    */
+   synchronized boolean reload(StopwordSetCache.Contents contents) {
+      lastCheckTime = System.currentTimeMillis();
+      try {
+         StopwordDictionary reloaded = StopwordSetCache.acquire(owner, dictionary, contents);
+         if (reloaded == dictionary) {
+            return false;
+         }
+
+         dictionary = reloaded;
+         lastReloadTime = System.currentTimeMillis();
+         reloadCount.incrementAndGet();
+         logger.info("Reloaded stopword set {} with {} words.", files, reloaded.size());
+         return true;
+      } catch (IOException | RuntimeException e) {
+         failureCount.incrementAndGet();
+         logger.warn("Could not reload stopword set {}, keeping the last one.", files, e);
+         return false;
+      }
+   }
+
+   /**
+    * Records that the files could not be read.
+    */
+   synchronized void failed(Exception e) {
+      lastCheckTime = System.currentTimeMillis();
+      failureCount.incrementAndGet();
+      logger.warn("Could not reload stopword set {}, keeping the last one.", files, e);
+   }
+
+   @Override
+   public StopwordDictionary current() {
+      return dictionary;
+   }
+
+   @Override
+   public boolean contains(char[] text, int offset, int length) {
+      return dictionary.contains(text, offset, length);
+   }
+
+   @Override
+   public int size() {
+      return dictionary.size();
+   }
+
+   @Override
+   public long ramBytesUsed() {
+      return dictionary.ramBytesUsed();
+   }
+
+   ResourceLoader getLoader() {
+      return loader;
+   }
+
+   List<String> getFiles() {
+      return files;
+   }
+
+   boolean isIgnoreCase() {
+      return ignoreCase;
+   }
+
+   Format getFormat() {
+      return format;
+   }
+
+   /**
+    * Returns the number of times a changed dictionary has been swapped in.
+    */
+   public long getReloadCount() {
+      return reloadCount.get();
+   }
+
+   /**
+    * Returns the number of times the files could not be reloaded.
+    */
+   public long getFailureCount() {
+      return failureCount.get();
+   }
+
+   /**
+    * Returns the time the files were last checked for changes, in milliseconds since the epoch.
+    */
+   public long getLastCheckTime() {
+      return lastCheckTime;
+   }
+
+   /**
+    * Returns the time the current dictionary was loaded, in milliseconds since the epoch.
+    */
+   public long getLastReloadTime() {
+      return lastReloadTime;
+   }
+
+}
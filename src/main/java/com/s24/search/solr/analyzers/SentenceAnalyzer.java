@@ -0,0 +1,180 @@
+package com.s24.search.solr.analyzers;
+
+import org.apache.lucene.util.ArrayUtil;
+
+import com.google.common.base.CharMatcher;
+
+/**
+ * Analyzes sentences for stopwords. Holds a scratch buffer and the counts of the last sentence, so an instance must
+ * only be used by one thread at a time, see {@link #copy()}.
+ *
+ * @author Shopping24 GmbH
+ */
+final class SentenceAnalyzer {
+
+   private static final CharMatcher SENTENCE_NOISE = CharMatcher.DIGIT.or(
+         CharMatcher.anyOf(",;.:$!?%&/<>™®\\-–'\"|")).precomputed();
+
+   private final float maxStopwordRatio;
+   private final int minSentenceLength;
+   private StopwordDictionary stopWords;
+   private CaseFolder caseFolder;
+
+   // every n-th sentence is timed by the quality rules
+   private static final int TIMING_SAMPLE_MASK = 63;
+   private int evaluations;
+
+   private char[] wordBuffer = new char[32];
+   private int sentenceWordCount;
+   private int sentenceStopwordCount;
+
+   /**
+    * @param maxStopwordRatio
+    *           if the ratio of stopwords exceeds this threshold, the sentence has a low quality.
+    * @param minSentenceLength
+    *           a sentence must contain at least this many words, otherwise it always has a high quality.
+    */
+   SentenceAnalyzer(StopwordDictionary stopWords, CaseFolder caseFolder, float maxStopwordRatio,
+         int minSentenceLength) {
+      this.stopWords = stopWords;
+      this.caseFolder = caseFolder;
+      this.maxStopwordRatio = maxStopwordRatio;
+      this.minSentenceLength = minSentenceLength;
+   }
+
+   /**
+    * Returns an analyzer with the same configuration and its own scratch buffer.
+    */
+   SentenceAnalyzer copy() {
+      return new SentenceAnalyzer(stopWords, caseFolder, maxStopwordRatio, minSentenceLength);
+   }
+
+   void setStopWords(StopwordDictionary stopWords) {
+      this.stopWords = stopWords;
+   }
+
+   void setCaseFolder(CaseFolder caseFolder) {
+      this.caseFolder = caseFolder;
+   }
+
+   /**
+    * Counts an evaluation and returns <code>true</code> if its cost should be sampled, see
+    * {@link SentenceQualityCascade}.
+    */
+   boolean sampleTiming() {
+      return (++evaluations & TIMING_SAMPLE_MASK) == 0;
+   }
+
+   /**
+    * Returns true if the sentence has a high quality.
+    * 
+    * @param start
+    *           start of the sentence in the buffer.
+    * @param end
+    *           end of the sentence in the buffer.
+    */
+   boolean isQualitySentence(char[] buffer, int start, int end) {
+      analyzeSentence(buffer, start, end);
+
+      // check information gain
+      float stopwordsRatio = sentenceWordCount > 0 ? sentenceStopwordCount / (float) sentenceWordCount : 0;
+      boolean highInformationGain = stopwordsRatio <= maxStopwordRatio;
+      boolean shortSentence = sentenceWordCount < minSentenceLength;
+
+      return highInformationGain || shortSentence;
+   }
+
+   /**
+    * Analyzes the sentence for stopwords appearances. It will remove whitespaces and symbols from the sentence to
+    * guarantee a high stopwords match. The result is stored in {@link #sentenceWordCount} and
+    * {@link #sentenceStopwordCount}.
+    * <p>
+    * This is done in a single pass over the buffer: The sentence is trimmed, noise chars (|&lt;&gt;:;...) are skipped
+    * and the remaining chars are split into words at whitespace, where each run of ASCII whitespace counts as a single
+    * separator. Every word is lower-cased in a scratch buffer according to the locale and looked up in the stopwords.
+    * 
+    * @param start
+    *           start of the sentence in the buffer.
+    * @param end
+    *           end of the sentence in the buffer.
+    */
+   void analyzeSentence(char[] buffer, int start, int end) {
+      // trim
+      while (start < end && CharMatcher.WHITESPACE.matches(buffer[start])) {
+         start++;
+      }
+      while (end > start && CharMatcher.WHITESPACE.matches(buffer[end - 1])) {
+         end--;
+      }
+
+      int wordCount = 0;
+      int stopwordCount = 0;
+      int wordLength = 0;
+      boolean inWhitespaceRun = false;
+      for (int i = start; i <= end; i++) {
+         char c = i < end ? buffer[i] : ' ';
+         if (i < end && SENTENCE_NOISE.matches(c)) {
+            continue;
+         }
+
+         if (CharMatcher.WHITESPACE.matches(c)) {
+            // multiple ASCII whitespace is a single separator, even if noise
+            // was in between. The end of the sentence always ends a word.
+            boolean asciiWhitespace = SentenceBoundaryScanner.isWhitespace(c);
+            if (!inWhitespaceRun || !asciiWhitespace || i == end) {
+               caseFolder.toLowerCase(wordBuffer, 0, wordLength);
+               if (stopWords.contains(wordBuffer, 0, wordLength)) {
+                  stopwordCount++;
+               }
+               wordCount++;
+               wordLength = 0;
+            }
+            inWhitespaceRun = asciiWhitespace;
+         } else {
+            if (wordLength == wordBuffer.length) {
+               wordBuffer = ArrayUtil.grow(wordBuffer, wordLength + 1);
+            }
+            wordBuffer[wordLength++] = c;
+            inWhitespaceRun = false;
+         }
+      }
+
+      sentenceWordCount = wordCount;
+      sentenceStopwordCount = stopwordCount;
+   }
+
+   /**
+    * Counts the words of the sentence like {@link #analyzeSentence(char[], int, int)}, without looking them up.
+    * Counting stops at the given limit, so this reads only the first words of a long sentence.
+    *
+    * @return the number of words, at most <code>limit</code>.
+    */
+   static int countWords(char[] buffer, int start, int end, int limit) {
+      while (start < end && CharMatcher.WHITESPACE.matches(buffer[start])) {
+         start++;
+      }
+      while (end > start && CharMatcher.WHITESPACE.matches(buffer[end - 1])) {
+         end--;
+      }
+
+      int wordCount = 0;
+      boolean inWhitespaceRun = false;
+      for (int i = start; i <= end && wordCount < limit; i++) {
+         char c = i < end ? buffer[i] : ' ';
+         if (i < end && SENTENCE_NOISE.matches(c)) {
+            continue;
+         }
+
+         if (CharMatcher.WHITESPACE.matches(c)) {
+            boolean asciiWhitespace = SentenceBoundaryScanner.isWhitespace(c);
+            if (!inWhitespaceRun || !asciiWhitespace || i == end) {
+               wordCount++;
+            }
+            inWhitespaceRun = asciiWhitespace;
+         } else {
+            inWhitespaceRun = false;
+         }
+      }
+      return wordCount;
+   }
+}
@@ -0,0 +1,99 @@
+package com.s24.search.solr.analyzers;
+
+/**
+ * Single-pass replacement for the sentence pattern <code>(?&lt;=[.?!\|;-])\s+(?=\p{Lu})</code>. A sentence boundary
+ * is a run of whitespace that directly follows a terminator char and is directly followed by an uppercase letter. The
+ * boundary belongs to the sentence before it, so the sentence ends at the end of the whitespace run.
+ * <p>
+ * Terminators and whitespace are ASCII only (like <code>\s</code> without the <code>UNICODE_CHARACTER_CLASS</code>
+ * flag) and are looked up in a table. Uppercase letters are looked up in the table for ASCII, all other code points
+ * are checked for the general category <code>Lu</code>.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class SentenceBoundaryScanner {
+
+   private static final byte TERMINATOR = 1;
+   private static final byte WHITESPACE = 2;
+   private static final byte UPPERCASE = 4;
+
+   private static final byte[] CHAR_CLASSES = new byte[128];
+
+   static {
+      for (char c : ".?!|;-".toCharArray()) {
+         CHAR_CLASSES[c] |= TERMINATOR;
+      }
+      for (char c : " \t\n\u000B\f\r".toCharArray()) {
+         CHAR_CLASSES[c] |= WHITESPACE;
+      }
+      for (char c = 'A'; c <= 'Z'; c++) {
+         CHAR_CLASSES[c] |= UPPERCASE;
+      }
+   }
+
+   private SentenceBoundaryScanner() {
+      // static methods only
+   }
+
+   /**
+    * Finds the first sentence boundary that starts at or after the given position. The char before
+    * <code>from</code> is taken into account as terminator, the chars at or after <code>limit</code> are not.
+    *
+    * @param buffer
+    *           the text.
+    * @param from
+    *           position to start searching at.
+    * @param limit
+    *           end of the text in the buffer.
+    * @return the end of the boundary, i.e. the start of the next sentence, or <code>-1</code> if there is no boundary.
+    */
+   public static int find(char[] buffer, int from, int limit) {
+      for (int i = Math.max(from, 1); i < limit; i++) {
+         if (!isWhitespace(buffer[i]) || !isTerminator(buffer[i - 1])) {
+            continue;
+         }
+
+         // skip the whitespace run. The regex backtracks into the run only
+         // to find an uppercase letter, which is never whitespace
+         int end = i + 1;
+         while (end < limit && isWhitespace(buffer[end])) {
+            end++;
+         }
+         if (end < limit && isUppercase(buffer, end, limit)) {
+            return end;
+         }
+
+         // no run that starts within this one can be a boundary, because it
+         // does not directly follow a terminator
+         i = end;
+      }
+
+      return -1;
+   }
+
+   /**
+    * Returns <code>true</code> if the char terminates a sentence.
+    */
+   static boolean isTerminator(char c) {
+      return c < 128 && (CHAR_CLASSES[c] & TERMINATOR) != 0;
+   }
+
+   /**
+    * Returns <code>true</code> if the char separates sentences, i.e. is ASCII whitespace.
+    */
+   static boolean isWhitespace(char c) {
+      return c < 128 && (CHAR_CLASSES[c] & WHITESPACE) != 0;
+   }
+
+   /**
+    * Returns <code>true</code> if the code point at the given index is an uppercase letter.
+    */
+   static boolean isUppercase(char[] buffer, int index, int limit) {
+      char c = buffer[index];
+      if (c < 128) {
+         return (CHAR_CLASSES[c] & UPPERCASE) != 0;
+      }
+      return Character.getType(Character.codePointAt(buffer, index, limit)) == Character.UPPERCASE_LETTER;
+   }
+
+}
@@ -0,0 +1,788 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.CharsRef;
+
+import com.google.common.base.CharMatcher;
+
+/**
+ * Splits texts into sentences and keeps only those sentences that do not contain too many stopwords. Sentences that
+ * contain many commas are split into their comma-separated parts and analyzed per part. If a text contains only a
+ * single sentence, it is always kept. This is the engine behind the {@link AnalyzingSentenceTokenizer}, which can also
+ * be used without building token streams, e.g. to preprocess a feed:
+ *
+ * <pre>
+ * SentenceFilter filter = new SentenceFilter(stopWords, 0.2f, 0.21f, 5, Scanner.TABLE, Locale.GERMAN);
+ * int[][] spans = filter.filter(descriptions);
+ * </pre>
+ *
+ * A filter is thread-safe. The state of a single text is held by a {@link Session}, which is not thread-safe. The
+ * batch methods use a session per thread and process the texts of a batch in parallel on a shared fork/join pool.
+ * <p>
+ * Kept sentences are returned as <code>int</code> arrays of <code>[start,end)</code> pairs, so that filtering does
+ * not create a string per sentence.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class SentenceFilter {
+
+   /**
+    * Returned by {@link Session#nextSentenceEnd(int, int, boolean, int)} if more input is needed to find the end of
+    * the sentence.
+    */
+   public static final int NEED_INPUT = -1;
+
+   // number of chars scored by a single task in parallel scoring
+   private static final int TASK_CHARS = 16384;
+
+   // determine sentences
+   private static final Pattern SENTENCE_PATTERN = Pattern.compile("(?<=[.?!\\|;-])\\s+(?=\\p{Lu})");
+   private static final Pattern COMMA_PATTERN = Pattern.compile("(,+(?=\\D))|((?<=\\D),+)|;");
+
+   // the chars that may end a sentence or split it at its commas, as bit masks of the chars below 64 and the
+   // chars from 64 to 127. Both patterns and the scanners only split at these chars
+   private static final long SPLIT_CHARS_LOW = 1L << '.' | 1L << '?' | 1L << '!' | 1L << ';' | 1L << '-' | 1L << ',';
+   private static final long SPLIT_CHARS_HIGH = 1L << ('|' - 64);
+
+   private static final int[] NO_SPANS = new int[0];
+
+   // configuration
+   private final StopwordDictionary stopWordSource;
+   private final float commaWordThreshold;
+   private final float maxStopwordRatio;
+   private final int minSentenceLength;
+   private final AnalyzingSentenceTokenizer.Scanner scanner;
+   private final CaseFolder caseFolder;
+   private volatile SentenceVerdictCache verdictCache;
+   private volatile SentenceQualityCascade qualityRules;
+   private volatile BoilerplateSketch boilerplateSketch;
+   private volatile int maxSentenceFrequency;
+   private volatile int maxRetainedChars = Integer.MAX_VALUE;
+
+   // sessions of the batch methods
+   private final ThreadLocal<Session> sessions = ThreadLocal.withInitial(this::newSession);
+
+   // idle sessions of char filters, which are created per text
+   private final ThreadLocal<Session> idleSessions = new ThreadLocal<>();
+
+   /**
+    * Creates a filter.
+    *
+    * @param stopWords
+    *           the stopwords. The {@link StopwordDictionary#current() current} version is taken for each text.
+    * @param commaWordThreshold
+    *           the threshold that defines the "comma density" that, if exceeded, causes a sentence to be split into
+    *           sub-sentences that are analyzed individually.
+    * @param maxStopwordRatio
+    *           if the ratio of stopwords exceeds this threshold, the sentence is filtered out.
+    * @param minSentenceLength
+    *           a sentence must contain at least this many words, otherwise it is not analyzed and always kept.
+    * @param scanner
+    *           how sentence boundaries are detected.
+    * @param locale
+    *           the language of the texts, which is used to lower-case words for the stopword lookup.
+    */
+   public SentenceFilter(StopwordDictionary stopWords, float commaWordThreshold, float maxStopwordRatio,
+         int minSentenceLength, AnalyzingSentenceTokenizer.Scanner scanner, Locale locale) {
+      this.stopWordSource = stopWords;
+      this.commaWordThreshold = commaWordThreshold;
+      this.maxStopwordRatio = maxStopwordRatio;
+      this.minSentenceLength = minSentenceLength;
+      this.scanner = scanner;
+      this.caseFolder = CaseFolder.forLocale(locale);
+   }
+
+   /**
+    * Sets a cache for the quality verdicts of sentences, which may be shared with other filters. Takes effect for the
+    * next text.
+    *
+    * @param verdictCache
+    *           the cache, or <code>null</code> to analyze every sentence.
+    */
+   public void setVerdictCache(SentenceVerdictCache verdictCache) {
+      this.verdictCache = verdictCache;
+   }
+
+   /**
+    * Sets rules that decide the quality of sentences before their stopwords are counted, which may be shared with
+    * other filters. Takes effect for the next text.
+    *
+    * @param qualityRules
+    *           the rules, or <code>null</code> to analyze the stopwords of every sentence.
+    */
+   public void setQualityRules(SentenceQualityCascade qualityRules) {
+      this.qualityRules = qualityRules;
+   }
+
+   /**
+    * Returns the rules that decide the quality of sentences before their stopwords are counted, with their
+    * statistics, or <code>null</code> if there are none.
+    */
+   public SentenceQualityCascade getQualityRules() {
+      return qualityRules;
+   }
+
+   /**
+    * Sets a sketch that counts sentences across texts, which may be shared with other filters. Sentences that have
+    * been seen more often than the given frequency are filtered out as boilerplate, even if they contain few
+    * stopwords. Filtering only reads the counts, so that a text is filtered the same way each time it is analyzed,
+    * e.g. for highlighting. Sentences are counted by {@link #countSentences(CharSequence)}.
+    *
+    * @param boilerplateSketch
+    *           the sketch, or <code>null</code> to not filter boilerplate.
+    * @param maxSentenceFrequency
+    *           the number of times a sentence is kept before it is considered boilerplate.
+    */
+   public void setBoilerplateSketch(BoilerplateSketch boilerplateSketch, int maxSentenceFrequency) {
+      this.maxSentenceFrequency = maxSentenceFrequency;
+      this.boilerplateSketch = boilerplateSketch;
+   }
+
+   /**
+    * Sets the maximum size of the scratch buffers a session keeps between texts. The batch methods keep a session per
+    * thread, so a larger buffer, which is needed for a large text, is released at the end of the text. Unlimited by
+    * default.
+    *
+    * @param maxRetainedChars
+    *           the maximum number of chars.
+    */
+   public void setMaxRetainedChars(int maxRetainedChars) {
+      this.maxRetainedChars = maxRetainedChars;
+   }
+
+   /**
+    * Creates a new session, which holds the state of a single text at a time.
+    */
+   public Session newSession() {
+      return new Session();
+   }
+
+   /**
+    * Takes the idle session of the current thread, or creates a new session if there is none. The session is held
+    * exclusively until it is given back by {@link #releaseSession(Session)}, so that readers that are created per
+    * text do not create a session for every text.
+    */
+   Session acquireSession() {
+      Session session = idleSessions.get();
+      if (session == null) {
+         return newSession();
+      }
+      idleSessions.set(null);
+      return session;
+   }
+
+   /**
+    * Gives back a session taken by {@link #acquireSession()}, which becomes the idle session of the current thread.
+    */
+   void releaseSession(Session session) {
+      session.shrinkBuffers();
+      idleSessions.set(session);
+   }
+
+   /**
+    * Returns <code>true</code> if the text in <code>[offset,offset+length)</code> of the buffer can neither contain a
+    * sentence boundary nor a comma split, because it has none of the chars they need. Such a text is a single
+    * sentence, which is always kept. This is a single cheap pass, so short texts like queries skip the scanners and
+    * the analysis.
+    */
+   public static boolean isSingleSentence(char[] text, int offset, int length) {
+      for (int i = offset; i < offset + length; i++) {
+         char c = text[i];
+         if (c < 64 ? (SPLIT_CHARS_LOW & 1L << c) != 0 : c < 128 && (SPLIT_CHARS_HIGH & 1L << (c - 64)) != 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Returns the kept sentences of the text.
+    *
+    * @return <code>[start,end)</code> pairs of the kept sentences, relative to the start of the text.
+    */
+   public int[] filter(CharSequence text) {
+      return sessions.get().filter(text);
+   }
+
+   /**
+    * Returns the kept sentences of the text in <code>[offset,offset+length)</code> of the buffer.
+    *
+    * @return <code>[start,end)</code> pairs of the kept sentences, relative to the offset.
+    */
+   public int[] filter(char[] text, int offset, int length) {
+      return sessions.get().filter(text, offset, length);
+   }
+
+   /**
+    * Counts the sentences of the text in the boilerplate sketch, if there is one. Called once per document at index
+    * time, e.g. by the {@link AnalyzingSentenceUpdateProcessorFactory}. A text of a single sentence is not counted,
+    * as it is always kept.
+    */
+   public void countSentences(CharSequence text) {
+      if (boilerplateSketch != null) {
+         sessions.get().count(text);
+      }
+   }
+
+   /**
+    * Returns the kept sentences of all texts. The texts are filtered in parallel.
+    *
+    * @return for each text the <code>[start,end)</code> pairs of its kept sentences.
+    */
+   public int[][] filter(List<? extends CharSequence> texts) {
+      int[][] spans = new int[texts.size()][];
+      ScoringPool.POOL.invoke(new BatchTask(texts, spans, 0, texts.size()));
+      return spans;
+   }
+
+   /**
+    * Filters the texts <code>[from,to)</code> of a batch. Splits itself until the texts of a task span at most
+    * {@link #TASK_CHARS} chars.
+    */
+   private final class BatchTask extends RecursiveAction {
+
+      private static final long serialVersionUID = 1L;
+
+      private final List<? extends CharSequence> texts;
+      private final int[][] spans;
+      private final int from;
+      private final int to;
+
+      BatchTask(List<? extends CharSequence> texts, int[][] spans, int from, int to) {
+         this.texts = texts;
+         this.spans = spans;
+         this.from = from;
+         this.to = to;
+      }
+
+      @Override
+      protected void compute() {
+         if (to - from > 1) {
+            long chars = 0;
+            for (int i = from; i < to && chars <= TASK_CHARS; i++) {
+               chars += texts.get(i).length();
+            }
+            if (chars > TASK_CHARS) {
+               int middle = (from + to) >>> 1;
+               invokeAll(new BatchTask(texts, spans, from, middle), new BatchTask(texts, spans, middle, to));
+               return;
+            }
+         }
+
+         Session session = sessions.get();
+         for (int i = from; i < to; i++) {
+            spans[i] = session.filter(texts.get(i));
+         }
+      }
+   }
+
+   /**
+    * The state of the filter for a single text. The text is held by the caller in a char buffer, which may be a
+    * window of the text that is moved and refilled while the text is read, see
+    * {@link #setInput(char[], int, boolean)}.
+    */
+   public final class Session {
+
+      private final CharsRef bufferView = new CharsRef();
+      private final Matcher sentenceMatcher;
+      private final Matcher commaMatcher;
+      private final FusedSentenceScanner fusedScanner = new FusedSentenceScanner();
+      private final SentenceAnalyzer analyzer;
+      private char[] buffer;
+      private boolean lastSentenceFromCommaSplit = false;
+
+      // configuration of the current text
+      private SentenceVerdictCache currentVerdictCache;
+      private SentenceQualityCascade currentQualityRules;
+      private long verdictSeed;
+      private BoilerplateSketch currentBoilerplateSketch;
+      private int currentMaxSentenceFrequency;
+
+      // scratch space of filter()
+      private char[] textBuffer = new char[0];
+      private int[] spans = new int[16];
+
+      private Session() {
+         StopwordDictionary stopWords = stopWordSource.current();
+         analyzer = new SentenceAnalyzer(stopWords, caseFolder, maxStopwordRatio, minSentenceLength);
+
+         // both matchers work on a view of the buffer and are re-targeted by
+         // resetting them, so they are only created once
+         bufferView.chars = textBuffer;
+         sentenceMatcher = SENTENCE_PATTERN.matcher(bufferView);
+         commaMatcher = COMMA_PATTERN.matcher(bufferView);
+      }
+
+      /**
+       * Starts a new text. Takes the current stopwords, which are kept for the whole text.
+       */
+      public void reset() {
+         StopwordDictionary stopWords = stopWordSource.current();
+         analyzer.setStopWords(stopWords);
+
+         currentVerdictCache = verdictCache;
+         if (currentVerdictCache != null) {
+            verdictSeed = SentenceVerdictCache.seed(stopWords, maxStopwordRatio, minSentenceLength);
+         }
+         currentQualityRules = qualityRules;
+         currentMaxSentenceFrequency = maxSentenceFrequency;
+         currentBoilerplateSketch = boilerplateSketch;
+
+         rewind();
+      }
+
+      /**
+       * Starts over at the beginning of the current text with the same stopwords.
+       */
+      public void rewind() {
+         lastSentenceFromCommaSplit = false;
+         fusedScanner.reset();
+      }
+
+      /**
+       * Points the session to the current content of the buffer. Must be called whenever the content of the buffer
+       * changes.
+       *
+       * @param moved
+       *           <code>true</code> if chars have been discarded from the start of the buffer, which moves all
+       *           positions.
+       */
+      public void setInput(char[] buffer, int length, boolean moved) {
+         if (moved) {
+            fusedScanner.reset();
+         }
+         this.buffer = buffer;
+         bufferView.chars = buffer;
+         bufferView.length = length;
+         sentenceMatcher.reset(bufferView);
+      }
+
+      /**
+       * Returns the end of the next sentence from the given index, or of its first part if the sentence is split at
+       * its commas.
+       *
+       * @param index
+       *           the start of the sentence in the buffer.
+       * @param length
+       *           the number of chars in the buffer.
+       * @param exhausted
+       *           <code>true</code> if the buffer holds the end of the text.
+       * @param maxWindowSize
+       *           the maximum length of a sentence. A longer sentence is cut at this length.
+       * @return the end of the sentence, or {@link SentenceFilter#NEED_INPUT} if more chars have to be read into the
+       *         buffer.
+       */
+      public int nextSentenceEnd(int index, int length, boolean exhausted, int maxWindowSize) {
+
+         // find the next split sentence occurence from our current index. If
+         // there are no more matches, the remaining chars are the candidate
+         int sentenceEnd;
+         int firstCommaEnd;
+         boolean split;
+         if (scanner == AnalyzingSentenceTokenizer.Scanner.TABLE) {
+
+            // the parts of a comma split sentence are taken from the scanner
+            // instead of scanning the rest of the sentence again
+            if (lastSentenceFromCommaSplit && fusedScanner.continues(index)) {
+               sentenceEnd = fusedScanner.end();
+            } else {
+               sentenceEnd = findSentenceEnd(index, length, exhausted, maxWindowSize);
+               if (sentenceEnd == NEED_INPUT) {
+                  return NEED_INPUT;
+               }
+            }
+
+            // check for commas in the current sentence. While splitting, every
+            // following part is split at its first comma. Otherwise, we have to
+            // check the comma to word ratio of the whole sentence
+            firstCommaEnd = fusedScanner.nextCommaEnd(buffer, index);
+            split = firstCommaEnd != -1
+                  && (lastSentenceFromCommaSplit || fusedScanner.commaToWordRatio() > commaWordThreshold);
+         } else {
+            sentenceEnd = findSentenceEnd(index, length, exhausted, maxWindowSize);
+            if (sentenceEnd == NEED_INPUT) {
+               return NEED_INPUT;
+            }
+
+            // the comma matcher is restricted to the sentence, so its
+            // look-arounds do not see the chars around it
+            commaMatcher.region(index, sentenceEnd);
+            firstCommaEnd = commaMatcher.find() ? commaMatcher.end() : -1;
+            split = firstCommaEnd != -1
+                  && (lastSentenceFromCommaSplit || commaToWordRatio(index, sentenceEnd) > commaWordThreshold);
+         }
+
+         if (split) {
+            sentenceEnd = firstCommaEnd;
+         }
+         lastSentenceFromCommaSplit = split;
+         return sentenceEnd;
+      }
+
+      /**
+       * Returns <code>true</code> if the last sentence returned by {@link #nextSentenceEnd(int, int, boolean, int)}
+       * is a part of a sentence split at its commas.
+       */
+      public boolean isLastSentenceFromCommaSplit() {
+         return lastSentenceFromCommaSplit;
+      }
+
+      /**
+       * Returns the end of the sentence starting at the given index.
+       */
+      private int findSentenceEnd(int index, int length, boolean exhausted, int maxWindowSize) {
+         if (scanner == AnalyzingSentenceTokenizer.Scanner.TABLE) {
+            int boundary = fusedScanner.scan(buffer, index, length);
+            if (boundary != -1) {
+               fusedScanner.finish(buffer, boundary, true);
+               return boundary;
+            }
+         } else if (sentenceMatcher.find(index)) {
+            return sentenceMatcher.end();
+         }
+
+         // no more matches in the buffer.
+         if (exhausted) {
+            if (scanner == AnalyzingSentenceTokenizer.Scanner.TABLE) {
+               fusedScanner.finish(buffer, length, true);
+            }
+            return length;
+         }
+
+         // window is full, cut the sentence but do not split a surrogate pair.
+         // The next read may move the end of the sentence, so the parts of a
+         // comma split are not cached
+         if (length - index >= maxWindowSize) {
+            int end = index + maxWindowSize;
+            end = Character.isHighSurrogate(buffer[end - 1]) ? end - 1 : end;
+            if (scanner == AnalyzingSentenceTokenizer.Scanner.TABLE) {
+               fusedScanner.finish(buffer, end, false);
+            }
+            return end;
+         }
+
+         return NEED_INPUT;
+      }
+
+      /**
+       * Returns the ratio of commas to words of the given range. The comma matcher must already have found the first
+       * comma in the range.
+       */
+      private float commaToWordRatio(int start, int end) {
+         int commaCount = 1;
+         while (commaMatcher.find()) {
+            commaCount++;
+         }
+
+         int whitespaceCount = 0;
+         for (int i = start; i < end; i++) {
+            if (CharMatcher.WHITESPACE.matches(buffer[i])) {
+               whitespaceCount++;
+            }
+         }
+
+         return commaCount / (float) (whitespaceCount - 1);
+      }
+
+      /**
+       * Returns true if the sentence is kept, i.e. it is the only sentence of the text, or it has a high quality and
+       * is not boilerplate.
+       *
+       * @param start
+       *           start of the sentence in the buffer.
+       * @param end
+       *           end of the sentence in the buffer.
+       * @param onlySentence
+       *           <code>true</code> if the sentence spans the whole text.
+       */
+      public boolean accept(int start, int end, boolean onlySentence) {
+         return onlySentence || (isQualitySentence(start, end) && !isBoilerplate(start, end));
+      }
+
+      /**
+       * Returns true if the sentence has a high quality.
+       *
+       * @param start
+       *           start of the sentence in the buffer.
+       * @param end
+       *           end of the sentence in the buffer.
+       */
+      public boolean isQualitySentence(int start, int end) {
+         return isQualitySentence(analyzer, start, end);
+      }
+
+      /**
+       * Evaluates the quality rules first, and counts the stopwords of the sentence only if no rule decides.
+       */
+      private boolean isQualitySentence(SentenceAnalyzer analyzer, int start, int end) {
+         SentenceQualityCascade rules = currentQualityRules;
+         if (rules == null) {
+            return analyzeQuality(analyzer, start, end);
+         }
+
+         boolean timed = analyzer.sampleTiming();
+         SentenceQualityRule.Decision decision = rules.decide(buffer, start, end, timed);
+         if (decision != SentenceQualityRule.Decision.ABSTAIN) {
+            return decision == SentenceQualityRule.Decision.ACCEPT;
+         }
+
+         long startTime = timed ? System.nanoTime() : 0;
+         boolean quality = analyzeQuality(analyzer, start, end);
+         rules.getStopwordStage().record(
+               quality ? SentenceQualityRule.Decision.ACCEPT : SentenceQualityRule.Decision.REJECT,
+               timed ? System.nanoTime() - startTime : -1);
+         return quality;
+      }
+
+      private boolean analyzeQuality(SentenceAnalyzer analyzer, int start, int end) {
+         if (currentVerdictCache == null) {
+            return analyzer.isQualitySentence(buffer, start, end);
+         }
+
+         long hash = SentenceVerdictCache.hash(buffer, start, end, verdictSeed);
+         int verdict = currentVerdictCache.get(hash);
+         if (verdict != SentenceVerdictCache.MISS) {
+            return verdict == 1;
+         }
+
+         boolean quality = analyzer.isQualitySentence(buffer, start, end);
+         currentVerdictCache.put(hash, quality);
+         return quality;
+      }
+
+      /**
+       * Returns true if the sentence has been counted too often in the boilerplate sketch. Does not count the
+       * sentence.
+       *
+       * @param start
+       *           start of the sentence in the buffer.
+       * @param end
+       *           end of the sentence in the buffer.
+       */
+      public boolean isBoilerplate(int start, int end) {
+         if (currentBoilerplateSketch == null) {
+            return false;
+         }
+
+         long fingerprint = BoilerplateSketch.fingerprint(buffer, start, end);
+         return fingerprint != 0 && currentBoilerplateSketch.estimate(fingerprint) > currentMaxSentenceFrequency;
+      }
+
+      /**
+       * Scores the given sentences of the buffer in parallel on a shared fork/join pool.
+       *
+       * @param sentenceEnds
+       *           the ends of consecutive sentences, the first one starts at 0.
+       * @param count
+       *           the number of sentences.
+       * @param qualities
+       *           receives the result of {@link #isQualitySentence(int, int)} of each sentence.
+       */
+      public void scoreInParallel(int[] sentenceEnds, int count, boolean[] qualities) {
+         ScoringPool.POOL.invoke(new ScoringTask(sentenceEnds, qualities, 0, count));
+      }
+
+      /**
+       * Returns the kept sentences of the given text.
+       */
+      int[] filter(CharSequence text) {
+         int[] kept = filterBuffer(textBuffer, copy(text));
+         shrinkBuffers();
+         return kept;
+      }
+
+      /**
+       * Counts the sentences of the given text in the boilerplate sketch.
+       */
+      void count(CharSequence text) {
+         countBuffer(textBuffer, copy(text));
+         shrinkBuffers();
+      }
+
+      /**
+       * Copies the text into the scratch buffer and returns its length.
+       */
+      private int copy(CharSequence text) {
+         int length = text.length();
+         if (textBuffer.length < length) {
+            textBuffer = new char[ArrayUtil.oversize(length, Character.BYTES)];
+         }
+         if (text instanceof String) {
+            ((String) text).getChars(0, length, textBuffer, 0);
+         } else {
+            for (int i = 0; i < length; i++) {
+               textBuffer[i] = text.charAt(i);
+            }
+         }
+         return length;
+      }
+
+      /**
+       * Returns the kept sentences of <code>[offset,offset+length)</code> of the given buffer.
+       */
+      int[] filter(char[] text, int offset, int length) {
+         int[] kept;
+         if (offset == 0) {
+            kept = filterBuffer(text, length);
+         } else {
+            if (textBuffer.length < length) {
+               textBuffer = new char[ArrayUtil.oversize(length, Character.BYTES)];
+            }
+            System.arraycopy(text, offset, textBuffer, 0, length);
+            kept = filterBuffer(textBuffer, length);
+         }
+         shrinkBuffers();
+         return kept;
+      }
+
+      /**
+       * Returns the scratch buffer of the session with at least the given length, which the holder of the session may
+       * use as the window of a text. Its content is undefined.
+       */
+      char[] scratchBuffer(int minLength) {
+         if (textBuffer.length < minLength) {
+            textBuffer = new char[ArrayUtil.oversize(minLength, Character.BYTES)];
+         }
+         return textBuffer;
+      }
+
+      /**
+       * Keeps the given buffer, which may have been grown from the {@link #scratchBuffer(int) scratch buffer}, as the
+       * scratch buffer for the next text.
+       */
+      void retainScratchBuffer(char[] buffer) {
+         textBuffer = buffer;
+         shrinkBuffers();
+      }
+
+      /**
+       * Returns the number of chars of the scratch buffer kept between texts.
+       */
+      int getRetainedChars() {
+         return textBuffer.length;
+      }
+
+      /**
+       * Releases scratch buffers above the retained capacity, which were needed for a large text.
+       */
+      private void shrinkBuffers() {
+         int maxChars = maxRetainedChars;
+         if (textBuffer.length > maxChars) {
+            textBuffer = new char[0];
+         }
+         // do not keep a reference to the text
+         setInput(textBuffer, 0, false);
+         // spans holds start/end pairs, and a kept sentence spans at least two chars including its boundary
+         int maxSpans = maxChars / 2;
+         if (spans.length / 2 > maxSpans) {
+            spans = new int[16];
+         }
+      }
+
+      private int[] filterBuffer(char[] text, int length) {
+         if (length > 0 && isSingleSentence(text, 0, length)) {
+            return new int[] { 0, length };
+         }
+
+         reset();
+         setInput(text, length, false);
+
+         int count = 0;
+         int index = 0;
+         while (index < length) {
+            int sentenceEnd = nextSentenceEnd(index, length, true, Integer.MAX_VALUE);
+            if (accept(index, sentenceEnd, index == 0 && sentenceEnd == length)) {
+               if (count + 2 > spans.length) {
+                  spans = ArrayUtil.grow(spans, count + 2);
+               }
+               spans[count++] = index;
+               spans[count++] = sentenceEnd;
+            }
+            index = sentenceEnd;
+         }
+
+         // do not keep a reference to the text
+         setInput(textBuffer, 0, false);
+         return count == 0 ? NO_SPANS : Arrays.copyOf(spans, count);
+      }
+
+      private void countBuffer(char[] text, int length) {
+         reset();
+         BoilerplateSketch sketch = currentBoilerplateSketch;
+         if (sketch == null || isSingleSentence(text, 0, length)) {
+            return;
+         }
+
+         setInput(text, length, false);
+         int index = 0;
+         while (index < length) {
+            int sentenceEnd = nextSentenceEnd(index, length, true, Integer.MAX_VALUE);
+            if (index > 0 || sentenceEnd < length) {
+               long fingerprint = BoilerplateSketch.fingerprint(text, index, sentenceEnd);
+               if (fingerprint != 0) {
+                  sketch.add(fingerprint);
+               }
+            }
+            index = sentenceEnd;
+         }
+
+         // do not keep a reference to the text
+         setInput(textBuffer, 0, false);
+      }
+
+      /**
+       * Scores the sentences <code>[from,to)</code> of the current text. Splits itself until the sentences of a task
+       * span at most {@link SentenceFilter#TASK_CHARS} chars.
+       */
+      private final class ScoringTask extends RecursiveAction {
+
+         private static final long serialVersionUID = 1L;
+
+         private final int[] sentenceEnds;
+         private final boolean[] qualities;
+         private final int from;
+         private final int to;
+
+         ScoringTask(int[] sentenceEnds, boolean[] qualities, int from, int to) {
+            this.sentenceEnds = sentenceEnds;
+            this.qualities = qualities;
+            this.from = from;
+            this.to = to;
+         }
+
+         @Override
+         protected void compute() {
+            int start = from == 0 ? 0 : sentenceEnds[from - 1];
+            if (to - from > 1 && sentenceEnds[to - 1] - start > TASK_CHARS) {
+               int middle = (from + to) >>> 1;
+               invokeAll(new ScoringTask(sentenceEnds, qualities, from, middle),
+                     new ScoringTask(sentenceEnds, qualities, middle, to));
+               return;
+            }
+
+            SentenceAnalyzer taskAnalyzer = analyzer.copy();
+            for (int i = from; i < to; i++) {
+               qualities[i] = isQualitySentence(taskAnalyzer, start, sentenceEnds[i]);
+               start = sentenceEnds[i];
+            }
+         }
+      }
+   }
+
+   /**
+    * The pool shared by all filters for parallel scoring and batches, created on first use.
+    */
+   private static final class ScoringPool {
+
+      static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+   }
+
+}
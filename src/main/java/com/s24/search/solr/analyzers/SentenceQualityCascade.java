@@ -0,0 +1,208 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.analysis.util.ResourceLoader;
+
+import com.s24.search.solr.analyzers.SentenceQualityRule.Decision;
+
+/**
+ * Evaluates {@link SentenceQualityRule}s cheapest first, until a rule decides the quality of a sentence. If no rule
+ * decides, the stopword ratio does, which is the last and most expensive stage of the cascade.
+ * <p>
+ * The cascade records how often each stage is evaluated, how often it decides and what it costs, so that the rules
+ * and their costs can be tuned to the observed sentences. The cost is sampled from every 64th sentence of each
+ * analyzer, so that timing does not add to the cost of cheap rules. A cascade is shared by all threads of a factory.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class SentenceQualityCascade {
+
+   /**
+    * The name of the final stage, which counts the stopwords of the sentence.
+    */
+   public static final String STOPWORDS = "stopwords";
+
+   // the built-in rules by name
+   private static final Map<String, Class<? extends SentenceQualityRule>> RULES = new HashMap<>();
+   static {
+      RULES.put("shortSentence", ShortSentenceRule.class);
+      RULES.put("digitRatio", DigitRatioRule.class);
+      RULES.put("uppercaseRatio", UppercaseRatioRule.class);
+   }
+
+   // the stages ordered by cost, without the stopwords
+   private final Stage[] rules;
+   private final Stage stopwords = new Stage(STOPWORDS, null, Integer.MAX_VALUE);
+
+   /**
+    * Creates a cascade of the given rules. Rules with the same cost are evaluated in the given order.
+    */
+   public SentenceQualityCascade(List<Stage> rules) {
+      List<Stage> ordered = new ArrayList<>(rules);
+      Collections.sort(ordered, Comparator.comparingInt(Stage::getCost));
+      this.rules = ordered.toArray(new Stage[0]);
+   }
+
+   /**
+    * Creates a rule by the name of a built-in rule (<code>shortSentence</code>, <code>digitRatio</code>,
+    * <code>uppercaseRatio</code>) or by its class name.
+    *
+    * @param args
+    *           the args of the rule.
+    * @param loader
+    *           loads rule classes by name.
+    */
+   static SentenceQualityRule createRule(String name, Map<String, String> args, ResourceLoader loader) {
+      try {
+         Class<? extends SentenceQualityRule> type = RULES.containsKey(name) ? RULES.get(name)
+               : loader.findClass(name, SentenceQualityRule.class);
+         return type.getConstructor(Map.class).newInstance(args);
+      } catch (ReflectiveOperationException e) {
+         throw new IllegalArgumentException("Cannot create sentence quality rule " + name, e);
+      }
+   }
+
+   /**
+    * Returns the decision of the first rule that decides the sentence in <code>[start,end)</code> of the buffer, or
+    * {@link Decision#ABSTAIN} if the stopwords have to decide.
+    *
+    * @param timed
+    *           <code>true</code> to sample the cost of the evaluated rules.
+    */
+   public Decision decide(char[] buffer, int start, int end, boolean timed) {
+      for (Stage stage : rules) {
+         long startTime = timed ? System.nanoTime() : 0;
+         Decision decision = stage.rule.decide(buffer, start, end);
+         stage.record(decision, timed ? System.nanoTime() - startTime : -1);
+         if (decision != Decision.ABSTAIN) {
+            return decision;
+         }
+      }
+      return Decision.ABSTAIN;
+   }
+
+   /**
+    * Returns the stages in the order of evaluation, the last stage counts the stopwords.
+    */
+   public List<Stage> getStages() {
+      List<Stage> stages = new ArrayList<>(rules.length + 1);
+      Collections.addAll(stages, rules);
+      stages.add(stopwords);
+      return stages;
+   }
+
+   /**
+    * Returns the final stage, which counts the stopwords.
+    */
+   Stage getStopwordStage() {
+      return stopwords;
+   }
+
+   /**
+    * A rule of the cascade and its statistics.
+    */
+   public static final class Stage {
+
+      private final String name;
+      private final SentenceQualityRule rule;
+      private final int cost;
+
+      private final LongAdder evaluations = new LongAdder();
+      private final LongAdder accepts = new LongAdder();
+      private final LongAdder rejects = new LongAdder();
+      private final LongAdder sampledNanos = new LongAdder();
+      private final LongAdder samples = new LongAdder();
+
+      /**
+       * @param name
+       *           the name of the rule in metrics.
+       * @param cost
+       *           the cost of the rule, which overrides {@link SentenceQualityRule#cost()}.
+       */
+      public Stage(String name, SentenceQualityRule rule, int cost) {
+         this.name = name;
+         this.rule = rule;
+         this.cost = cost;
+      }
+
+      /**
+       * @param name
+       *           the name of the rule in metrics.
+       */
+      public Stage(String name, SentenceQualityRule rule) {
+         this(name, rule, rule.cost());
+      }
+
+      /**
+       * Records a decision of the rule.
+       *
+       * @param nanos
+       *           the time the decision took, or a negative number if it has not been timed.
+       */
+      void record(Decision decision, long nanos) {
+         evaluations.increment();
+         if (decision == Decision.ACCEPT) {
+            accepts.increment();
+         } else if (decision == Decision.REJECT) {
+            rejects.increment();
+         }
+         if (nanos >= 0) {
+            sampledNanos.add(nanos);
+            samples.increment();
+         }
+      }
+
+      public String getName() {
+         return name;
+      }
+
+      public int getCost() {
+         return cost;
+      }
+
+      /**
+       * Returns the number of sentences evaluated by this rule.
+       */
+      public long getEvaluationCount() {
+         return evaluations.sum();
+      }
+
+      /**
+       * Returns the number of sentences accepted by this rule.
+       */
+      public long getAcceptCount() {
+         return accepts.sum();
+      }
+
+      /**
+       * Returns the number of sentences rejected by this rule.
+       */
+      public long getRejectCount() {
+         return rejects.sum();
+      }
+
+      /**
+       * Returns the ratio of evaluated sentences decided by this rule, or 0 if it has not been evaluated.
+       */
+      public double getDecisionRate() {
+         long evaluationCount = evaluations.sum();
+         return evaluationCount > 0 ? (accepts.sum() + rejects.sum()) / (double) evaluationCount : 0;
+      }
+
+      /**
+       * Returns the average sampled time of an evaluation in nanoseconds, or 0 if no evaluation has been sampled.
+       */
+      public double getAverageNanos() {
+         long sampleCount = samples.sum();
+         return sampleCount > 0 ? sampledNanos.sum() / (double) sampleCount : 0;
+      }
+   }
+
+}
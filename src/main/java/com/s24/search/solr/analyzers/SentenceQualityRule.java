@@ -0,0 +1,49 @@
+package com.s24.search.solr.analyzers;
+
+/**
+ * A cheap signal for the quality of a sentence, which is checked before its stopwords are counted. Rules are
+ * evaluated by a {@link SentenceQualityCascade} in the order of their cost, the first rule that does not
+ * {@link Decision#ABSTAIN abstain} decides the sentence. If all rules abstain, the stopword ratio decides.
+ * <p>
+ * Rules are configured in the {@link AnalyzingSentenceTokenizerFactory} by name or by class name. A rule class must
+ * have a public constructor that takes a <code>Map&lt;String, String&gt;</code> of its args. A rule is shared by all
+ * threads of a factory, so it must be thread-safe.
+ *
+ * @author Shopping24 GmbH
+ */
+public interface SentenceQualityRule {
+
+   /**
+    * The decision of a rule.
+    */
+   enum Decision {
+
+      /**
+       * The sentence has a high quality and is kept.
+       */
+      ACCEPT,
+
+      /**
+       * The sentence has a low quality and is removed.
+       */
+      REJECT,
+
+      /**
+       * The rule does not decide, the next rule is evaluated.
+       */
+      ABSTAIN
+   }
+
+   /**
+    * Decides the quality of the sentence in <code>[start,end)</code> of the buffer.
+    */
+   Decision decide(char[] buffer, int start, int end);
+
+   /**
+    * Returns the estimated cost of a decision, rules with a lower cost are evaluated first. By convention, a rule that
+    * only looks at the bounds of the sentence costs 0, and a rule that looks at each char once costs 10. The
+    * configured cost of a rule takes precedence.
+    */
+   int cost();
+
+}
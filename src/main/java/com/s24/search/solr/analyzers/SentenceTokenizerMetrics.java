@@ -0,0 +1,154 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
+
+/**
+ * Metrics of all tokenizers of an {@link AnalyzingSentenceTokenizerFactory}.
+ * <p>
+ * Tokenizers count sentences in plain fields and report them once per document in
+ * {@link AnalyzingSentenceTokenizer#end()}, so the striped counters and the histograms are updated once per document
+ * instead of once per sentence. The histograms keep the documents of the last minute in lock-free reservoirs, so that
+ * indexing threads do not contend on a reservoir lock. As long as the metrics are not
+ * {@link #register(MetricRegistry, String, Map) registered}, tokenizers do not count anything.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class SentenceTokenizerMetrics {
+
+   private final Counter documents = new Counter();
+   private final Counter sentences = new Counter();
+   private final Counter emitted = new Counter();
+   private final Counter dropped = new Counter();
+   private final Counter commaSplits = new Counter();
+   private final Histogram bufferedChars = new Histogram(new SlidingTimeWindowArrayReservoir(1, TimeUnit.MINUTES));
+   private final Histogram documentNanos = new Histogram(new SlidingTimeWindowArrayReservoir(1, TimeUnit.MINUTES));
+
+   private volatile boolean enabled;
+
+   // guarded by this
+   private MetricRegistry registry;
+   private final List<String> names = new ArrayList<>();
+
+   /**
+    * Adds the metrics to the registry and enables reporting.
+    *
+    * @param prefix
+    *           the prefix of all metric names.
+    * @param gauges
+    *           additional gauges by name, e.g. for the stopword set of the factory.
+    */
+   public synchronized void register(MetricRegistry registry, String prefix, Map<String, Gauge<?>> gauges) {
+      unregister();
+
+      this.registry = registry;
+      register(prefix, "documents", documents);
+      register(prefix, "sentences", sentences);
+      register(prefix, "sentences.emitted", emitted);
+      register(prefix, "sentences.dropped", dropped);
+      register(prefix, "sentences.commaSplits", commaSplits);
+      register(prefix, "bufferedChars", bufferedChars);
+      register(prefix, "documentNanos", documentNanos);
+      for (Map.Entry<String, Gauge<?>> gauge : gauges.entrySet()) {
+         register(prefix, gauge.getKey(), gauge.getValue());
+      }
+      enabled = true;
+   }
+
+   private void register(String prefix, String name, Metric metric) {
+      String fullName = MetricRegistry.name(prefix, name);
+      registry.remove(fullName);
+      registry.register(fullName, metric);
+      names.add(fullName);
+   }
+
+   /**
+    * Removes the metrics from the registry and disables reporting.
+    */
+   public synchronized void unregister() {
+      enabled = false;
+      if (registry != null) {
+         for (String name : names) {
+            registry.remove(name);
+         }
+         names.clear();
+         registry = null;
+      }
+   }
+
+   /**
+    * Returns <code>true</code> if tokenizers should report their documents.
+    */
+   public boolean isEnabled() {
+      return enabled;
+   }
+
+   /**
+    * Records a document.
+    *
+    * @param sentenceCount
+    *           number of analyzed sentences, including the parts of comma split sentences.
+    * @param emittedCount
+    *           number of emitted sentences.
+    * @param commaSplitCount
+    *           number of sentences split at a comma.
+    * @param bufferSize
+    *           size of the input buffer of the tokenizer in chars.
+    * @param nanos
+    *           time the tokenizer spent on the document, without the time of its consumers.
+    */
+   void record(int sentenceCount, int emittedCount, int commaSplitCount, int bufferSize, long nanos) {
+      documents.inc();
+      sentences.inc(sentenceCount);
+      emitted.inc(emittedCount);
+      dropped.inc(sentenceCount - emittedCount);
+      commaSplits.inc(commaSplitCount);
+      bufferedChars.update(bufferSize);
+      documentNanos.update(nanos);
+   }
+
+   /**
+    * Returns the number of recorded documents.
+    */
+   public long getDocumentCount() {
+      return documents.getCount();
+   }
+
+   /**
+    * Returns the number of analyzed sentences.
+    */
+   public long getSentenceCount() {
+      return sentences.getCount();
+   }
+
+   /**
+    * Returns the number of emitted sentences.
+    */
+   public long getEmittedCount() {
+      return emitted.getCount();
+   }
+
+   /**
+    * Returns the number of filtered sentences.
+    */
+   public long getDroppedCount() {
+      return dropped.getCount();
+   }
+
+   /**
+    * Returns the number of sentences split at a comma.
+    */
+   public long getCommaSplitCount() {
+      return commaSplits.getCount();
+   }
+
+}
@@ -0,0 +1,195 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of sentence quality verdicts, shared by all tokenizers of a factory. Product descriptions repeat the
+ * same boilerplate sentences across many documents, so a verdict that is cached once skips the stopword analysis for
+ * all further occurrences.
+ * <p>
+ * Sentences are identified by a 64 bit hash of their chars, which is seeded with the stopword set and the thresholds
+ * the verdict was computed with, see {@link #seed(StopwordDictionary, float, int)}. Verdicts of a replaced stopword
+ * set are never hit again and age out of the cache. The sentence itself is not stored, so a hash collision may return
+ * the verdict of another sentence, which is unlikely enough for a quality heuristic.
+ * <p>
+ * The cache is a set-associative table of <code>long</code> entries that holds the hash and the verdict in a single
+ * value. Each hash maps to a set of four entries, which are kept in least recently used order. Reads and
+ * writes are lock-free. Concurrent updates of the same set may lose an entry or the order of a set, which only costs a
+ * cache miss.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class SentenceVerdictCache {
+
+   /**
+    * Returned by {@link #get(long)} if the sentence is not cached.
+    */
+   public static final int MISS = -1;
+
+   // entries per set
+   private static final int WAYS = 4;
+
+   // the lowest bit of an entry is the verdict, 0 is an empty entry
+   private static final long VERDICT_BIT = 1L;
+   private static final long EMPTY = 0L;
+
+   private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+   private final AtomicLongArray entries;
+   private final int setMask;
+   private final LongAdder hits = new LongAdder();
+   private final LongAdder misses = new LongAdder();
+
+   /**
+    * Creates a cache.
+    *
+    * @param maxSize
+    *           the maximum number of verdicts held. Rounded up to a power of two.
+    */
+   public SentenceVerdictCache(int maxSize) {
+      if (maxSize < 1) {
+         throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+      }
+
+      int minSets = (maxSize - 1) / WAYS + 1;
+      int sets = minSets == 1 ? 1 : Integer.highestOneBit(minSets - 1) << 1;
+      entries = new AtomicLongArray(sets * WAYS);
+      setMask = sets - 1;
+   }
+
+   /**
+    * Returns the seed for sentences analyzed with the given stopwords and thresholds.
+    */
+   public static long seed(StopwordDictionary stopWords, float maxStopwordRatio, int minSentenceLength) {
+      long seed = System.identityHashCode(stopWords);
+      seed = seed * HASH_MULTIPLIER + Float.floatToIntBits(maxStopwordRatio);
+      seed = seed * HASH_MULTIPLIER + minSentenceLength;
+      return mix(seed);
+   }
+
+   /**
+    * Returns the hash of the sentence in <code>[start,end)</code> of the buffer.
+    *
+    * @param seed
+    *           the seed of the stopwords and thresholds, see {@link #seed(StopwordDictionary, float, int)}.
+    */
+   public static long hash(char[] buffer, int start, int end, long seed) {
+      long hash = seed;
+      for (int i = start; i < end; i++) {
+         hash = (hash + buffer[i]) * HASH_MULTIPLIER;
+      }
+      return mix(hash ^ (end - start));
+   }
+
+   /**
+    * Finalization step of MurmurHash3, spreads all bits of the hash.
+    */
+   private static long mix(long hash) {
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      hash *= 0xc4ceb9fe1a85ec53L;
+      hash ^= hash >>> 33;
+      return hash;
+   }
+
+   /**
+    * Returns the entry key of the hash, which is never {@link #EMPTY}.
+    */
+   private static long key(long hash) {
+      long key = hash & ~VERDICT_BIT;
+      return key == EMPTY ? 2L : key;
+   }
+
+   /**
+    * Returns the first entry of the set of the given key.
+    */
+   private int set(long key) {
+      return ((int) (key >>> 32) & setMask) * WAYS;
+   }
+
+   /**
+    * Returns the cached verdict of a sentence.
+    *
+    * @param hash
+    *           the hash of the sentence, see {@link #hash(char[], int, int, long)}.
+    * @return 1 if the sentence is a quality sentence, 0 if not, or {@link #MISS}.
+    */
+   public int get(long hash) {
+      long key = key(hash);
+      int set = set(key);
+      for (int i = 0; i < WAYS; i++) {
+         long entry = entries.get(set + i);
+         if ((entry & ~VERDICT_BIT) == key) {
+            // move the entry to the front of the set
+            for (int j = i; j > 0; j--) {
+               entries.lazySet(set + j, entries.get(set + j - 1));
+            }
+            entries.lazySet(set, entry);
+            hits.increment();
+            return (int) (entry & VERDICT_BIT);
+         }
+      }
+
+      misses.increment();
+      return MISS;
+   }
+
+   /**
+    * Caches the verdict of a sentence. The least recently used entry of its set is evicted.
+    *
+    * @param hash
+    *           the hash of the sentence, see {@link #hash(char[], int, int, long)}.
+    * @param quality
+    *           the verdict.
+    */
+   public void put(long hash, boolean quality) {
+      long key = key(hash);
+      int set = set(key);
+      for (int j = WAYS - 1; j > 0; j--) {
+         entries.lazySet(set + j, entries.get(set + j - 1));
+      }
+      entries.lazySet(set, quality ? key | VERDICT_BIT : key);
+   }
+
+   /**
+    * Removes all verdicts.
+    */
+   public void clear() {
+      for (int i = 0; i < entries.length(); i++) {
+         entries.lazySet(i, EMPTY);
+      }
+   }
+
+   /**
+    * Returns the maximum number of verdicts held.
+    */
+   public int capacity() {
+      return entries.length();
+   }
+
+   /**
+    * Returns the number of lookups that found a verdict.
+    */
+   public long getHitCount() {
+      return hits.sum();
+   }
+
+   /**
+    * Returns the number of lookups that did not find a verdict.
+    */
+   public long getMissCount() {
+      return misses.sum();
+   }
+
+   /**
+    * Returns the ratio of lookups that found a verdict, or 0 if there were no lookups.
+    */
+   public double getHitRate() {
+      long hitCount = hits.sum();
+      long lookups = hitCount + misses.sum();
+      return lookups > 0 ? hitCount / (double) lookups : 0;
+   }
+
+}
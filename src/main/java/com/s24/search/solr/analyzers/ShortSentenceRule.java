@@ -0,0 +1,48 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.Map;
+
+/**
+ * Accepts sentences with fewer than <code>minSentenceLength</code> words. Short sentences are always kept, so this
+ * takes the same decision as the stopword analysis for them, but only counts words up to the limit and does not look
+ * them up:
+ *
+ * <pre>
+ * qualityRules="shortSentence"
+ * </pre>
+ *
+ * The <code>minSentenceLength</code> arg defaults to the one of the tokenizer.
+ *
+ * @author Shopping24 GmbH
+ */
+public class ShortSentenceRule implements SentenceQualityRule {
+
+   static final String MIN_SENTENCE_LENGTH_ARG = "minSentenceLength";
+   private final int minSentenceLength;
+
+   /**
+    * Rule gets constructed with the configured args.
+    */
+   public ShortSentenceRule(Map<String, String> args) {
+      String minSentenceLength = args.get(MIN_SENTENCE_LENGTH_ARG);
+      if (minSentenceLength == null) {
+         throw new IllegalArgumentException("The " + MIN_SENTENCE_LENGTH_ARG + " param is not set.");
+      }
+      this.minSentenceLength = Integer.parseInt(minSentenceLength);
+   }
+
+   /**
+    * Words are counted like in the stopword analysis, see {@link SentenceAnalyzer#countWords(char[], int, int, int)}.
+    */
+   @Override
+   public Decision decide(char[] buffer, int start, int end) {
+      return SentenceAnalyzer.countWords(buffer, start, end, minSentenceLength) < minSentenceLength ? Decision.ACCEPT
+            : Decision.ABSTAIN;
+   }
+
+   @Override
+   public int cost() {
+      return 0;
+   }
+
+}
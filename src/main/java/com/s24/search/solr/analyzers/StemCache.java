@@ -0,0 +1,177 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of stems, shared by all {@link StemmingBufferFilter}s of a factory. Stemming is dominated by a small
+ * working set of frequent words, so most tokens are stemmed by a lookup instead of running the stemmer.
+ * <p>
+ * Terms are looked up by <code>char[]</code> slices and stems are written straight to the
+ * {@link StemmingBufferAttribute}, so a hit does not allocate. The cache is a set-associative table of immutable
+ * entries. Each term maps to a set of two entries, which are kept in least recently used order. Reads and writes are
+ * lock-free, a miss allocates a single entry. Concurrent updates of the same set may lose an entry, which only costs a
+ * cache miss.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class StemCache {
+
+   // entries per set
+   private static final int WAYS = 2;
+
+   private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+   private final AtomicReferenceArray<Entry> entries;
+   private final int setMask;
+   private final LongAdder hits = new LongAdder();
+   private final LongAdder misses = new LongAdder();
+
+   /**
+    * Creates a cache.
+    *
+    * @param maxSize
+    *           the maximum number of stems held. Rounded up to a power of two.
+    */
+   public StemCache(int maxSize) {
+      if (maxSize < 1) {
+         throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+      }
+
+      int minSets = (maxSize - 1) / WAYS + 1;
+      int sets = minSets == 1 ? 1 : Integer.highestOneBit(minSets - 1) << 1;
+      entries = new AtomicReferenceArray<>(sets * WAYS);
+      setMask = sets - 1;
+   }
+
+   /**
+    * Returns the hash of the term in <code>[offset,offset+length)</code> of the buffer.
+    */
+   private static int hash(char[] buffer, int offset, int length) {
+      int hash = length;
+      for (int i = offset; i < offset + length; i++) {
+         hash = (hash + buffer[i]) * HASH_MULTIPLIER;
+      }
+      return hash ^ (hash >>> 16);
+   }
+
+   /**
+    * Returns the first entry of the set of the given hash.
+    */
+   private int set(int hash) {
+      return (hash & setMask) * WAYS;
+   }
+
+   /**
+    * Looks up the stem of the term in <code>[offset,offset+length)</code> of the buffer and writes it to the given
+    * attribute.
+    *
+    * @return <code>true</code> if the stem was cached.
+    */
+   public boolean get(char[] buffer, int offset, int length, StemmingBufferAttribute target) {
+      int hash = hash(buffer, offset, length);
+      int set = set(hash);
+      for (int i = 0; i < WAYS; i++) {
+         Entry entry = entries.get(set + i);
+         if (entry != null && entry.matches(hash, buffer, offset, length)) {
+            // move the entry to the front of the set
+            if (i > 0) {
+               entries.lazySet(set + i, entries.get(set));
+               entries.lazySet(set, entry);
+            }
+            target.setStemmedToken(entry.stem, entry.stem.length);
+            hits.increment();
+            return true;
+         }
+      }
+
+      misses.increment();
+      return false;
+   }
+
+   /**
+    * Caches the stem of the term in <code>[offset,offset+length)</code> of the buffer. The least recently used entry
+    * of its set is evicted.
+    */
+   public void put(char[] buffer, int offset, int length, char[] stem, int stemLength) {
+      int hash = hash(buffer, offset, length);
+      int set = set(hash);
+      char[] term = new char[length];
+      System.arraycopy(buffer, offset, term, 0, length);
+      char[] stemCopy = new char[stemLength];
+      System.arraycopy(stem, 0, stemCopy, 0, stemLength);
+
+      for (int j = WAYS - 1; j > 0; j--) {
+         entries.lazySet(set + j, entries.get(set + j - 1));
+      }
+      entries.lazySet(set, new Entry(hash, term, stemCopy));
+   }
+
+   /**
+    * Removes all stems.
+    */
+   public void clear() {
+      for (int i = 0; i < entries.length(); i++) {
+         entries.lazySet(i, null);
+      }
+   }
+
+   /**
+    * Returns the maximum number of stems held.
+    */
+   public int capacity() {
+      return entries.length();
+   }
+
+   /**
+    * Returns the number of lookups that found a stem.
+    */
+   public long getHitCount() {
+      return hits.sum();
+   }
+
+   /**
+    * Returns the number of lookups that did not find a stem.
+    */
+   public long getMissCount() {
+      return misses.sum();
+   }
+
+   /**
+    * Returns the ratio of lookups that found a stem, or 0 if there were no lookups.
+    */
+   public double getHitRate() {
+      long hitCount = hits.sum();
+      long lookups = hitCount + misses.sum();
+      return lookups > 0 ? hitCount / (double) lookups : 0;
+   }
+
+   /**
+    * A term and its stem.
+    */
+   private static final class Entry {
+
+      final int hash;
+      final char[] term;
+      final char[] stem;
+
+      Entry(int hash, char[] term, char[] stem) {
+         this.hash = hash;
+         this.term = term;
+         this.stem = stem;
+      }
+
+      boolean matches(int hash, char[] buffer, int offset, int length) {
+         if (this.hash != hash || term.length != length) {
+            return false;
+         }
+         for (int i = 0; i < length; i++) {
+            if (term[i] != buffer[offset + i]) {
+               return false;
+            }
+         }
+         return true;
+      }
+   }
+
+}
@@ -1,6 +1,7 @@
 package com.s24.search.solr.analyzers;
 
 import org.apache.lucene.util.Attribute;
+import org.apache.lucene.util.CharsRef;
 
 /**
  * @see StemmingBufferAttributeImpl
@@ -15,12 +16,24 @@ public interface StemmingBufferAttribute extends Attribute {
 
    public int getOriginalTokenLength();
 
+   /**
+    * Returns a view of the original token. The view is reused and only valid until the attribute is changed, it must
+    * not be modified.
+    */
+   public CharsRef getOriginalTokenRef();
+
    public void setStemmedToken(char[] buffer, int length);
 
    public char[] getStemmedToken();
 
    public int getStemmedTokenLength();
 
+   /**
+    * Returns a view of the stemmed token. The view is reused and only valid until the attribute is changed, it must
+    * not be modified.
+    */
+   public CharsRef getStemmedTokenRef();
+
    boolean isStemmedTokenHasBeenEmitted();
 
    void setStemmedTokenHasBeenEmitted(boolean stemmedTokenHasBeenEmitted);
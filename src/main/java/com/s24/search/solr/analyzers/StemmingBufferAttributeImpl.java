@@ -1,12 +1,16 @@
 package com.s24.search.solr.analyzers;
 
-import java.util.Arrays;
-
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.AttributeImpl;
 import org.apache.lucene.util.AttributeReflector;
+import org.apache.lucene.util.CharsRef;
 
 /**
  * Attribute that stores the original and the stemmed token.
+ * <p>
+ * The buffers grow by {@link ArrayUtil#oversize(int, int)}, so tokens of slowly increasing length do not reallocate
+ * them each time. Filters that capture and restore the state of each token, like synonym or shingle filters, copy
+ * into the existing buffers of the target, which does not allocate once they are large enough.
  * 
  * @author Shopping24 GmbH
  */
@@ -20,6 +24,10 @@ public class StemmingBufferAttributeImpl extends AttributeImpl implements Stemmi
 
    private boolean stemmedTokenHasBeenEmitted = false;
 
+   // reusable views of the tokens, updated when requested
+   private CharsRef stemmedTokenRef = new CharsRef();
+   private CharsRef originalTokenRef = new CharsRef();
+
    @Override
    public void clear() {
       stemmedTokenLength = 0;
@@ -28,26 +36,29 @@ public class StemmingBufferAttributeImpl extends AttributeImpl implements Stemmi
    }
 
    /**
-    * We just want to create a new array if the length differs.
+    * Copies into the buffers of the target, which are only replaced if they are too small.
     */
    @Override
    public void copyTo(AttributeImpl input) {
       StemmingBufferAttributeImpl copyAttributeImpl = (StemmingBufferAttributeImpl) input;
-      if (copyAttributeImpl.stemmedToken.length < stemmedTokenLength) {
-         copyAttributeImpl.stemmedToken = new char[stemmedTokenLength];
-      }
-      System.arraycopy(stemmedToken, 0, copyAttributeImpl.stemmedToken, 0, stemmedTokenLength);
-
-      if (copyAttributeImpl.originalToken.length < originalTokenLength) {
-         copyAttributeImpl.originalToken = new char[originalTokenLength];
-      }
-      System.arraycopy(originalToken, 0, copyAttributeImpl.originalToken, 0, originalTokenLength);
-
-      copyAttributeImpl.stemmedTokenLength = stemmedTokenLength;
-      copyAttributeImpl.originalTokenLength = originalTokenLength;
+      copyAttributeImpl.setStemmedToken(stemmedToken, stemmedTokenLength);
+      copyAttributeImpl.setOriginalToken(originalToken, originalTokenLength);
       copyAttributeImpl.stemmedTokenHasBeenEmitted = stemmedTokenHasBeenEmitted;
    }
 
+   /**
+    * Copies only the used part of the buffers.
+    */
+   @Override
+   public StemmingBufferAttributeImpl clone() {
+      StemmingBufferAttributeImpl clone = (StemmingBufferAttributeImpl) super.clone();
+      clone.stemmedToken = ArrayUtil.copyOfSubArray(stemmedToken, 0, stemmedTokenLength);
+      clone.originalToken = ArrayUtil.copyOfSubArray(originalToken, 0, originalTokenLength);
+      clone.stemmedTokenRef = new CharsRef();
+      clone.originalTokenRef = new CharsRef();
+      return clone;
+   }
+
    @Override
    public void setOriginalToken(char[] buffer, int length) {
       originalToken = assureArrayLenth(originalToken, length);
@@ -72,6 +83,13 @@ public class StemmingBufferAttributeImpl extends AttributeImpl implements Stemmi
       return originalTokenLength;
    }
 
+   @Override
+   public CharsRef getOriginalTokenRef() {
+      originalTokenRef.chars = originalToken;
+      originalTokenRef.length = originalTokenLength;
+      return originalTokenRef;
+   }
+
    @Override
    public char[] getStemmedToken() {
       return stemmedToken;
@@ -82,6 +100,13 @@ public class StemmingBufferAttributeImpl extends AttributeImpl implements Stemmi
       return stemmedTokenLength;
    }
 
+   @Override
+   public CharsRef getStemmedTokenRef() {
+      stemmedTokenRef.chars = stemmedToken;
+      stemmedTokenRef.length = stemmedTokenLength;
+      return stemmedTokenRef;
+   }
+
    @Override
    public boolean isStemmedTokenHasBeenEmitted() {
       return stemmedTokenHasBeenEmitted;
@@ -92,28 +117,71 @@ public class StemmingBufferAttributeImpl extends AttributeImpl implements Stemmi
       this.stemmedTokenHasBeenEmitted = stemmedTokenHasBeenEmitted;
    }
 
+   /**
+    * Returns the array if it has the given length, or a larger one with the content of the array. Grows by
+    * {@link ArrayUtil#oversize(int, int)}.
+    */
    protected char[] assureArrayLenth(char[] array, int length) {
-      if (array.length < length) {
-         char[] newArray = new char[length];
-         System.arraycopy(array, 0, newArray, 0, array.length);
-         return newArray;
-      } else {
-         return array;
+      return ArrayUtil.grow(array, length);
+   }
+
+   @Override
+   public boolean equals(Object other) {
+      if (this == other) {
+         return true;
+      }
+      if (!(other instanceof StemmingBufferAttributeImpl)) {
+         return false;
+      }
+
+      StemmingBufferAttributeImpl o = (StemmingBufferAttributeImpl) other;
+      return stemmedTokenHasBeenEmitted == o.stemmedTokenHasBeenEmitted
+            && equals(stemmedToken, stemmedTokenLength, o.stemmedToken, o.stemmedTokenLength)
+            && equals(originalToken, originalTokenLength, o.originalToken, o.originalTokenLength);
+   }
+
+   private static boolean equals(char[] a, int aLength, char[] b, int bLength) {
+      if (aLength != bLength) {
+         return false;
       }
+      for (int i = 0; i < aLength; i++) {
+         if (a[i] != b[i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   @Override
+   public int hashCode() {
+      int hash = stemmedTokenHasBeenEmitted ? 1 : 0;
+      hash = 31 * hash + hashCode(stemmedToken, stemmedTokenLength);
+      return 31 * hash + hashCode(originalToken, originalTokenLength);
+   }
+
+   private static int hashCode(char[] array, int length) {
+      int hash = 1;
+      for (int i = 0; i < length; i++) {
+         hash = 31 * hash + array[i];
+      }
+      return hash;
    }
 
    @Override
    public String toString() {
-      return "StemmingBufferAttributeImpl [stemmedToken=" + Arrays.toString(stemmedToken) + ", stemmedTokenLength="
-            + stemmedTokenLength + ", originalToken=" + Arrays.toString(originalToken) + ", originalTokenLength="
-            + originalTokenLength + "]";
+      return "StemmingBufferAttributeImpl [stemmedToken=" + new String(stemmedToken, 0, stemmedTokenLength)
+            + ", originalToken=" + new String(originalToken, 0, originalTokenLength) + ", stemmedTokenHasBeenEmitted="
+            + stemmedTokenHasBeenEmitted + "]";
    }
 
+   /**
+    * Reflects the used part of the buffers only.
+    */
    @Override
    public void reflectWith(AttributeReflector reflector) {
-      reflector.reflect(StemmingBufferAttribute.class, "stemmedToken", stemmedToken);
-      reflector.reflect(StemmingBufferAttribute.class, "stemmedTokenLength", stemmedTokenLength);
-      reflector.reflect(StemmingBufferAttribute.class, "originalToken", originalToken);
-      reflector.reflect(StemmingBufferAttribute.class, "originalTokenLength", originalTokenLength);
+      reflector.reflect(StemmingBufferAttribute.class, "stemmedToken", new String(stemmedToken, 0, stemmedTokenLength));
+      reflector.reflect(StemmingBufferAttribute.class, "originalToken",
+            new String(originalToken, 0, originalTokenLength));
+      reflector.reflect(StemmingBufferAttribute.class, "stemmedTokenHasBeenEmitted", stemmedTokenHasBeenEmitted);
    }
 }
@@ -0,0 +1,186 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.util.TokenFilterFactory;
+
+/**
+ * Emits each token in its original and its stemmed form at the same position. Replaces a chain of
+ * <code>KeywordRepeatFilter</code>, a stemmer and <code>RemoveDuplicatesTokenFilter</code>, which pushes every token
+ * through the chain twice and captures and restores the state of every token.
+ * <p>
+ * Each token is stemmed by a separate stemmer chain, which is fed with the term of the token only. Both forms are kept
+ * in the {@link StemmingBufferAttribute}. The original form is emitted first and marked as keyword, so that following
+ * stemmers do not stem it again. The stemmed form follows with a position increment of 0 and all other attributes of
+ * the original token. If both forms are equal, or the token is a keyword, only the original token is emitted.
+ * <p>
+ * Stems can be cached across filters and threads, see {@link StemCache}.
+ * <p>
+ * Only the first stem of each token is emitted, further stems of stemmers with several stems per token are dropped.
+ * <p>
+ * The attributes of the original token are not captured, so attributes changed by following filters on the original
+ * form are changed on the stemmed form as well.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class StemmingBufferFilter extends TokenFilter {
+
+   private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+   private final KeywordAttribute keywordAtt = addAttribute(KeywordAttribute.class);
+   private final PositionIncrementAttribute positionIncrementAtt = addAttribute(PositionIncrementAttribute.class);
+   private final StemmingBufferAttribute stemmingBufferAtt = addAttribute(StemmingBufferAttribute.class);
+
+   // the stemmer chain, which is fed one term at a time
+   private final SingleTermStream stemmerInput = new SingleTermStream();
+   private final TokenStream stemmer;
+   private final CharTermAttribute stemmedTermAtt;
+   private final StemCache cache;
+
+   // the stemmed form of the last token has to be emitted
+   private boolean stemmedPending;
+
+   /**
+    * Creates a filter.
+    *
+    * @param input
+    *           the input.
+    * @param stemmerFactory
+    *           the factory of the stemmer, e.g. a <code>PorterStemFilterFactory</code>.
+    */
+   public StemmingBufferFilter(TokenStream input, TokenFilterFactory stemmerFactory) {
+      this(input, stemmerFactory, null);
+   }
+
+   /**
+    * Creates a filter.
+    *
+    * @param input
+    *           the input.
+    * @param stemmerFactory
+    *           the factory of the stemmer, e.g. a <code>PorterStemFilterFactory</code>.
+    * @param cache
+    *           the cache of stems of this stemmer, which may be shared with other filters, or <code>null</code> to
+    *           stem every token.
+    */
+   public StemmingBufferFilter(TokenStream input, TokenFilterFactory stemmerFactory, StemCache cache) {
+      super(input);
+      stemmer = stemmerFactory.create(stemmerInput);
+      stemmedTermAtt = stemmer.getAttribute(CharTermAttribute.class);
+      this.cache = cache;
+   }
+
+   @Override
+   public boolean incrementToken() throws IOException {
+      if (stemmedPending) {
+         termAtt.copyBuffer(stemmingBufferAtt.getStemmedToken(), 0, stemmingBufferAtt.getStemmedTokenLength());
+         keywordAtt.setKeyword(false);
+         positionIncrementAtt.setPositionIncrement(0);
+         stemmingBufferAtt.setStemmedTokenHasBeenEmitted(true);
+         stemmedPending = false;
+         return true;
+      }
+
+      if (!input.incrementToken()) {
+         return false;
+      }
+
+      stemmingBufferAtt.clear();
+      stemmingBufferAtt.setOriginalToken(termAtt.buffer(), termAtt.length());
+      if (keywordAtt.isKeyword()) {
+         return true;
+      }
+
+      if (cache == null || !cache.get(termAtt.buffer(), 0, termAtt.length(), stemmingBufferAtt)) {
+         stem();
+         if (cache != null) {
+            cache.put(termAtt.buffer(), 0, termAtt.length(), stemmingBufferAtt.getStemmedToken(),
+                  stemmingBufferAtt.getStemmedTokenLength());
+         }
+      }
+
+      if (!equalsOriginal(stemmingBufferAtt.getStemmedToken(), stemmingBufferAtt.getStemmedTokenLength())) {
+         keywordAtt.setKeyword(true);
+         stemmedPending = true;
+      } else {
+         stemmingBufferAtt.setStemmedTokenHasBeenEmitted(true);
+      }
+      return true;
+   }
+
+   /**
+    * Stems the current term into the stemming buffer. A stemmer may also drop the token, which keeps the original
+    * form. Each term is a complete stream for the stemmer chain, which is reset, consumed to its end and closed, so
+    * that stemmers with several stems per term, e.g. Hunspell, or with state across tokens start from a clean state.
+    * Only the first stem is used.
+    */
+   private void stem() throws IOException {
+      stemmer.reset();
+      stemmerInput.setTerm(termAtt.buffer(), termAtt.length());
+      try {
+         if (stemmer.incrementToken()) {
+            stemmingBufferAtt.setStemmedToken(stemmedTermAtt.buffer(), stemmedTermAtt.length());
+            while (stemmer.incrementToken()) {
+               // drop further stems
+            }
+         } else {
+            stemmingBufferAtt.setStemmedToken(termAtt.buffer(), termAtt.length());
+         }
+         stemmer.end();
+      } finally {
+         stemmer.close();
+      }
+   }
+
+   private boolean equalsOriginal(char[] stemmed, int length) {
+      if (length != termAtt.length()) {
+         return false;
+      }
+      char[] original = termAtt.buffer();
+      for (int i = 0; i < length; i++) {
+         if (stemmed[i] != original[i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   @Override
+   public void reset() throws IOException {
+      super.reset();
+      stemmedPending = false;
+   }
+
+   /**
+    * Token stream that returns a single term after it has been reset and the term has been set.
+    */
+   private static final class SingleTermStream extends TokenStream {
+
+      private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+      private boolean available;
+
+      void setTerm(char[] buffer, int length) {
+         clearAttributes();
+         termAtt.copyBuffer(buffer, 0, length);
+         available = true;
+      }
+
+      @Override
+      public boolean incrementToken() {
+         boolean result = available;
+         available = false;
+         return result;
+      }
+
+      @Override
+      public void reset() throws IOException {
+         super.reset();
+         available = false;
+      }
+   }
+
+}
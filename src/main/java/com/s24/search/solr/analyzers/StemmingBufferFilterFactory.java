@@ -0,0 +1,137 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.apache.lucene.analysis.util.ResourceLoaderAware;
+import org.apache.lucene.analysis.util.TokenFilterFactory;
+import org.apache.solr.metrics.SolrMetricProducer;
+import org.apache.solr.metrics.SolrMetricsContext;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Factory of {@link StemmingBufferFilter}s. The stemmer is given by the SPI name of its factory, all other args are
+ * passed to the stemmer factory:
+ *
+ * <pre>
+ * &lt;filter class="com.s24.search.solr.analyzers.StemmingBufferFilterFactory" stemmer="snowballPorter"
+ *         language="German2" cacheSize="65536" /&gt;
+ * </pre>
+ *
+ * If a cache size is set, all filters of this factory share a {@link StemCache}. Its hit rate is published by the
+ * {@link AnalyzingSentenceMetricsComponent}.
+ *
+ * @see StemmingBufferFilter
+ *
+ * @author Shopping24 GmbH
+ */
+public class StemmingBufferFilterFactory extends TokenFilterFactory
+      implements ResourceLoaderAware, SolrMetricProducer {
+
+   // the SPI name of the stemmer factory, e.g. porterStem or germanLightStem
+   private static final String STEMMER_ARG = "stemmer";
+   private final TokenFilterFactory stemmerFactory;
+
+   // the maximum number of cached stems, 0 disables the cache
+   private static final String CACHE_SIZE_ARG = "cacheSize";
+   private StemCache cache;
+
+   private SolrMetricsContext solrMetricsContext;
+   // guarded by this
+   private MetricRegistry registry;
+   private final List<String> metricNames = new ArrayList<>();
+
+   /**
+    * Filter gets constructed with the configured args.
+    */
+   public StemmingBufferFilterFactory(Map<String, String> args) {
+      super(args);
+
+      Map<String, String> stemmerArgs = new HashMap<>(args);
+      String stemmer = stemmerArgs.remove(STEMMER_ARG);
+      if (stemmer == null) {
+         throw new IllegalArgumentException("The " + STEMMER_ARG + " param is not set.");
+      }
+
+      String cacheSize = stemmerArgs.remove(CACHE_SIZE_ARG);
+      if (cacheSize != null && Integer.parseInt(cacheSize) > 0) {
+         cache = new StemCache(Integer.parseInt(cacheSize));
+      }
+
+      stemmerFactory = TokenFilterFactory.forName(stemmer, stemmerArgs);
+   }
+
+   @Override
+   public void inform(ResourceLoader loader) throws IOException {
+      if (stemmerFactory instanceof ResourceLoaderAware) {
+         ((ResourceLoaderAware) stemmerFactory).inform(loader);
+      }
+   }
+
+   /**
+    * Returns the cache of stems shared by all filters of this factory, or <code>null</code> if no cache size is set.
+    */
+   public StemCache getStemCache() {
+      return cache;
+   }
+
+   /**
+    * Publishes the hit rate and the hit and miss counts of the stem cache, if enabled.
+    */
+   @Override
+   public synchronized void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+      close();
+      solrMetricsContext = parentContext;
+      if (cache == null) {
+         return;
+      }
+
+      Map<String, Gauge<?>> gauges = new LinkedHashMap<>();
+      gauges.put("hitRate", (Gauge<Double>) cache::getHitRate);
+      gauges.put("hitCount", (Gauge<Long>) cache::getHitCount);
+      gauges.put("missCount", (Gauge<Long>) cache::getMissCount);
+      gauges.put("capacity", (Gauge<Integer>) cache::capacity);
+
+      registry = parentContext.getMetricRegistry();
+      for (Map.Entry<String, Gauge<?>> gauge : gauges.entrySet()) {
+         String name = MetricRegistry.name("ANALYSIS", scope, gauge.getKey());
+         registry.remove(name);
+         registry.register(name, gauge.getValue());
+         metricNames.add(name);
+      }
+   }
+
+   @Override
+   public SolrMetricsContext getSolrMetricsContext() {
+      return solrMetricsContext;
+   }
+
+   /**
+    * Removes the metrics from the registry.
+    */
+   @Override
+   public synchronized void close() {
+      if (registry != null) {
+         for (String name : metricNames) {
+            registry.remove(name);
+         }
+         metricNames.clear();
+         registry = null;
+      }
+      solrMetricsContext = null;
+   }
+
+   @Override
+   public TokenStream create(TokenStream input) {
+      return new StemmingBufferFilter(input, stemmerFactory, cache);
+   }
+
+}
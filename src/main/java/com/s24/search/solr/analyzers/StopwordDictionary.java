@@ -0,0 +1,48 @@
+package com.s24.search.solr.analyzers;
+
+import org.apache.lucene.util.Accountable;
+
+/**
+ * Immutable set of stopwords that can be looked up without creating a string for each word.
+ *
+ * @author Shopping24 GmbH
+ */
+public interface StopwordDictionary extends Accountable {
+
+   /**
+    * How a stopword file is stored.
+    */
+   enum Format {
+
+      /**
+       * One word per line, lines starting with <code>#</code> are comments. Loaded into a
+       * {@link CharArraySetDictionary}.
+       */
+      TEXT,
+
+      /**
+       * A precompiled {@link PackedStopwordDictionary}.
+       */
+      PACKED
+   }
+
+   /**
+    * Returns <code>true</code> if the given chars are a stopword. Must not allocate and must be safe to call from
+    * multiple threads.
+    */
+   boolean contains(char[] text, int offset, int length);
+
+   /**
+    * Returns the number of stopwords.
+    */
+   int size();
+
+   /**
+    * Returns the dictionary to use for the next document. A dictionary that is reloaded in the background returns its
+    * latest version, all others return themselves.
+    */
+   default StopwordDictionary current() {
+      return this;
+   }
+
+}
@@ -0,0 +1,551 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.WordlistLoader;
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.apache.lucene.util.Accountable;
+import org.apache.solr.core.SolrResourceLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * JVM-wide cache of immutable stopword sets. Factories that load the same stopword files with the same content share
+ * a single set instead of parsing and holding their own copy, no matter which core they belong to.
+ * <p>
+ * Text files are parsed into a {@link CharArraySetDictionary}. Packed files are loaded as
+ * {@link PackedStopwordDictionary}, and read through a memory mapping if they are local files, i.e. if the name is an
+ * absolute path or the file is in the <code>conf</code> dir of a core.
+ * <p>
+ * Sets are keyed by the resource names, the case sensitivity and a checksum of the file contents. Every factory that
+ * acquires a set is counted as a reference to it. A reference is dropped when the factory is {@link #release(Object)
+ * released}, which {@link AnalyzingSentenceTokenizerFactory#close()} does when its core is closed. References of
+ * factories that are garbage collected without being closed are dropped as well. When the last reference is dropped,
+ * the set is evicted.
+ * <p>
+ * Sets are parsed outside of the cache lock, so a large list does not block factories that load other files. Factories
+ * that load the same content at the same time wait for a single parse.
+ * <p>
+ * The cache also polls the files of {@link ReloadingStopwordDictionary ReloadingStopwordDictionaries} for changes. All
+ * dictionaries of the same files, loader and interval, e.g. of all field types of a schema that use the same list,
+ * share a single poll, which reads and hashes the files once per interval.
+ *
+ * @author Shopping24 GmbH
+ */
+public final class StopwordSetCache {
+
+   private static final Logger logger = LoggerFactory.getLogger(StopwordSetCache.class);
+
+   // guarded by the class lock
+   private static final Map<String, Entry> entries = new HashMap<>();
+   private static final Map<String, CompletableFuture<StopwordDictionary>> loading = new HashMap<>();
+   private static final ReferenceQueue<Object> collectedOwners = new ReferenceQueue<>();
+   private static final List<Watch> watches = new ArrayList<>();
+
+   // one thread polls the files of all reloading dictionaries in the JVM
+   private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+         new ThreadFactoryBuilder().setNameFormat("stopword-reloader-%d").setDaemon(true).build());
+
+   private StopwordSetCache() {
+      // static methods only
+   }
+
+   /**
+    * Returns the shared stopword set for the given text files and registers the owner as a reference to it.
+    *
+    * @see #acquire(Object, ResourceLoader, List, boolean, StopwordDictionary.Format)
+    */
+   public static StopwordDictionary acquire(Object owner, ResourceLoader loader, List<String> files,
+         boolean ignoreCase) throws IOException {
+      return acquire(owner, loader, files, ignoreCase, StopwordDictionary.Format.TEXT);
+   }
+
+   /**
+    * Returns the shared stopword set for the given files and registers the owner as a reference to it. The files are
+    * read on every call to detect changes, but only parsed if no set with the same content is cached.
+    *
+    * @param owner
+    *           the object that holds the returned set, usually a factory.
+    * @param loader
+    *           the loader to open the files with.
+    * @param files
+    *           the stopword files. Packed dictionaries cannot be merged, so there must be exactly one packed file.
+    * @param ignoreCase
+    *           whether the set ignores case. Packed dictionaries ignore case if they were compiled that way.
+    * @param format
+    *           the format of the files.
+    * @return an unmodifiable stopword set.
+    */
+   public static StopwordDictionary acquire(Object owner, ResourceLoader loader, List<String> files,
+         boolean ignoreCase, StopwordDictionary.Format format) throws IOException {
+      return acquire(owner, null, read(loader, files, ignoreCase, format));
+   }
+
+   /**
+    * Re-reads the files of a set that the owner has acquired before. If their content has changed, the reference of
+    * the owner is moved from the acquired set to the set with the new content.
+    *
+    * @param acquired
+    *           the set the owner has acquired for the same files before.
+    * @return the set with the current content of the files, or the acquired set if the content has not changed.
+    * @see #acquire(Object, ResourceLoader, List, boolean, StopwordDictionary.Format)
+    */
+   public static StopwordDictionary reacquire(Object owner, StopwordDictionary acquired, ResourceLoader loader,
+         List<String> files, boolean ignoreCase, StopwordDictionary.Format format) throws IOException {
+      return acquire(owner, acquired, read(loader, files, ignoreCase, format));
+   }
+
+   /**
+    * Reads the files and hashes their content, without taking the lock.
+    */
+   static Contents read(ResourceLoader loader, List<String> files, boolean ignoreCase,
+         StopwordDictionary.Format format) throws IOException {
+      if (format == StopwordDictionary.Format.PACKED && files.size() != 1) {
+         throw new IllegalArgumentException("Expected a single packed stopword file, but got " + files);
+      }
+
+      List<ByteBuffer> contents = new ArrayList<>(files.size());
+      for (String file : files) {
+         Path path = format == StopwordDictionary.Format.PACKED ? localFile(loader, file.trim()) : null;
+         if (path != null) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+               contents.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+         } else {
+            try (InputStream in = loader.openResource(file.trim())) {
+               contents.add(ByteBuffer.wrap(ByteStreams.toByteArray(in)));
+            }
+         }
+      }
+      return new Contents(files, ignoreCase, format, contents, key(files, ignoreCase, format, contents));
+   }
+
+   /**
+    * Returns the shared set for the read contents and moves the reference of the owner from the acquired set, if
+    * any, to it.
+    *
+    * @return the set with the given contents, or the acquired set if it has the same contents.
+    */
+   static StopwordDictionary acquire(Object owner, StopwordDictionary acquired, Contents read) throws IOException {
+      List<String> files = read.files;
+      boolean ignoreCase = read.ignoreCase;
+      StopwordDictionary.Format format = read.format;
+      List<ByteBuffer> contents = read.contents;
+      String key = read.key;
+
+      CompletableFuture<StopwordDictionary> load;
+      boolean parse = false;
+      synchronized (StopwordSetCache.class) {
+         expungeCollectedOwners();
+
+         Entry entry = entries.get(key);
+         if (entry != null) {
+            if (entry.dictionary != acquired) {
+               logger.info("Sharing stopword set {} with {} words ({} bytes) with {} other references.", files,
+                     entry.dictionary.size(), entry.ramBytesUsed(), entry.owners.size());
+            }
+            return addOwner(owner, acquired, entry);
+         }
+         load = loading.get(key);
+         if (load == null) {
+            load = new CompletableFuture<>();
+            loading.put(key, load);
+            parse = true;
+         }
+      }
+
+      // parse outside of the lock, others that need the same content wait for the result
+      if (parse) {
+         try {
+            load.complete(format == StopwordDictionary.Format.PACKED
+                  ? PackedStopwordDictionary.read(contents.get(0))
+                  : parse(contents, files.size(), ignoreCase));
+         } catch (Throwable t) {
+            load.completeExceptionally(t);
+            synchronized (StopwordSetCache.class) {
+               loading.remove(key, load);
+            }
+            throw t;
+         }
+      }
+      StopwordDictionary dictionary = await(load);
+
+      synchronized (StopwordSetCache.class) {
+         if (parse) {
+            loading.remove(key, load);
+         }
+         Entry entry = entries.get(key);
+         if (entry == null) {
+            entry = new Entry(key, dictionary);
+            entries.put(key, entry);
+            logger.info("Loaded stopword set {} with {} words ({} bytes).", files, entry.dictionary.size(),
+                  entry.ramBytesUsed());
+         } else {
+            logger.info("Sharing stopword set {} with {} words ({} bytes) with {} other references.", files,
+                  entry.dictionary.size(), entry.ramBytesUsed(), entry.owners.size());
+         }
+         return addOwner(owner, acquired, entry);
+      }
+   }
+
+   /**
+    * Registers the owner as a reference to the entry and drops its reference to the set it has acquired before.
+    */
+   private static StopwordDictionary addOwner(Object owner, StopwordDictionary acquired, Entry entry) {
+      if (entry.dictionary == acquired) {
+         return acquired;
+      }
+      entry.owners.add(new OwnerReference(owner, entry.key, collectedOwners));
+      if (acquired != null) {
+         releaseOne(owner, acquired);
+      }
+      return entry.dictionary;
+   }
+
+   /**
+    * Waits for a set parsed by another thread.
+    */
+   private static StopwordDictionary await(CompletableFuture<StopwordDictionary> load) throws IOException {
+      try {
+         return load.join();
+      } catch (CompletionException e) {
+         if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+         }
+         if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * Polls the files of the dictionary for changes in the given interval, until it is unwatched or garbage collected.
+    * Dictionaries with the same files, loader and interval share a single poll.
+    */
+   static synchronized void watch(ReloadingStopwordDictionary dictionary, long interval, TimeUnit unit) {
+      unwatch(dictionary);
+
+      long nanos = unit.toNanos(interval);
+      for (Watch watch : watches) {
+         if (watch.matches(dictionary, nanos)) {
+            watch.subscribers.add(new WeakReference<>(dictionary));
+            return;
+         }
+      }
+
+      Watch watch = new Watch(dictionary, nanos);
+      watch.subscribers.add(new WeakReference<>(dictionary));
+      watch.schedule = scheduler.scheduleWithFixedDelay(watch, nanos, nanos, TimeUnit.NANOSECONDS);
+      watches.add(watch);
+   }
+
+   /**
+    * Stops polling the files of the dictionary. The poll of its files ends with its last dictionary.
+    */
+   static synchronized void unwatch(ReloadingStopwordDictionary dictionary) {
+      for (Iterator<Watch> i = watches.iterator(); i.hasNext();) {
+         Watch watch = i.next();
+         watch.subscribers.removeIf(subscriber -> subscriber.get() == null || subscriber.get() == dictionary);
+         if (watch.subscribers.isEmpty()) {
+            watch.schedule.cancel(false);
+            i.remove();
+         }
+      }
+   }
+
+   /**
+    * Returns the number of polls of stopword files.
+    */
+   static synchronized int watches() {
+      return watches.size();
+   }
+
+   /**
+    * Drops a single reference of the owner to the given set. The set is evicted if no references are left.
+    */
+   private static void releaseOne(Object owner, StopwordDictionary dictionary) {
+      for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+         Entry entry = i.next();
+         if (entry.dictionary != dictionary) {
+            continue;
+         }
+         for (Iterator<OwnerReference> j = entry.owners.iterator(); j.hasNext();) {
+            if (j.next().get() == owner) {
+               j.remove();
+               break;
+            }
+         }
+         if (entry.owners.isEmpty()) {
+            i.remove();
+            logger.info("Evicted stopword set with {} words.", entry.dictionary.size());
+         }
+      }
+   }
+
+   /**
+    * Drops all references of the given owner. Sets without any references left are evicted.
+    */
+   public static synchronized void release(Object owner) {
+      expungeCollectedOwners();
+
+      for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+         Entry entry = i.next();
+         for (Iterator<OwnerReference> j = entry.owners.iterator(); j.hasNext();) {
+            if (j.next().get() == owner) {
+               j.remove();
+            }
+         }
+         if (entry.owners.isEmpty()) {
+            i.remove();
+            logger.info("Evicted stopword set with {} words.", entry.dictionary.size());
+         }
+      }
+   }
+
+   /**
+    * Returns the number of cached stopword sets.
+    */
+   public static synchronized int size() {
+      expungeCollectedOwners();
+      return entries.size();
+   }
+
+   /**
+    * Returns the number of references to all cached stopword sets.
+    */
+   public static synchronized int references() {
+      expungeCollectedOwners();
+      int references = 0;
+      for (Entry entry : entries.values()) {
+         references += entry.owners.size();
+      }
+      return references;
+   }
+
+   /**
+    * Returns the estimated heap held by all cached stopword sets. Without the cache, each reference would hold its own
+    * copy.
+    */
+   public static synchronized long ramBytesUsed() {
+      expungeCollectedOwners();
+      long bytes = 0;
+      for (Entry entry : entries.values()) {
+         bytes += entry.ramBytesUsed();
+      }
+      return bytes;
+   }
+
+   /**
+    * Drops the references of all owners that have been garbage collected.
+    */
+   private static void expungeCollectedOwners() {
+      Reference<?> reference;
+      while ((reference = collectedOwners.poll()) != null) {
+         OwnerReference owner = (OwnerReference) reference;
+         Entry entry = entries.get(owner.key);
+         if (entry != null && entry.owners.remove(owner) && entry.owners.isEmpty()) {
+            entries.remove(owner.key);
+            logger.info("Evicted stopword set with {} words.", entry.dictionary.size());
+         }
+      }
+   }
+
+   /**
+    * Returns the local path of the given file, or <code>null</code> if it can only be opened through the loader.
+    */
+   private static Path localFile(ResourceLoader loader, String file) {
+      Path path = Paths.get(file);
+      if (!path.isAbsolute()) {
+         if (!(loader instanceof SolrResourceLoader)) {
+            return null;
+         }
+         path = ((SolrResourceLoader) loader).getInstancePath().resolve("conf").resolve(file);
+      }
+      return Files.isRegularFile(path) ? path : null;
+   }
+
+   private static StopwordDictionary parse(List<ByteBuffer> contents, int files, boolean ignoreCase)
+         throws IOException {
+      // same as AbstractAnalysisFactory.getWordSet()
+      CharArraySet words = new CharArraySet(files * 10, ignoreCase);
+      for (ByteBuffer content : contents) {
+         words.addAll(WordlistLoader.getLines(
+               new ByteArrayInputStream(content.array(), content.arrayOffset(), content.remaining()),
+               StandardCharsets.UTF_8));
+      }
+      return new CharArraySetDictionary(CharArraySet.unmodifiableSet(words));
+   }
+
+   private static String key(List<String> files, boolean ignoreCase, StopwordDictionary.Format format,
+         List<ByteBuffer> contents) {
+      try {
+         MessageDigest digest = MessageDigest.getInstance("SHA-256");
+         for (ByteBuffer content : contents) {
+            digest.update(content.duplicate());
+         }
+
+         StringBuilder key = new StringBuilder();
+         key.append(files).append('/').append(format).append(ignoreCase ? "/ignoreCase/" : "/");
+         for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+         }
+         return key.toString();
+      } catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * A cached set and its references.
+    */
+   private static final class Entry implements Accountable {
+
+      private final String key;
+      private final StopwordDictionary dictionary;
+      private final List<OwnerReference> owners = new ArrayList<>();
+
+      Entry(String key, StopwordDictionary dictionary) {
+         this.key = key;
+         this.dictionary = dictionary;
+      }
+
+      @Override
+      public long ramBytesUsed() {
+         return dictionary.ramBytesUsed();
+      }
+
+      @Override
+      public String toString() {
+         return key;
+      }
+   }
+
+   /**
+    * Weak reference to an owner of a cached set, so that a set does not outlive the cores that use it.
+    */
+   private static final class OwnerReference extends WeakReference<Object> {
+
+      private final String key;
+
+      OwnerReference(Object owner, String key, ReferenceQueue<Object> queue) {
+         super(owner, queue);
+         this.key = key;
+      }
+   }
+
+
+   /**
+    * The content of stopword files and its cache key.
+    */
+   static final class Contents {
+
+      private final List<String> files;
+      private final boolean ignoreCase;
+      private final StopwordDictionary.Format format;
+      private final List<ByteBuffer> contents;
+      private final String key;
+
+      Contents(List<String> files, boolean ignoreCase, StopwordDictionary.Format format, List<ByteBuffer> contents,
+            String key) {
+         this.files = files;
+         this.ignoreCase = ignoreCase;
+         this.format = format;
+         this.contents = contents;
+         this.key = key;
+      }
+   }
+
+   /**
+    * Polls stopword files for all dictionaries that use them. Holds the dictionaries weakly, so that the poll ends with
+    * the cores that use them.
+    */
+   private static final class Watch implements Runnable {
+
+      private final ResourceLoader loader;
+      private final List<String> files;
+      private final boolean ignoreCase;
+      private final StopwordDictionary.Format format;
+      private final long nanos;
+      // guarded by the class lock
+      private final List<WeakReference<ReloadingStopwordDictionary>> subscribers = new ArrayList<>();
+      private ScheduledFuture<?> schedule;
+
+      Watch(ReloadingStopwordDictionary dictionary, long nanos) {
+         this.loader = dictionary.getLoader();
+         this.files = dictionary.getFiles();
+         this.ignoreCase = dictionary.isIgnoreCase();
+         this.format = dictionary.getFormat();
+         this.nanos = nanos;
+      }
+
+      boolean matches(ReloadingStopwordDictionary dictionary, long nanos) {
+         return loader == dictionary.getLoader() && files.equals(dictionary.getFiles())
+               && ignoreCase == dictionary.isIgnoreCase() && format == dictionary.getFormat() && this.nanos == nanos;
+      }
+
+      @Override
+      public void run() {
+         List<ReloadingStopwordDictionary> dictionaries = new ArrayList<>();
+         synchronized (StopwordSetCache.class) {
+            for (Iterator<WeakReference<ReloadingStopwordDictionary>> i = subscribers.iterator(); i.hasNext();) {
+               ReloadingStopwordDictionary dictionary = i.next().get();
+               if (dictionary != null) {
+                  dictionaries.add(dictionary);
+               } else {
+                  i.remove();
+               }
+            }
+            if (dictionaries.isEmpty()) {
+               schedule.cancel(false);
+               watches.remove(this);
+               return;
+            }
+         }
+
+         // read and hash the files once for all dictionaries, a changed content is parsed once by the cache
+         Contents contents;
+         try {
+            contents = read(loader, files, ignoreCase, format);
+         } catch (IOException | RuntimeException e) {
+            for (ReloadingStopwordDictionary dictionary : dictionaries) {
+               dictionary.failed(e);
+            }
+            return;
+         }
+         for (ReloadingStopwordDictionary dictionary : dictionaries) {
+            dictionary.reload(contents);
+         }
+      }
+   }
+
+}
@@ -0,0 +1,398 @@
+package com.s24.search.solr.analyzers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.lucene.util.SuppressForbidden;
+
+/**
+ * Estimates in how many documents of a corpus a word occurs, to tell words that are noise in this corpus, like
+ * "versandkostenfrei" in a shop catalogue, from informative ones. A flat stopword list only knows the words of a
+ * language.
+ * <p>
+ * Document frequencies are counted in a Count-Min sketch, which never underestimates a frequency and has a fixed size
+ * no matter how many words the corpus has. Words are runs of letters, lower-cased per char, digits and other chars
+ * are dropped. The sketch is built offline by the {@link #main(String[]) command line tool} from a corpus dump or an
+ * existing index and memory-mapped read-only, so a lookup reads a few ints from the mapped file and does not
+ * allocate.
+ * <p>
+ * The informativeness of a word is its inverse document frequency normalized to <code>[0,1]</code>: a word in every
+ * document has an informativeness of 0, a word in a single document has an informativeness close to 1.
+ * <p>
+ * The file format is:
+ *
+ * <pre>
+ * int    magic ("TFSK")
+ * int    version
+ * int    depth
+ * int    width
+ * long   number of documents
+ * int[]  depth * width counts
+ * </pre>
+ *
+ * @author Shopping24 GmbH
+ */
+public final class TermFrequencySketch {
+
+   private static final int MAGIC = 0x5446534B;
+   private static final int VERSION = 1;
+   private static final int HEADER_SIZE = 24;
+
+   // rows of the count-min sketch
+   private static final int DEPTH = 4;
+
+   private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+   private final IntBuffer counts;
+   private final int widthMask;
+   private final long documents;
+   private final double logDocuments;
+
+   private TermFrequencySketch(IntBuffer counts, int width, long documents) {
+      this.counts = counts;
+      this.widthMask = width - 1;
+      this.documents = documents;
+      this.logDocuments = Math.log(documents + 1.0);
+   }
+
+   /**
+    * Memory-maps the sketch stored in the given file.
+    */
+   public static TermFrequencySketch open(Path file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+         long size = channel.size();
+         ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+         if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+               || buffer.getInt(8) != DEPTH) {
+            throw new IOException("Not a term frequency sketch: " + file);
+         }
+         int width = buffer.getInt(12);
+         if (Integer.bitCount(width) != 1 || size != HEADER_SIZE + (long) DEPTH * width * Integer.BYTES) {
+            throw new IOException("Corrupt term frequency sketch: " + file);
+         }
+
+         ByteBuffer counts = buffer.duplicate();
+         counts.position(HEADER_SIZE);
+         return new TermFrequencySketch(counts.slice().asIntBuffer(), width, buffer.getLong(16));
+      }
+   }
+
+   private static int checkWidth(int width) {
+      // the file is written from a single byte buffer
+      if (width < 1 || width > (1 << 26)) {
+         throw new IllegalArgumentException("width must be between 1 and 2^26: " + width);
+      }
+      return width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+   }
+
+   /**
+    * Adds the lower-cased char to the hash of a word.
+    */
+   private static long hash(long hash, char c) {
+      return (hash + Character.toLowerCase(c)) * HASH_MULTIPLIER;
+   }
+
+   /**
+    * Finalization step of MurmurHash3, spreads all bits of the hash of a word.
+    */
+   private static long mix(long hash) {
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      hash *= 0xc4ceb9fe1a85ec53L;
+      hash ^= hash >>> 33;
+      return hash;
+   }
+
+   /**
+    * Returns the index of the count of the word in the given row. The rows are hashed by combining both halves of the
+    * hash (Kirsch and Mitzenmacher).
+    */
+   private static int index(long hash, int row, int widthMask) {
+      int rowHash = (int) hash + row * (int) (hash >>> 32);
+      return row * (widthMask + 1) + (rowHash & widthMask);
+   }
+
+   /**
+    * Returns the estimated number of documents that contain the word with the given hash.
+    */
+   private int documentFrequency(long hash) {
+      int estimate = Integer.MAX_VALUE;
+      for (int row = 0; row < DEPTH; row++) {
+         estimate = Math.min(estimate, counts.get(index(hash, row, widthMask)));
+      }
+      return estimate;
+   }
+
+   /**
+    * Returns the estimated number of documents that contain the word in <code>[offset,offset+length)</code> of the
+    * buffer. The word is lower-cased, it should consist of letters only.
+    */
+   public int documentFrequency(char[] buffer, int offset, int length) {
+      long hash = 0;
+      for (int i = offset; i < offset + length; i++) {
+         hash = hash(hash, buffer[i]);
+      }
+      return documentFrequency(mix(hash));
+   }
+
+   /**
+    * Returns the informativeness of a word with the given document frequency.
+    */
+   public double informativeness(int documentFrequency) {
+      if (documents == 0) {
+         return 1;
+      }
+      // estimates may exceed the number of documents
+      return Math.max(0, Math.log((documents + 1.0) / (documentFrequency + 1.0)) / logDocuments);
+   }
+
+   /**
+    * Returns the mean informativeness of the words in <code>[start,end)</code> of the buffer.
+    *
+    * @return the mean informativeness, or <code>-1</code> if there are no words.
+    */
+   public double meanInformativeness(char[] buffer, int start, int end) {
+      double sum = 0;
+      int words = 0;
+      long hash = 0;
+      boolean inWord = false;
+      for (int i = start; i <= end; i++) {
+         char c = i < end ? buffer[i] : ' ';
+         if (Character.isLetter(c)) {
+            hash = hash(hash, c);
+            inWord = true;
+         } else if (inWord && !Character.isDigit(c)) {
+            // digits are dropped but do not end a word
+            sum += informativeness(documentFrequency(mix(hash)));
+            words++;
+            hash = 0;
+            inWord = false;
+         }
+      }
+      return words > 0 ? sum / words : -1;
+   }
+
+   /**
+    * Returns the number of documents the sketch has been built from.
+    */
+   public long documents() {
+      return documents;
+   }
+
+   /**
+    * Returns the number of counts per row.
+    */
+   public int width() {
+      return widthMask + 1;
+   }
+
+   /**
+    * Counts the document frequencies of words on the heap. A builder is used by one thread at a time, builders of
+    * parallel threads are merged at the end.
+    */
+   public static final class Builder {
+
+      private final int[] counts;
+      private final int widthMask;
+      private long documents;
+
+      // scratch space of the word hashes of a document
+      private long[] hashes = new long[64];
+
+      /**
+       * @param width
+       *           the number of counts per row. Rounded up to a power of two.
+       */
+      public Builder(int width) {
+         width = checkWidth(width);
+         counts = new int[DEPTH * width];
+         widthMask = width - 1;
+      }
+
+      private void add(long hash, int documentFrequency) {
+         for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row, widthMask);
+            counts[index] = (int) Math.min((long) counts[index] + documentFrequency, Integer.MAX_VALUE);
+         }
+      }
+
+      /**
+       * Counts each word of the document once.
+       */
+      public Builder addDocument(CharSequence document) {
+         int words = 0;
+         long hash = 0;
+         boolean inWord = false;
+         for (int i = 0; i <= document.length(); i++) {
+            char c = i < document.length() ? document.charAt(i) : ' ';
+            if (Character.isLetter(c)) {
+               hash = hash(hash, c);
+               inWord = true;
+            } else if (inWord && !Character.isDigit(c)) {
+               if (words == hashes.length) {
+                  hashes = ArrayUtil.grow(hashes, words + 1);
+               }
+               hashes[words++] = mix(hash);
+               hash = 0;
+               inWord = false;
+            }
+         }
+
+         Arrays.sort(hashes, 0, words);
+         for (int i = 0; i < words; i++) {
+            if (i == 0 || hashes[i] != hashes[i - 1]) {
+               add(hashes[i], 1);
+            }
+         }
+         documents++;
+         return this;
+      }
+
+      /**
+       * Adds the document frequency of a word, e.g. of a term of an index. The word is lower-cased, it should consist
+       * of letters only.
+       */
+      public Builder addWord(char[] buffer, int offset, int length, int documentFrequency) {
+         long hash = 0;
+         for (int i = offset; i < offset + length; i++) {
+            hash = hash(hash, buffer[i]);
+         }
+         add(mix(hash), documentFrequency);
+         return this;
+      }
+
+      /**
+       * Adds to the number of documents, for words added by {@link #addWord(char[], int, int, int)}.
+       */
+      public Builder addDocuments(long count) {
+         documents += count;
+         return this;
+      }
+
+      /**
+       * Adds the counts of the given builder, which must have the same width.
+       */
+      public Builder merge(Builder other) {
+         if (other.widthMask != widthMask) {
+            throw new IllegalArgumentException("Cannot merge sketches of different width.");
+         }
+         for (int i = 0; i < counts.length; i++) {
+            counts[i] = (int) Math.min((long) counts[i] + other.counts[i], Integer.MAX_VALUE);
+         }
+         documents += other.documents;
+         return this;
+      }
+
+      /**
+       * Returns a sketch on the heap with the current counts.
+       */
+      public TermFrequencySketch build() {
+         return new TermFrequencySketch(IntBuffer.wrap(counts.clone()), widthMask + 1, documents);
+      }
+
+      /**
+       * Writes the sketch to the given file.
+       */
+      public void write(Path file) throws IOException {
+         ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + counts.length * Integer.BYTES);
+         out.putInt(MAGIC).putInt(VERSION).putInt(DEPTH).putInt(widthMask + 1).putLong(documents);
+         out.asIntBuffer().put(counts);
+         out.rewind();
+         try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+               StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+               channel.write(out);
+            }
+         }
+      }
+
+      /**
+       * Returns the number of documents counted so far.
+       */
+      public long documents() {
+         return documents;
+      }
+   }
+
+   /**
+    * Builds a sketch from the documents of corpus dumps with one document per line, which are read in parallel, or
+    * from the document frequencies of the terms of a field of an existing index. Index terms that are not a single
+    * word of letters, e.g. numbers, are skipped.
+    */
+   @SuppressForbidden(reason = "command line tool")
+   public static void main(String[] args) throws IOException {
+      if (args.length < 3 || ("--index".equals(args[2]) && args.length != 5)) {
+         System.err.println("Usage: " + TermFrequencySketch.class.getName() + " <output> <width> <corpus.txt>...");
+         System.err.println("       " + TermFrequencySketch.class.getName()
+               + " <output> <width> --index <index dir> <field>");
+         System.exit(1);
+      }
+
+      Path output = Paths.get(args[0]);
+      int width = Integer.parseInt(args[1]);
+      Builder builder;
+      if ("--index".equals(args[2])) {
+         builder = fromIndex(Paths.get(args[3]), args[4], width);
+      } else {
+         builder = new Builder(width);
+         for (int i = 2; i < args.length; i++) {
+            try (Stream<String> lines = Files.lines(Paths.get(args[i]))) {
+               builder.merge(lines.parallel().collect(() -> new Builder(width), Builder::addDocument,
+                     Builder::merge));
+            }
+         }
+      }
+
+      builder.write(output);
+      System.err.println("Wrote the word frequencies of " + builder.documents() + " documents to " + output + ".");
+   }
+
+   private static Builder fromIndex(Path index, String field, int width) throws IOException {
+      Builder builder = new Builder(width);
+      try (IndexReader reader = DirectoryReader.open(FSDirectory.open(index))) {
+         Terms terms = MultiTerms.getTerms(reader, field);
+         if (terms == null) {
+            throw new IllegalArgumentException("The index has no terms in field " + field + ".");
+         }
+
+         CharsRefBuilder chars = new CharsRefBuilder();
+         TermsEnum termsEnum = terms.iterator();
+         for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+            chars.copyUTF8Bytes(term);
+            if (isWord(chars.chars(), chars.length())) {
+               builder.addWord(chars.chars(), 0, chars.length(), termsEnum.docFreq());
+            }
+         }
+         builder.addDocuments(terms.getDocCount());
+      }
+      return builder;
+   }
+
+   private static boolean isWord(char[] chars, int length) {
+      for (int i = 0; i < length; i++) {
+         if (!Character.isLetter(chars[i])) {
+            return false;
+         }
+      }
+      return length > 0;
+   }
+
+}
@@ -0,0 +1,62 @@
+package com.s24.search.solr.analyzers;
+
+import java.util.Map;
+
+/**
+ * Rejects sentences in which the ratio of uppercase letters to letters exceeds <code>maxRatio</code>, like shouted
+ * advertising. Sentences with less than <code>minLetters</code> letters (default 8) are not decided, so acronyms and
+ * model names are left to the other rules:
+ *
+ * <pre>
+ * qualityRules="shortSentence,uppercaseRatio" uppercaseRatio.maxRatio="0.6"
+ * </pre>
+ *
+ * @author Shopping24 GmbH
+ */
+public class UppercaseRatioRule implements SentenceQualityRule {
+
+   static final String MAX_RATIO_ARG = "maxRatio";
+   private final float maxRatio;
+
+   static final String MIN_LETTERS_ARG = "minLetters";
+   private int minLetters = 8;
+
+   /**
+    * Rule gets constructed with the configured args.
+    */
+   public UppercaseRatioRule(Map<String, String> args) {
+      String maxRatio = args.get(MAX_RATIO_ARG);
+      if (maxRatio == null) {
+         throw new IllegalArgumentException("The " + MAX_RATIO_ARG + " param is not set.");
+      }
+      this.maxRatio = Float.parseFloat(maxRatio);
+
+      if (args.containsKey(MIN_LETTERS_ARG)) {
+         minLetters = Integer.parseInt(args.get(MIN_LETTERS_ARG));
+      }
+   }
+
+   @Override
+   public Decision decide(char[] buffer, int start, int end) {
+      int letters = 0;
+      int uppercase = 0;
+      for (int i = start; i < end;) {
+         int codePoint = Character.codePointAt(buffer, i, end);
+         if (Character.isLetter(codePoint)) {
+            letters++;
+            if (Character.isUpperCase(codePoint)) {
+               uppercase++;
+            }
+         }
+         i += Character.charCount(codePoint);
+      }
+
+      return letters >= minLetters && uppercase > maxRatio * letters ? Decision.REJECT : Decision.ABSTAIN;
+   }
+
+   @Override
+   public int cost() {
+      return 20;
+   }
+
+}
@@ -0,0 +1,179 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.junit.Test;
+
+public class AnalyzingSentenceCharFilterTest {
+
+   private static final String[] INPUTS = {
+         "",
+         "foo",
+         "A simple sentence without stopwords.",
+         "First sentence. Should ignore this sentence ignore. Another sentence with some more words.",
+         "90% cotton, 10% ignore this ignore this, size 42. Another sentence.",
+         "Ende!  Noch ein Satz?\tJa - Nein; Vielleicht| Oder doch. ignore this word ignore this word, ignore. Fertig",
+         "Should ignore this sentence ignore. Should ignore this sentence ignore.",
+   };
+
+   private static String read(AnalyzingSentenceCharFilter filter) throws IOException {
+      StringBuilder output = new StringBuilder();
+      char[] chunk = new char[7];
+      int read;
+      while ((read = filter.read(chunk, 0, chunk.length)) != -1) {
+         output.append(chunk, 0, read);
+      }
+      return output.toString();
+   }
+
+   /**
+    * Returns the words of the sentences kept by the filter.
+    */
+   private static List<String> kept(SentenceFilter filter, String input) {
+      List<String> words = new ArrayList<>();
+      int[] spans = filter.filter(input);
+      for (int i = 0; i < spans.length; i += 2) {
+         words.addAll(words(input.substring(spans[i], spans[i + 1])));
+      }
+      return words;
+   }
+
+   private static List<String> words(String text) {
+      List<String> words = new ArrayList<>();
+      for (String word : text.split("\\s+")) {
+         if (!word.isEmpty()) {
+            words.add(word);
+         }
+      }
+      return words;
+   }
+
+   @Test
+   public void testRemovesSameSentencesAsFilter() throws Exception {
+      for (AnalyzingSentenceTokenizer.Scanner scanner : AnalyzingSentenceTokenizer.Scanner.values()) {
+         SentenceFilter filter = AnalyzingSentenceTokenizerTest.filter(scanner);
+         for (String input : INPUTS) {
+            assertEquals(input, kept(filter, input),
+                  words(read(new AnalyzingSentenceCharFilter(new StringReader(input), filter, 8192, 65536))));
+            assertEquals(input, kept(filter, input),
+                  words(read(new AnalyzingSentenceCharFilter(new StringReader(input), filter, 3, 65536))));
+         }
+      }
+   }
+
+   @Test
+   public void testOffsetsMapToOriginalText() throws Exception {
+      SentenceFilter filter = AnalyzingSentenceTokenizerTest.filter(AnalyzingSentenceTokenizer.Scanner.TABLE);
+      Random random = new Random(42);
+      for (int i = 0; i < 200; i++) {
+         StringBuilder input = new StringBuilder();
+         int sentences = random.nextInt(10);
+         for (int j = 0; j < sentences; j++) {
+            input.append(INPUTS[random.nextInt(INPUTS.length)]).append(' ');
+         }
+
+         WhitespaceTokenizer tokenizer = new WhitespaceTokenizer();
+         tokenizer.setReader(new AnalyzingSentenceCharFilter(new StringReader(input.toString()), filter, 5, 65536));
+         CharTermAttribute termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+         OffsetAttribute offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+         List<String> terms = new ArrayList<>();
+         tokenizer.reset();
+         while (tokenizer.incrementToken()) {
+            assertEquals(input.toString(), termAtt.toString(),
+                  input.substring(offsetAtt.startOffset(), offsetAtt.endOffset()));
+            terms.add(termAtt.toString());
+         }
+         tokenizer.end();
+         assertEquals(input.length(), offsetAtt.endOffset());
+         tokenizer.close();
+
+         assertEquals(kept(filter, input.toString()), terms);
+      }
+   }
+
+   @Test
+   public void testSessionIsReusedAfterClose() throws Exception {
+      SentenceFilter filter = AnalyzingSentenceTokenizerTest.filter(AnalyzingSentenceTokenizer.Scanner.TABLE);
+      for (int i = 0; i < 3; i++) {
+         for (String input : INPUTS) {
+            AnalyzingSentenceCharFilter charFilter = new AnalyzingSentenceCharFilter(new StringReader(input), filter,
+                  1 + i * 7, 65536);
+            assertEquals(input, kept(filter, input), words(read(charFilter)));
+            charFilter.close();
+         }
+      }
+
+      // the session of the last char filter is idle, char filters that are open at the same time get their own
+      SentenceFilter.Session idle = filter.acquireSession();
+      SentenceFilter.Session other = filter.acquireSession();
+      assertNotSame(idle, other);
+      filter.releaseSession(idle);
+      assertSame(idle, filter.acquireSession());
+   }
+
+   @Test
+   public void testOpenCharFiltersDoNotShareSession() throws Exception {
+      SentenceFilter filter = AnalyzingSentenceTokenizerTest.filter(AnalyzingSentenceTokenizer.Scanner.TABLE);
+      new AnalyzingSentenceCharFilter(new StringReader(INPUTS[3]), filter, 5, 65536).close();
+
+      AnalyzingSentenceCharFilter first = new AnalyzingSentenceCharFilter(new StringReader(INPUTS[3]), filter, 5,
+            65536);
+      AnalyzingSentenceCharFilter second = new AnalyzingSentenceCharFilter(new StringReader(INPUTS[5]), filter, 5,
+            65536);
+      char[] chunk = new char[4];
+      StringBuilder firstOutput = new StringBuilder();
+      StringBuilder secondOutput = new StringBuilder();
+      int read;
+      while ((read = first.read(chunk, 0, chunk.length)) != -1) {
+         firstOutput.append(chunk, 0, read);
+         if ((read = second.read(chunk, 0, chunk.length)) != -1) {
+            secondOutput.append(chunk, 0, read);
+         }
+      }
+      secondOutput.append(read(second));
+      first.close();
+      second.close();
+
+      assertEquals(kept(filter, INPUTS[3]), words(firstOutput.toString()));
+      assertEquals(kept(filter, INPUTS[5]), words(secondOutput.toString()));
+   }
+
+   @Test
+   public void testFactoryPassesInputThroughIfNotFiltering() throws Exception {
+      Map<String, String> args = new HashMap<>();
+      args.put("stopwordfile", "stopwords.txt");
+      args.put("filter", "false");
+      AnalyzingSentenceCharFilterFactory factory = new AnalyzingSentenceCharFilterFactory(args);
+      factory.inform(StopwordSetCacheTest.loader("stopwords.txt", "ignore\nthis\nword\n"));
+
+      Reader input = new StringReader(INPUTS[3]);
+      assertSame(input, factory.create(input));
+   }
+
+   @Test
+   public void testFactoryFiltersByDefault() throws Exception {
+      Map<String, String> args = new HashMap<>();
+      args.put("stopwordfile", "stopwords.txt");
+      AnalyzingSentenceCharFilterFactory factory = new AnalyzingSentenceCharFilterFactory(args);
+      factory.inform(StopwordSetCacheTest.loader("stopwords.txt", "ignore\nthis\nword\n"));
+
+      Reader charFilter = factory.create(new StringReader(INPUTS[3]));
+      assertEquals(kept(factory.getSentenceFilter(), INPUTS[3]),
+            words(read((AnalyzingSentenceCharFilter) charFilter)));
+   }
+
+}
@@ -0,0 +1,73 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.util.TokenFilterFactory;
+import org.apache.solr.analysis.TokenizerChain;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricsContext;
+import org.apache.solr.schema.TextField;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class AnalyzingSentenceMetricsComponentTest {
+
+   private static AnalyzingSentenceTokenizerFactory factory() throws Exception {
+      Map<String, String> args = new HashMap<>();
+      args.put("stopwordfile", "stopwords.txt");
+      args.put("filter", "true");
+      AnalyzingSentenceTokenizerFactory factory = new AnalyzingSentenceTokenizerFactory(args);
+      factory.inform(StopwordSetCacheTest.loader("stopwords.txt", "ignore\nthis\n"));
+      return factory;
+   }
+
+   private static SolrMetricsContext context() {
+      return new SolrMetricsContext(new SolrMetricManager(), "solr.core.test", "test");
+   }
+
+   @Test
+   public void testSharedAnalyzerIsRegisteredOnce() throws Exception {
+      TokenizerChain chain = new TokenizerChain(factory(), new TokenFilterFactory[0]);
+      TextField fieldType = new TextField();
+      fieldType.setIndexAnalyzer(chain);
+      fieldType.setQueryAnalyzer(chain);
+
+      SolrMetricsContext context = context();
+      AnalyzingSentenceMetricsComponent component = new AnalyzingSentenceMetricsComponent();
+      component.register(context, "text", fieldType);
+      MetricRegistry registry = context.getMetricRegistry();
+      assertTrue(registry.getNames().contains("ANALYSIS.text.documents"));
+      assertTrue(registry.getNames().stream().noneMatch(name -> name.startsWith("ANALYSIS.text.index")));
+      assertTrue(registry.getNames().stream().noneMatch(name -> name.startsWith("ANALYSIS.text.query")));
+
+      component.unregister();
+      assertTrue(registry.getNames().isEmpty());
+   }
+
+   @Test
+   public void testSeparateAnalyzersAreRegisteredPerScope() throws Exception {
+      TextField fieldType = new TextField();
+      fieldType.setIndexAnalyzer(new TokenizerChain(factory(), new TokenFilterFactory[0]));
+      fieldType.setQueryAnalyzer(new TokenizerChain(factory(), new TokenFilterFactory[0]));
+
+      SolrMetricsContext context = context();
+      AnalyzingSentenceMetricsComponent component = new AnalyzingSentenceMetricsComponent();
+      component.register(context, "text", fieldType);
+      MetricRegistry registry = context.getMetricRegistry();
+      assertTrue(registry.getNames().contains("ANALYSIS.text.index.documents"));
+      assertTrue(registry.getNames().contains("ANALYSIS.text.query.documents"));
+
+      // registering again does not move the metrics
+      component.register(context, "other", fieldType);
+      assertEquals(0, registry.getNames().stream().filter(name -> name.startsWith("ANALYSIS.other")).count());
+
+      component.unregister();
+      assertTrue(registry.getNames().isEmpty());
+   }
+
+}
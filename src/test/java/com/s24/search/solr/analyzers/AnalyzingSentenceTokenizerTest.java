@@ -1,21 +1,50 @@
 package com.s24.search.solr.analyzers;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
 import com.s24.util.lucene.test.AbstractTokenFilterTest;
 
 public class AnalyzingSentenceTokenizerTest extends AbstractTokenFilterTest {
 
    private AnalyzingSentenceTokenizer tokenizer;
+   private static final String[] INPUTS = {
+         "foo",
+         "A simple sentence without stopwords.",
+         "First sentence with some more words. Second sentence.",
+         "First sentence. Should ignore this sentence ignore. Another sentence with some more words.",
+         "90% cotton, 10% wool, size 42, lets take a look at this.",
+         "ignore this word ignore this.",
+         "90% cotton, 10% ignore this ignore this, size 42. Another sentence.",
+         "Ende!  Noch ein Satz?\tJa - Nein; Vielleicht| Oder doch. ignore this word ignore this word, ignore. Fertig",
+         "a,,5 b, c,d ,e; F, g. H",
+   };
+
    private static final CharArraySet STOPWORDS = new CharArraySet(Arrays.asList("stopword", "ignore", "this", "word"),
          true);
 
@@ -32,6 +61,53 @@ public class AnalyzingSentenceTokenizerTest extends AbstractTokenFilterTest {
             AnalyzingSentenceTokenizerFactory.DEFAULT_MIN_SENTENCE_LENGTH);
    }
 
+   private static AnalyzingSentenceTokenizer streamingTokenizer(int chunkSize, int maxWindowSize) {
+      return tokenizer(true, chunkSize, maxWindowSize, AnalyzingSentenceTokenizer.Scanner.REGEX);
+   }
+
+   private static AnalyzingSentenceTokenizer tokenizer(boolean streaming, int chunkSize, int maxWindowSize,
+         AnalyzingSentenceTokenizer.Scanner scanner) {
+      return new AnalyzingSentenceTokenizer(
+            TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY,
+            true,
+            new CharArraySetDictionary(STOPWORDS),
+            AnalyzingSentenceTokenizerFactory.DEFAULT_COMMA_WORD_THRESHOLD,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_STOPWORD_RATIO,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MIN_SENTENCE_LENGTH,
+            streaming, chunkSize, maxWindowSize, scanner);
+   }
+
+   static SentenceFilter filter(AnalyzingSentenceTokenizer.Scanner scanner) {
+      return new SentenceFilter(
+            new CharArraySetDictionary(STOPWORDS),
+            AnalyzingSentenceTokenizerFactory.DEFAULT_COMMA_WORD_THRESHOLD,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_STOPWORD_RATIO,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MIN_SENTENCE_LENGTH,
+            scanner, Locale.GERMAN);
+   }
+
+   private static AnalyzingSentenceTokenizer tokenizer(SentenceFilter filter) {
+      return new AnalyzingSentenceTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, filter, true, false,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_CHUNK_SIZE,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE);
+   }
+
+   /**
+    * Collects all tokens of the given input as <code>term[start,end]</code> strings, followed by the final offset.
+    */
+   static List<String> collect(String input, Tokenizer tokenizer) throws IOException {
+      List<String> tokens = new ArrayList<>();
+      TokenStream stream = tokenize(input, tokenizer);
+      CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+      OffsetAttribute offsetAtt = stream.getAttribute(OffsetAttribute.class);
+      while (stream.incrementToken()) {
+         tokens.add(termAtt + "[" + offsetAtt.startOffset() + "," + offsetAtt.endOffset() + "]");
+      }
+      stream.end();
+      tokens.add("end=" + offsetAtt.endOffset());
+      return tokens;
+   }
+
    static TokenStream tokenize(String input, Tokenizer tokenizer) throws IOException {
       tokenizer.close();
       tokenizer.end();
@@ -78,6 +154,18 @@ public class AnalyzingSentenceTokenizerTest extends AbstractTokenFilterTest {
             token(term(" lets take a look at this."), offsets(30, 56)));
    }
 
+   @Test
+   public void testQueryIsEmittedAsOnlySentence() throws Exception {
+      String query = "ignore this word ignore this größe 42";
+      for (AnalyzingSentenceTokenizer.Scanner scanner : AnalyzingSentenceTokenizer.Scanner.values()) {
+         assertTokenStream(tokenize(query, tokenizer(false, 1024, 65536, scanner)),
+               token(term(query), offsets(0, 37)));
+         assertTokenStream(tokenize(query, tokenizer(true, 3, 65536, scanner)),
+               token(term(query), offsets(0, 37)));
+         assertTokenStream(tokenize("", tokenizer(true, 3, 65536, scanner)));
+      }
+   }
+
    @Test
    public void testOnlySentenceIsPassedThrough() throws Exception {
       // If the input has only a single sentence that is not split, it should be emitted as a token
@@ -100,4 +188,285 @@ public class AnalyzingSentenceTokenizerTest extends AbstractTokenFilterTest {
             token(term("Another sentence."), offsets(50, 67)));
    }
 
+   @Test
+   public void testStreamingEmitsSameTokensAsBufferedInput() throws Exception {
+      for (int chunkSize = 1; chunkSize <= 8; chunkSize++) {
+         AnalyzingSentenceTokenizer streaming = streamingTokenizer(chunkSize,
+               AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE);
+         for (String input : INPUTS) {
+            assertEquals("chunkSize=" + chunkSize, collect(input, tokenizer), collect(input, streaming));
+         }
+      }
+   }
+
+   @Test
+   public void testStreamingCutsSentencesAtWindowEdge() throws Exception {
+      AnalyzingSentenceTokenizer streaming = streamingTokenizer(3, 10);
+      assertEquals(Arrays.asList("abcdefghij[0,10]", "klmnopqrst[10,20]", "uvwxyz[20,26]", "end=26"),
+            collect("abcdefghijklmnopqrstuvwxyz", streaming));
+      assertEquals(Arrays.asList("First. [0,7]", "Second sen[7,17]", "tence.[17,23]", "end=23"),
+            collect("First. Second sentence.", streaming));
+   }
+
+   @Test
+   public void testTableScannerEmitsSameTokensAsRegex() throws Exception {
+      AnalyzingSentenceTokenizer table = tokenizer(false, AnalyzingSentenceTokenizerFactory.DEFAULT_CHUNK_SIZE,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE, AnalyzingSentenceTokenizer.Scanner.TABLE);
+      AnalyzingSentenceTokenizer streamingTable = tokenizer(true, 3, 10, AnalyzingSentenceTokenizer.Scanner.TABLE);
+      AnalyzingSentenceTokenizer streamingRegex = streamingTokenizer(3, 10);
+      for (String input : INPUTS) {
+         assertEquals(collect(input, tokenizer), collect(input, table));
+         assertEquals(collect(input, streamingRegex), collect(input, streamingTable));
+      }
+   }
+
+   @Test
+   public void testVerdictCacheEmitsSameTokens() throws Exception {
+      SentenceVerdictCache cache = new SentenceVerdictCache(64);
+      SentenceFilter filter = filter(AnalyzingSentenceTokenizer.Scanner.TABLE);
+      filter.setVerdictCache(cache);
+      AnalyzingSentenceTokenizer cached = tokenizer(filter);
+      for (int i = 0; i < 2; i++) {
+         for (String input : INPUTS) {
+            assertEquals(collect(input, tokenizer), collect(input, cached));
+         }
+      }
+      assertTrue(cache.getHitCount() > 0);
+   }
+
+   @Test
+   public void testBoilerplateIsRemovedAfterMaxFrequency() throws Exception {
+      SentenceFilter filter = filter(AnalyzingSentenceTokenizer.Scanner.TABLE);
+      filter.setBoilerplateSketch(BoilerplateSketch.create(1024, 0), 2);
+      AnalyzingSentenceTokenizer sketched = tokenizer(filter);
+
+      for (int i = 0; i < 2; i++) {
+         filter.countSentences("Red cotton shirt. Free shipping from 20 Euro.");
+         assertEquals(Arrays.asList("Red cotton shirt. [0,18]", "Free shipping from 20 Euro.[18,45]", "end=45"),
+               collect("Red cotton shirt. Free shipping from 20 Euro.", sketched));
+      }
+      filter.countSentences("Blue linen shirt. Free shipping from 50 Euro.");
+      assertEquals(Arrays.asList("Blue linen shirt. [0,18]", "end=45"),
+            collect("Blue linen shirt. Free shipping from 50 Euro.", sketched));
+   }
+
+   @Test
+   public void testAnalysisDoesNotCountBoilerplate() throws Exception {
+      SentenceFilter filter = filter(AnalyzingSentenceTokenizer.Scanner.TABLE);
+      BoilerplateSketch sketch = BoilerplateSketch.create(1024, 0);
+      filter.setBoilerplateSketch(sketch, 2);
+      AnalyzingSentenceTokenizer sketched = tokenizer(filter);
+
+      List<String> first = collect("Red cotton shirt. Free shipping from 20 Euro.", sketched);
+      for (int i = 0; i < 5; i++) {
+         assertEquals(first, collect("Red cotton shirt. Free shipping from 20 Euro.", sketched));
+      }
+      char[] sentence = "Free shipping from 20 Euro.".toCharArray();
+      assertEquals(0, sketch.estimate(BoilerplateSketch.fingerprint(sentence, 0, sentence.length)));
+   }
+
+   @Test
+   public void testMetricsAreRecordedWhileRegistered() throws Exception {
+      SentenceTokenizerMetrics metrics = new SentenceTokenizerMetrics();
+      tokenizer.setMetrics(metrics);
+      collect("90% cotton, 10% ignore this ignore this, size 42. Another sentence.", tokenizer);
+      assertEquals(0, metrics.getDocumentCount());
+
+      MetricRegistry registry = new MetricRegistry();
+      metrics.register(registry, "ANALYSIS.text", Collections.<String, Gauge<?>> emptyMap());
+      collect("90% cotton, 10% ignore this ignore this, size 42. Another sentence.", tokenizer);
+      assertEquals(1, metrics.getDocumentCount());
+      assertEquals(4, metrics.getSentenceCount());
+      assertEquals(3, metrics.getEmittedCount());
+      assertEquals(1, metrics.getDroppedCount());
+      assertEquals(2, metrics.getCommaSplitCount());
+      assertEquals(1, registry.counter("ANALYSIS.text.sentences.dropped").getCount());
+      assertEquals(1, registry.histogram("ANALYSIS.text.documentNanos").getCount());
+
+      metrics.unregister();
+      assertTrue(registry.getNames().isEmpty());
+   }
+
+   @Test
+   public void testDocumentTimeExcludesConsumer() throws Exception {
+      SentenceTokenizerMetrics metrics = new SentenceTokenizerMetrics();
+      tokenizer.setMetrics(metrics);
+      MetricRegistry registry = new MetricRegistry();
+      metrics.register(registry, "ANALYSIS.text", Collections.<String, Gauge<?>> emptyMap());
+
+      TokenStream stream = tokenize("First sentence with some more words. Second sentence.", tokenizer);
+      while (stream.incrementToken()) {
+         // a slow consumer, e.g. following filters and indexing
+         Thread.sleep(100);
+      }
+      stream.end();
+
+      assertEquals(1, metrics.getDocumentCount());
+      assertTrue(registry.histogram("ANALYSIS.text.documentNanos").getSnapshot().getMax() < 100_000_000L);
+      metrics.unregister();
+   }
+
+   @Test
+   public void testParallelScoringEmitsSameTokens() throws Exception {
+      StringBuilder document = new StringBuilder();
+      Random random = new Random(42);
+      while (document.length() < 100000) {
+         document.append(INPUTS[random.nextInt(INPUTS.length)]).append(' ');
+      }
+
+      for (AnalyzingSentenceTokenizer.Scanner scanner : AnalyzingSentenceTokenizer.Scanner.values()) {
+         AnalyzingSentenceTokenizer sequential = tokenizer(false, AnalyzingSentenceTokenizerFactory.DEFAULT_CHUNK_SIZE,
+               AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE, scanner);
+         AnalyzingSentenceTokenizer parallel = tokenizer(false, AnalyzingSentenceTokenizerFactory.DEFAULT_CHUNK_SIZE,
+               AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE, scanner);
+         parallel.setParallelThreshold(1);
+
+         assertEquals(collect(document.toString(), sequential), collect(document.toString(), parallel));
+         for (String input : INPUTS) {
+            assertEquals(collect(input, sequential), collect(input, parallel));
+         }
+      }
+   }
+
+   /**
+    * The stopword analysis as it was implemented with string operations.
+    */
+   private static boolean isQualitySentenceReference(String sentence) {
+      String cleanSentence = Pattern.compile("\\s+").matcher(CharMatcher.DIGIT.or(
+            CharMatcher.anyOf(",;.:$!?%&/<>™®\\-–'\"|")).removeFrom(
+                  CharMatcher.WHITESPACE.trimFrom(sentence)))
+            .replaceAll(" ").toLowerCase(Locale.GERMAN);
+      int stopWordCount = 0;
+      int wordCount = 0;
+      for (String w : Splitter.on(CharMatcher.WHITESPACE).trimResults().split(cleanSentence)) {
+         if (STOPWORDS.contains(w)) {
+            stopWordCount++;
+         }
+         wordCount++;
+      }
+      float ratio = wordCount > 0 ? stopWordCount / (float) wordCount : 0;
+      return ratio <= AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_STOPWORD_RATIO
+            || wordCount < AnalyzingSentenceTokenizerFactory.DEFAULT_MIN_SENTENCE_LENGTH;
+   }
+
+   @Test
+   public void testStopwordAnalysisSameAsStringBasedAnalysis() throws Exception {
+      // words, stopwords in different cases, noise and whitespace, but no commas and sentence boundaries
+      String[] alphabet = { "word", "stopword", "Ignore", "THIS", "42", "7x", "-", "%", "|", ".", " ", "  ", "\t",
+            " - ", "\u00A0", "\u2003" };
+      Pattern boundary = Pattern.compile("(?<=[.?!\\|;-])\\s+(?=\\p{Lu})");
+      Random random = new Random(42);
+      for (int i = 0; i < 5000; i++) {
+         StringBuilder sentence = new StringBuilder("X ");
+         int length = random.nextInt(16);
+         for (int j = 0; j < length; j++) {
+            sentence.append(alphabet[random.nextInt(alphabet.length)]);
+         }
+         if (boundary.matcher(sentence).find()) {
+            continue;
+         }
+
+         String input = "Lead. " + sentence;
+         List<String> tokens = collect(input, tokenizer);
+         assertEquals(input, isQualitySentenceReference(sentence.toString()),
+               tokens.contains(sentence + "[6," + input.length() + "]"));
+      }
+   }
+
+   @Test
+   public void testTableScannerSameAsRegexOnRandomInput() throws Exception {
+      // sentence boundaries, commas next to digits, semicolons and stopwords
+      String[] alphabet = { "Word", "word", "stopword", "this", " ", "  ", ". ", "! ", "; ", ";", ",", ",,", ", ",
+            "5", "42", "-", "\t", "\u00A0" };
+      AnalyzingSentenceTokenizer table = tokenizer(false, AnalyzingSentenceTokenizerFactory.DEFAULT_CHUNK_SIZE,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE, AnalyzingSentenceTokenizer.Scanner.TABLE);
+      AnalyzingSentenceTokenizer streamingTable = tokenizer(true, 3, 12, AnalyzingSentenceTokenizer.Scanner.TABLE);
+      AnalyzingSentenceTokenizer streamingRegex = streamingTokenizer(3, 12);
+      Random random = new Random(42);
+      for (int i = 0; i < 5000; i++) {
+         StringBuilder input = new StringBuilder();
+         int length = random.nextInt(30);
+         for (int j = 0; j < length; j++) {
+            input.append(alphabet[random.nextInt(alphabet.length)]);
+         }
+         assertEquals(input.toString(), collect(input.toString(), tokenizer), collect(input.toString(), table));
+         assertEquals(input.toString(), collect(input.toString(), streamingRegex),
+               collect(input.toString(), streamingTable));
+      }
+   }
+
+   @Test
+   public void testWordOutput() throws Exception {
+      AnalyzingSentenceTokenizer words = tokenizer(false, AnalyzingSentenceTokenizerFactory.DEFAULT_CHUNK_SIZE,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE, AnalyzingSentenceTokenizer.Scanner.TABLE);
+      words.setOutput(AnalyzingSentenceTokenizer.Output.WORDS);
+      words.setPositionGap(10);
+
+      TokenStream stream = tokenize(
+            "First sentence. Should ignore this sentence ignore. Another sentence with some more words.", words);
+      CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+      OffsetAttribute offsetAtt = stream.getAttribute(OffsetAttribute.class);
+      PositionIncrementAttribute positionAtt = stream.getAttribute(PositionIncrementAttribute.class);
+      List<String> tokens = new ArrayList<>();
+      while (stream.incrementToken()) {
+         tokens.add(termAtt + "[" + offsetAtt.startOffset() + "," + offsetAtt.endOffset() + "]+"
+               + positionAtt.getPositionIncrement());
+      }
+      stream.end();
+      stream.close();
+
+      assertEquals(Arrays.asList("First[0,5]+1", "sentence[6,14]+1", "Another[52,59]+11", "sentence[60,68]+1",
+            "with[69,73]+1", "some[74,78]+1", "more[79,83]+1", "words[84,89]+1"), tokens);
+   }
+
+   @Test
+   public void testWordOutputSameWordsAsSentences() throws Exception {
+      Pattern word = Pattern.compile("[\\p{L}\\p{Nd}]+");
+      for (boolean streaming : new boolean[] { false, true }) {
+         AnalyzingSentenceTokenizer words = tokenizer(streaming, 3, 10, AnalyzingSentenceTokenizer.Scanner.TABLE);
+         words.setOutput(AnalyzingSentenceTokenizer.Output.WORDS);
+         AnalyzingSentenceTokenizer sentences = tokenizer(streaming, 3, 10, AnalyzingSentenceTokenizer.Scanner.TABLE);
+         for (String input : INPUTS) {
+            List<String> expected = new ArrayList<>();
+            List<String> sentenceTokens = collect(input, sentences);
+            for (String token : sentenceTokens.subList(0, sentenceTokens.size() - 1)) {
+               String term = token.substring(0, token.lastIndexOf('['));
+               int start = Integer.parseInt(token.substring(token.lastIndexOf('[') + 1, token.lastIndexOf(',')));
+               Matcher matcher = word.matcher(term);
+               while (matcher.find()) {
+                  expected.add(matcher.group() + "[" + (start + matcher.start()) + "," + (start + matcher.end()) + "]");
+               }
+            }
+            expected.add(sentenceTokens.get(sentenceTokens.size() - 1));
+            assertEquals(input, expected, collect(input, words));
+         }
+      }
+   }
+
+   @Test
+   public void testLargeBufferIsReleasedAtEnd() throws Exception {
+      StringBuilder document = new StringBuilder();
+      Random random = new Random(42);
+      while (document.length() < 10000) {
+         document.append(INPUTS[random.nextInt(INPUTS.length)]).append(' ');
+      }
+
+      CharBufferPool pool = new CharBufferPool(1 << 20);
+      AnalyzingSentenceTokenizer capped = tokenizer(false, 16, AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE,
+            AnalyzingSentenceTokenizer.Scanner.TABLE);
+      capped.setMaxRetainedChars(64);
+      capped.setBufferPool(pool);
+      AnalyzingSentenceTokenizer uncapped = tokenizer(false, 16,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE, AnalyzingSentenceTokenizer.Scanner.TABLE);
+
+      for (int i = 0; i < 2; i++) {
+         assertEquals(collect(document.toString(), uncapped), collect(document.toString(), capped));
+         assertEquals(0, pool.getBorrowedBytes());
+         assertTrue(pool.getPooledBytes() >= 2 * document.length());
+         for (String input : INPUTS) {
+            assertEquals(collect(input, uncapped), collect(input, capped));
+         }
+      }
+   }
+
 }
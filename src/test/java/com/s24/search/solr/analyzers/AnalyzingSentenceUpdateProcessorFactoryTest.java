@@ -0,0 +1,166 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AnalyzingSentenceUpdateProcessorFactoryTest {
+
+   private AnalyzingSentenceUpdateProcessorFactory factory;
+   private SolrInputDocument added;
+
+   @Before
+   public void setUp() {
+      NamedList<Object> args = new NamedList<>();
+      args.add("source", "description");
+      args.add("dest", Arrays.asList("description_search", "description_stemmed"));
+      args.add("stopwordfile", "stopwords.txt");
+      args.add("scanner", "table");
+      args.add("filter", "true");
+
+      factory = new AnalyzingSentenceUpdateProcessorFactory();
+      factory.init(args);
+      factory.inform(new ResourceLoader() {
+         @Override
+         public InputStream openResource(String resource) throws java.io.IOException {
+            if (!"stopwords.txt".equals(resource)) {
+               throw new FileNotFoundException(resource);
+            }
+            return new ByteArrayInputStream("stopword\nignore\nthis\nword\n".getBytes(StandardCharsets.UTF_8));
+         }
+
+         @Override
+         public <T> Class<? extends T> findClass(String cname, Class<T> expectedType) {
+            throw new UnsupportedOperationException();
+         }
+
+         @Override
+         public <T> T newInstance(String cname, Class<T> expectedType) {
+            throw new UnsupportedOperationException();
+         }
+      });
+   }
+
+   private SolrInputDocument process(SolrInputDocument doc) throws Exception {
+      SolrQueryRequest req = mock(SolrQueryRequest.class);
+      UpdateRequestProcessor next = new UpdateRequestProcessor(null) {
+         @Override
+         public void processAdd(AddUpdateCommand cmd) {
+            added = cmd.getSolrInputDocument();
+         }
+      };
+
+      AddUpdateCommand cmd = new AddUpdateCommand(req);
+      cmd.solrDoc = doc;
+      factory.getInstance(req, null, next).processAdd(cmd);
+      return added;
+   }
+
+   @Test
+   public void testWritesKeptSentencesToAllTargets() throws Exception {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.addField("description",
+            "First sentence. Should ignore this sentence ignore. Another sentence with some more words.");
+      doc.addField("description", "ignore this word ignore this.");
+
+      SolrInputDocument result = process(doc);
+      assertEquals(Arrays.asList("First sentence. Another sentence with some more words.",
+            "ignore this word ignore this."), result.getFieldValues("description_search"));
+      assertEquals(result.getFieldValues("description_search"), result.getFieldValues("description_stemmed"));
+      assertEquals(2, result.getFieldValues("description").size());
+   }
+
+   @Test
+   public void testReplacesTargets() throws Exception {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.addField("description", "A simple sentence without stopwords.");
+      doc.addField("description_search", "stale");
+
+      SolrInputDocument result = process(doc);
+      assertEquals("A simple sentence without stopwords.", result.getFieldValue("description_search"));
+      assertEquals(1, result.getFieldValues("description_search").size());
+   }
+
+   @Test
+   public void testStopwordsAreHeldUntilClose() throws Exception {
+      int size = StopwordSetCache.size();
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.addField("description", "Should ignore this sentence ignore. Another sentence with some more words.");
+      assertEquals("Another sentence with some more words.", process(doc).getFieldValue("description_search"));
+      assertEquals(size, StopwordSetCache.size());
+
+      factory.close();
+      assertEquals(size - 1, StopwordSetCache.size());
+   }
+
+   @Test
+   public void testBoilerplateIsCountedOncePerDocument() throws Exception {
+      NamedList<Object> args = new NamedList<>();
+      args.add("source", "description");
+      args.add("dest", "description_search");
+      args.add("stopwordfile", "stopwords.txt");
+      args.add("filter", "true");
+      args.add("maxSentenceFrequency", "2");
+      factory = new AnalyzingSentenceUpdateProcessorFactory();
+      factory.init(args);
+      factory.inform(StopwordSetCacheTest.loader("stopwords.txt", "und\n"));
+
+      for (int i = 0; i < 2; i++) {
+         SolrInputDocument doc = new SolrInputDocument();
+         doc.addField("description", "Red cotton shirt. Free shipping from 20 Euro.");
+         assertEquals("Red cotton shirt. Free shipping from 20 Euro.",
+               process(doc).getFieldValue("description_search"));
+      }
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.addField("description", "Blue linen shirt. Free shipping from 50 Euro.");
+      assertEquals("Blue linen shirt. ", process(doc).getFieldValue("description_search"));
+      factory.close();
+   }
+
+   @Test
+   public void testValuesAreCopiedUnchangedWithoutFilter() throws Exception {
+      for (String filter : new String[] { null, "false" }) {
+         NamedList<Object> args = new NamedList<>();
+         args.add("source", "description");
+         args.add("dest", "description_search");
+         args.add("stopwordfile", "stopwords.txt");
+         if (filter != null) {
+            args.add("filter", filter);
+         }
+         factory = new AnalyzingSentenceUpdateProcessorFactory();
+         factory.init(args);
+         factory.inform(StopwordSetCacheTest.loader("stopwords.txt", "ignore\nthis\n"));
+
+         SolrInputDocument doc = new SolrInputDocument();
+         doc.addField("description", "Should ignore this sentence ignore.  ");
+         doc.addField("description", "Another sentence with some more words.");
+         assertEquals(doc.getFieldValues("description"), process(doc).getFieldValues("description_search"));
+         factory.close();
+      }
+   }
+
+   @Test
+   public void testDocumentWithoutSource() throws Exception {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.addField("id", "1");
+
+      SolrInputDocument result = process(doc);
+      assertNull(result.getFieldValue("description_search"));
+   }
+
+}
@@ -0,0 +1,113 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class BoilerplateSketchTest {
+
+   private static long fingerprint(String sentence) {
+      char[] chars = ("  " + sentence).toCharArray();
+      return BoilerplateSketch.fingerprint(chars, 2, chars.length);
+   }
+
+   @Test
+   public void testFingerprintIgnoresCasePunctuationAndNumbers() {
+      long fingerprint = fingerprint("Versandkostenfrei ab 20 Euro Bestellwert.");
+      assertEquals(fingerprint, fingerprint("versandkostenfrei ab 50 EURO Bestellwert!"));
+      assertEquals(fingerprint, fingerprint("Versandkostenfrei, ab 20,- Euro Bestellwert"));
+      assertNotEquals(fingerprint, fingerprint("Aus reiner Baumwolle und Leinen."));
+      assertNotEquals(fingerprint("Baumwolle"), fingerprint("Leinen"));
+      assertEquals(0, fingerprint("42, 7."));
+   }
+
+   @Test
+   public void testSentencesAreCounted() {
+      BoilerplateSketch sketch = BoilerplateSketch.create(1024, 0);
+      long boilerplate = fingerprint("Versandkostenfrei ab 20 Euro Bestellwert.");
+      long other = fingerprint("Aus reiner Baumwolle und Leinen.");
+
+      assertEquals(1, sketch.add(boilerplate));
+      assertEquals(2, sketch.add(boilerplate));
+      assertEquals(3, sketch.add(boilerplate));
+      assertEquals(1, sketch.add(other));
+      assertEquals(3, sketch.estimate(boilerplate));
+   }
+
+   @Test
+   public void testCountsAreHalved() {
+      BoilerplateSketch sketch = BoilerplateSketch.create(1024, 8);
+      long boilerplate = fingerprint("Versandkostenfrei ab 20 Euro Bestellwert.");
+      for (int i = 0; i < 7; i++) {
+         sketch.add(boilerplate);
+      }
+      assertEquals(7, sketch.estimate(boilerplate));
+      sketch.add(boilerplate);
+      assertEquals(4, sketch.estimate(boilerplate));
+   }
+
+   @Test
+   public void testCountsArePersisted() throws Exception {
+      Path dir = Files.createTempDirectory("sketch");
+      Path file = dir.resolve("boilerplate.sketch");
+      Path copy = dir.resolve("copy.sketch");
+      try {
+         BoilerplateSketch sketch = BoilerplateSketch.open(file, 1000, 0);
+         assertEquals(1024, sketch.width());
+         assertSame(sketch, BoilerplateSketch.open(file, 1000, 0));
+
+         long boilerplate = fingerprint("Versandkostenfrei ab 20 Euro Bestellwert.");
+         sketch.add(boilerplate);
+         sketch.add(boilerplate);
+         sketch.flush();
+
+         Files.copy(file, copy);
+         BoilerplateSketch reopened = BoilerplateSketch.open(copy, 64, 0);
+         assertEquals(1024, reopened.width());
+         assertEquals(2, reopened.estimate(boilerplate));
+      } finally {
+         Files.deleteIfExists(file);
+         Files.deleteIfExists(copy);
+         Files.delete(dir);
+      }
+   }
+
+   @Test
+   public void testCountsArePersistedWhenFactoryIsClosed() throws Exception {
+      Path dir = Files.createTempDirectory("sketch");
+      Path file = dir.resolve("boilerplate.sketch");
+      Path copy = dir.resolve("copy.sketch");
+      try {
+         Map<String, String> args = new HashMap<>();
+         args.put("stopwordfile", "stopwords.txt");
+         args.put("filter", "true");
+         args.put("maxSentenceFrequency", "2");
+         args.put("boilerplateSketch", file.toString());
+         args.put("boilerplateSketchWidth", "1024");
+         AnalyzingSentenceTokenizerFactory factory = new AnalyzingSentenceTokenizerFactory(args);
+         factory.inform(StopwordSetCacheTest.loader("stopwords.txt", "und\n"));
+         factory.getSentenceFilter()
+               .countSentences("Versandkostenfrei ab 20 Euro Bestellwert. Aus reiner Baumwolle und Leinen.");
+         assertEquals(2, factory.getBoilerplateSketch().additions());
+         factory.close();
+
+         // a copy of the file is mapped on its own, like after a restart
+         Files.copy(file, copy);
+         BoilerplateSketch reopened = BoilerplateSketch.open(copy, 1024, 10240);
+         assertEquals(2, reopened.additions());
+         assertEquals(1, reopened.estimate(fingerprint("Versandkostenfrei ab 20 Euro Bestellwert.")));
+      } finally {
+         Files.deleteIfExists(file);
+         Files.deleteIfExists(copy);
+         Files.delete(dir);
+      }
+   }
+
+}
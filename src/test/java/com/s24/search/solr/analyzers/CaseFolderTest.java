@@ -0,0 +1,43 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Locale;
+
+import org.apache.lucene.analysis.CharacterUtils;
+import org.junit.Test;
+
+public class CaseFolderTest {
+
+   private static String toLowerCase(CaseFolder caseFolder, String word) {
+      char[] chars = ("x" + word + "X").toCharArray();
+      caseFolder.toLowerCase(chars, 1, word.length());
+      return new String(chars, 1, word.length());
+   }
+
+   @Test
+   public void testSameAsCharacterUtils() {
+      CaseFolder caseFolder = CaseFolder.forLocale(Locale.GERMAN);
+      StringBuilder all = new StringBuilder();
+      for (int codePoint = 0; codePoint < 0x20000; codePoint++) {
+         if (Character.getType(codePoint) != Character.SURROGATE) {
+            all.appendCodePoint(codePoint);
+         }
+      }
+
+      char[] expected = all.toString().toCharArray();
+      CharacterUtils.toLowerCase(expected, 0, expected.length);
+      assertEquals(new String(expected), toLowerCase(caseFolder, all.toString()));
+   }
+
+   @Test
+   public void testLanguages() {
+      assertEquals("straße", toLowerCase(CaseFolder.forLocale(Locale.GERMAN), "STRAßE"));
+      assertEquals("été", toLowerCase(CaseFolder.forLocale(Locale.FRENCH), "ÉTÉ"));
+      assertEquals("ijsselmeer", toLowerCase(CaseFolder.forLocale(Locale.forLanguageTag("nl")), "IJsselmeer"));
+      assertEquals("ısparta", toLowerCase(CaseFolder.forLocale(Locale.forLanguageTag("tr")), "ISPARTA"));
+      assertEquals("istanbul", toLowerCase(CaseFolder.forLocale(Locale.forLanguageTag("tr")), "İSTANBUL"));
+      assertEquals("isparta", toLowerCase(CaseFolder.forLocale(Locale.ROOT), "ISPARTA"));
+   }
+
+}
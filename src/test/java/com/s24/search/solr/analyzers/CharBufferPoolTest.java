@@ -0,0 +1,40 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CharBufferPoolTest {
+
+   @Test
+   public void testReusesSmallestLargeEnoughBuffer() {
+      CharBufferPool pool = new CharBufferPool(1000);
+      char[] small = pool.borrow(100);
+      char[] large = pool.borrow(500);
+      assertTrue(small.length >= 100);
+      assertEquals(2L * (small.length + large.length), pool.getBorrowedBytes());
+
+      pool.release(large);
+      pool.release(small);
+      assertEquals(0, pool.getBorrowedBytes());
+      assertEquals(2L * (small.length + large.length), pool.getPooledBytes());
+
+      assertSame(small, pool.borrow(50));
+      assertSame(large, pool.borrow(small.length + 1));
+      assertEquals(0, pool.getPooledBytes());
+   }
+
+   @Test
+   public void testDropsBuffersAboveMaxSize() {
+      CharBufferPool pool = new CharBufferPool(1000);
+      char[] buffer = pool.borrow(2000);
+      pool.release(buffer);
+      assertEquals(0, pool.getPooledBytes());
+      assertEquals(0, pool.getBorrowedBytes());
+      assertNotSame(buffer, pool.borrow(2000));
+   }
+
+}
@@ -0,0 +1,177 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.junit.Test;
+
+public class PackedStopwordDictionaryTest {
+
+   // lower and upper case letters, umlauts, the dotted capital I and a supplementary letter with a lower case
+   private static final String[] ALPHABET = { "a", "b", "E", "\u00E4", "\u00C4", "\u00DF", "\u0130",
+         "\uD801\uDC00", "\uD801\uDC28", "1" };
+
+   private static String randomWord(Random random) {
+      StringBuilder word = new StringBuilder();
+      for (int i = random.nextInt(5); i > 0; i--) {
+         word.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+      }
+      return word.toString();
+   }
+
+   private static boolean contains(StopwordDictionary dictionary, String word) {
+      char[] text = ("#" + word + "#").toCharArray();
+      return dictionary.contains(text, 1, word.length());
+   }
+
+   @Test
+   public void testContains() throws Exception {
+      PackedStopwordDictionary dictionary = PackedStopwordDictionary.build(Arrays.asList("und", "Oder", "und", ""),
+            true);
+
+      assertEquals(3, dictionary.size());
+      assertTrue(contains(dictionary, "und"));
+      assertTrue(contains(dictionary, "UND"));
+      assertTrue(contains(dictionary, "oder"));
+      assertTrue(contains(dictionary, ""));
+      assertFalse(contains(dictionary, "un"));
+      assertFalse(contains(dictionary, "unde"));
+      assertFalse(contains(dictionary, "aber"));
+   }
+
+   @Test
+   public void testCaseSensitive() throws Exception {
+      PackedStopwordDictionary dictionary = PackedStopwordDictionary.build(Arrays.asList("und", "Oder"), false);
+
+      assertTrue(contains(dictionary, "Oder"));
+      assertFalse(contains(dictionary, "oder"));
+      assertFalse(contains(dictionary, "UND"));
+   }
+
+   @Test
+   public void testSameAsCharArraySet() throws Exception {
+      Random random = new Random(0);
+      for (boolean ignoreCase : new boolean[] { true, false }) {
+         List<String> words = new ArrayList<>();
+         for (int i = 0; i < 500; i++) {
+            words.add(randomWord(random));
+         }
+         CharArraySet set = new CharArraySet(words, ignoreCase);
+         PackedStopwordDictionary dictionary = PackedStopwordDictionary.build(words, ignoreCase);
+
+         assertEquals(set.size(), dictionary.size());
+         for (int i = 0; i < 5000; i++) {
+            String word = random.nextBoolean() ? randomWord(random) : words.get(random.nextInt(words.size()));
+            word = random.nextBoolean() ? word.toUpperCase(Locale.ROOT) : word;
+            assertEquals(word, set.contains(word), contains(dictionary, word));
+         }
+      }
+   }
+
+   @Test
+   public void testWriteAndLoad() throws Exception {
+      PackedStopwordDictionary dictionary = PackedStopwordDictionary.build(
+            Arrays.asList("und", "Oder", "\u00FCber"), true);
+
+      Path file = Files.createTempFile("stopwords", ".dic");
+      try {
+         dictionary.write(file);
+         PackedStopwordDictionary opened = PackedStopwordDictionary.load(file);
+
+         assertEquals(3, opened.size());
+         assertTrue(opened.isIgnoreCase());
+         assertTrue(contains(opened, "\u00DCBER"));
+         assertTrue(contains(opened, "oder"));
+         assertFalse(contains(opened, "aber"));
+         assertEquals(dictionary.ramBytesUsed(), opened.ramBytesUsed());
+      } finally {
+         Files.delete(file);
+      }
+   }
+
+   @Test
+   public void testEmpty() throws Exception {
+      PackedStopwordDictionary dictionary = PackedStopwordDictionary.read(
+            PackedStopwordDictionary.build(new ArrayList<String>(), true).toByteBuffer());
+
+      assertEquals(0, dictionary.size());
+      assertFalse(contains(dictionary, "und"));
+   }
+
+   @Test(expected = IOException.class)
+   public void testRejectsText() throws Exception {
+      PackedStopwordDictionary.read(ByteBuffer.wrap("und\noder\nsowie\naber\nwenn\ndann\n".getBytes("UTF-8")));
+   }
+
+   @Test(expected = IOException.class)
+   public void testRejectsTruncated() throws Exception {
+      ByteBuffer buffer = PackedStopwordDictionary.build(Arrays.asList("und", "oder"), true).toByteBuffer();
+      buffer.limit(buffer.limit() - 1);
+      PackedStopwordDictionary.read(buffer);
+   }
+
+   @Test(expected = IOException.class)
+   public void testRejectsDescendingOffsets() throws Exception {
+      ByteBuffer buffer = PackedStopwordDictionary.build(Arrays.asList("und", "oder", "aber"), true).toByteBuffer();
+      // the second of four offsets, after the header of six ints
+      buffer.putInt(7 * Integer.BYTES, 9);
+      PackedStopwordDictionary.read(buffer);
+   }
+
+   @Test(expected = IOException.class)
+   public void testRejectsWordIdOutOfBounds() throws Exception {
+      ByteBuffer buffer = PackedStopwordDictionary.build(Arrays.asList("und", "oder", "aber"), true).toByteBuffer();
+      // the table follows the header and the four offsets
+      int table = 10 * Integer.BYTES;
+      for (int slot = 0;; slot++) {
+         if (buffer.getInt(table + (2 * slot + 1) * Integer.BYTES) != 0) {
+            buffer.putInt(table + (2 * slot + 1) * Integer.BYTES, 42);
+            break;
+         }
+      }
+      PackedStopwordDictionary.read(buffer);
+   }
+
+   @Test(expected = IOException.class)
+   public void testRejectsWrongHash() throws Exception {
+      ByteBuffer buffer = PackedStopwordDictionary.build(Arrays.asList("und", "oder", "aber"), true).toByteBuffer();
+      int table = 10 * Integer.BYTES;
+      for (int slot = 0;; slot++) {
+         if (buffer.getInt(table + (2 * slot + 1) * Integer.BYTES) != 0) {
+            buffer.putInt(table + 2 * slot * Integer.BYTES, buffer.getInt(table + 2 * slot * Integer.BYTES) + 1);
+            break;
+         }
+      }
+      PackedStopwordDictionary.read(buffer);
+   }
+
+   @Test
+   public void testTokenizerWithPackedStopwords() throws Exception {
+      List<String> words = Arrays.asList("stopword", "ignore", "this", "word");
+      String input = "This is a sentence. Ignore this stopword word sentence. And this one is fine too, I think.";
+
+      List<String> expected = AnalyzingSentenceTokenizerTest.collect(input, new AnalyzingSentenceTokenizer(
+            AnalyzingSentenceTokenizer.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, true, new CharArraySet(words, true),
+            0.2f, 0.21f, 5));
+      List<String> actual = AnalyzingSentenceTokenizerTest.collect(input, new AnalyzingSentenceTokenizer(
+            AnalyzingSentenceTokenizer.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, true,
+            PackedStopwordDictionary.build(words, true), 0.2f, 0.21f, 5, false, 8192, 65536,
+            AnalyzingSentenceTokenizer.Scanner.TABLE));
+
+      assertEquals(expected, actual);
+      assertEquals(3, actual.size());
+   }
+
+}
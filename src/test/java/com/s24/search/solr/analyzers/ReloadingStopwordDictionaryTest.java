@@ -0,0 +1,179 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.junit.After;
+import org.junit.Test;
+
+public class ReloadingStopwordDictionaryTest {
+
+   private final Object core = new Object();
+   private final Map<String, String> resources = new ConcurrentHashMap<>();
+   private final ResourceLoader loader = loader();
+
+   @After
+   public void tearDown() {
+      StopwordSetCache.release(core);
+   }
+
+   private ResourceLoader loader() {
+      return new ResourceLoader() {
+         @Override
+         public InputStream openResource(String resource) throws java.io.IOException {
+            if (!resources.containsKey(resource)) {
+               throw new FileNotFoundException(resource);
+            }
+            return new ByteArrayInputStream(resources.get(resource).getBytes(StandardCharsets.UTF_8));
+         }
+
+         @Override
+         public <T> Class<? extends T> findClass(String cname, Class<T> expectedType) {
+            throw new UnsupportedOperationException();
+         }
+
+         @Override
+         public <T> T newInstance(String cname, Class<T> expectedType) {
+            throw new UnsupportedOperationException();
+         }
+      };
+   }
+
+   private ReloadingStopwordDictionary dictionary() throws Exception {
+      return new ReloadingStopwordDictionary(core, loader, Arrays.asList("stopwords.txt"), true,
+            StopwordDictionary.Format.TEXT);
+   }
+
+   @Test
+   public void testUnchangedFileIsNotReloaded() throws Exception {
+      resources.put("stopwords.txt", "und\n");
+      ReloadingStopwordDictionary dictionary = dictionary();
+      StopwordDictionary current = dictionary.current();
+
+      assertFalse(dictionary.reload());
+      assertSame(current, dictionary.current());
+      assertEquals(0, dictionary.getReloadCount());
+   }
+
+   @Test
+   public void testChangedFileIsSwappedIn() throws Exception {
+      resources.put("stopwords.txt", "und\n");
+      ReloadingStopwordDictionary dictionary = dictionary();
+      StopwordDictionary before = dictionary.current();
+      int size = StopwordSetCache.size();
+
+      resources.put("stopwords.txt", "und\noder\n");
+      assertTrue(dictionary.reload());
+
+      assertEquals(1, dictionary.getReloadCount());
+      assertTrue(dictionary.current().contains("oder".toCharArray(), 0, 4));
+      assertFalse(before.contains("oder".toCharArray(), 0, 4));
+
+      // the old set has lost its only reference
+      assertEquals(size, StopwordSetCache.size());
+   }
+
+   @Test
+   public void testFailedReloadKeepsLastSet() throws Exception {
+      resources.put("stopwords.txt", "und\n");
+      ReloadingStopwordDictionary dictionary = dictionary();
+      StopwordDictionary current = dictionary.current();
+
+      resources.remove("stopwords.txt");
+      assertFalse(dictionary.reload());
+
+      assertSame(current, dictionary.current());
+      assertEquals(1, dictionary.getFailureCount());
+      assertEquals(0, dictionary.getReloadCount());
+   }
+
+   @Test
+   public void testTokenizerPicksUpReloadOnReset() throws Exception {
+      resources.put("stopwords.txt", "der\ndie\ndas\n");
+      ReloadingStopwordDictionary dictionary = dictionary();
+      AnalyzingSentenceTokenizer tokenizer = new AnalyzingSentenceTokenizer(
+            AnalyzingSentenceTokenizer.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, true, dictionary, 0.2f, 0.5f, 2, false,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_CHUNK_SIZE,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE, AnalyzingSentenceTokenizer.Scanner.TABLE);
+
+      String text = "Ein Satz mit Inhalt. Und noch ein Satz mit Inhalt.";
+      assertEquals(2, countTokens(tokenizer, text));
+
+      resources.put("stopwords.txt", "ein\nsatz\nmit\nund\nnoch\n");
+      assertTrue(dictionary.reload());
+      assertEquals(0, countTokens(tokenizer, text));
+   }
+
+   @Test
+   public void testDictionariesOfSameFilesShareOnePoll() throws Exception {
+      resources.put("stopwords.txt", "und\n");
+      ReloadingStopwordDictionary first = dictionary();
+      ReloadingStopwordDictionary second = dictionary();
+      int watches = StopwordSetCache.watches();
+
+      first.start(10, TimeUnit.MILLISECONDS);
+      second.start(10, TimeUnit.MILLISECONDS);
+      try {
+         assertEquals(watches + 1, StopwordSetCache.watches());
+
+         resources.put("stopwords.txt", "und\noder\n");
+         long deadline = System.currentTimeMillis() + 10000;
+         while ((first.getReloadCount() == 0 || second.getReloadCount() == 0)
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+         }
+
+         assertEquals(1, first.getReloadCount());
+         assertEquals(1, second.getReloadCount());
+         assertSame(first.current(), second.current());
+         assertTrue(first.current().contains("oder".toCharArray(), 0, 4));
+      } finally {
+         first.stop();
+         second.stop();
+      }
+      assertEquals(watches, StopwordSetCache.watches());
+   }
+
+   @Test
+   public void testClosedFactoryStopsPolling() throws Exception {
+      resources.put("stopwords.txt", "und\n");
+      int watches = StopwordSetCache.watches();
+
+      Map<String, String> args = new HashMap<>();
+      args.put("stopwordfile", "stopwords.txt");
+      args.put("stopwordReloadInterval", "60");
+      AnalyzingSentenceTokenizerFactory factory = new AnalyzingSentenceTokenizerFactory(args);
+      factory.inform(loader);
+      assertEquals(watches + 1, StopwordSetCache.watches());
+
+      factory.close();
+      assertEquals(watches, StopwordSetCache.watches());
+   }
+
+   private static int countTokens(AnalyzingSentenceTokenizer tokenizer, String text) throws Exception {
+      tokenizer.setReader(new StringReader(text));
+      tokenizer.reset();
+      int count = 0;
+      while (tokenizer.incrementToken()) {
+         count++;
+      }
+      tokenizer.end();
+      tokenizer.close();
+      return count;
+   }
+
+}
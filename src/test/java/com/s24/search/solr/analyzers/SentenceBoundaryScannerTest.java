@@ -0,0 +1,66 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class SentenceBoundaryScannerTest {
+
+   private static final Pattern SENTENCE_PATTERN = Pattern.compile("(?<=[.?!\\|;-])\\s+(?=\\p{Lu})");
+
+   // terminators, ASCII and other whitespace, upper and lower case letters, digits, commas and a supplementary
+   // uppercase letter
+   private static final String[] ALPHABET = { ".", "?", "!", "|", ";", "-", " ", "\t", "\n", "\u000B", "\u00A0",
+         "\u2028", "A", "Z", "\u00C4", "a", "\u00E4", "1", ",", "\uD835\uDC00", "\uD835" };
+
+   private static void assertSameAsRegex(String text) {
+      char[] buffer = text.toCharArray();
+      Matcher matcher = SENTENCE_PATTERN.matcher(text);
+      for (int from = 0; from <= buffer.length; from++) {
+         int expected = matcher.find(from) ? matcher.end() : -1;
+         assertEquals("from=" + from + " in '" + text + "'", expected,
+               SentenceBoundaryScanner.find(buffer, from, buffer.length));
+      }
+   }
+
+   @Test
+   public void testFindsBoundaries() throws Exception {
+      assertEquals(7, SentenceBoundaryScanner.find("First. Second.".toCharArray(), 0, 14));
+      assertEquals(9, SentenceBoundaryScanner.find("First!\t\n Second.".toCharArray(), 0, 16));
+      assertEquals(-1, SentenceBoundaryScanner.find("First. second.".toCharArray(), 0, 14));
+      assertEquals(-1, SentenceBoundaryScanner.find("First, Second.".toCharArray(), 0, 14));
+      assertEquals(-1, SentenceBoundaryScanner.find("First.Second.".toCharArray(), 0, 13));
+   }
+
+   @Test
+   public void testRespectsLimit() throws Exception {
+      char[] buffer = "First. Second.".toCharArray();
+      assertEquals(-1, SentenceBoundaryScanner.find(buffer, 0, 7));
+      assertEquals(7, SentenceBoundaryScanner.find(buffer, 0, 8));
+   }
+
+   @Test
+   public void testLooksBehindStart() throws Exception {
+      char[] buffer = "First. Second.".toCharArray();
+      assertEquals(7, SentenceBoundaryScanner.find(buffer, 6, buffer.length));
+      assertEquals(-1, SentenceBoundaryScanner.find(buffer, 7, buffer.length));
+   }
+
+   @Test
+   public void testSameAsRegexOnRandomInput() throws Exception {
+      Random random = new Random(42);
+      for (int i = 0; i < 20000; i++) {
+         StringBuilder text = new StringBuilder();
+         int length = random.nextInt(12);
+         for (int j = 0; j < length; j++) {
+            text.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+         }
+         assertSameAsRegex(text.toString());
+      }
+   }
+
+}
@@ -0,0 +1,137 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.TokenStream;
+import org.junit.Test;
+
+public class SentenceFilterTest {
+
+   private static final String[] INPUTS = {
+         "",
+         "foo",
+         "A simple sentence without stopwords.",
+         "First sentence. Should ignore this sentence ignore. Another sentence with some more words.",
+         "90% cotton, 10% ignore this ignore this, size 42. Another sentence.",
+         "Ende!  Noch ein Satz?\tJa - Nein; Vielleicht| Oder doch. ignore this word ignore this word, ignore. Fertig",
+         "a,,5 b, c,d ,e; F, g. H",
+   };
+
+   private static final CharArraySet STOPWORDS = new CharArraySet(Arrays.asList("stopword", "ignore", "this", "word"),
+         true);
+
+   /**
+    * Returns the kept sentences of the tokenizer in the same format as {@link #sentences(String, int[])}.
+    */
+   private static List<String> tokens(String input, AnalyzingSentenceTokenizer.Scanner scanner) throws Exception {
+      List<String> tokens = AnalyzingSentenceTokenizerTest.collect(input, new AnalyzingSentenceTokenizer(
+            TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, true, new CharArraySetDictionary(STOPWORDS),
+            AnalyzingSentenceTokenizerFactory.DEFAULT_COMMA_WORD_THRESHOLD,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_STOPWORD_RATIO,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MIN_SENTENCE_LENGTH, false,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_CHUNK_SIZE,
+            AnalyzingSentenceTokenizerFactory.DEFAULT_MAX_WINDOW_SIZE, scanner));
+
+      // drop the final offset
+      return tokens.subList(0, tokens.size() - 1);
+   }
+
+   private static List<String> sentences(String input, int[] spans) {
+      List<String> sentences = new ArrayList<>();
+      for (int i = 0; i < spans.length; i += 2) {
+         sentences.add(input.substring(spans[i], spans[i + 1]) + "[" + spans[i] + "," + spans[i + 1] + "]");
+      }
+      return sentences;
+   }
+
+   @Test
+   public void testKeepsSameSentencesAsTokenizer() throws Exception {
+      for (AnalyzingSentenceTokenizer.Scanner scanner : AnalyzingSentenceTokenizer.Scanner.values()) {
+         SentenceFilter filter = AnalyzingSentenceTokenizerTest.filter(scanner);
+         for (String input : INPUTS) {
+            assertEquals(input, tokens(input, scanner), sentences(input, filter.filter(input)));
+         }
+      }
+   }
+
+   @Test
+   public void testIsSingleSentence() throws Exception {
+      assertTrue(SentenceFilter.isSingleSentence("".toCharArray(), 0, 0));
+      assertTrue(SentenceFilter.isSingleSentence("rote schuhe größe 42 @ 50% ~ (neu)".toCharArray(), 0, 34));
+      for (char c : ".?!|;-,".toCharArray()) {
+         assertFalse(String.valueOf(c), SentenceFilter.isSingleSentence(("schuhe" + c + "rot").toCharArray(), 0, 10));
+      }
+      assertTrue(SentenceFilter.isSingleSentence("a. schuhe".toCharArray(), 2, 7));
+   }
+
+   @Test
+   public void testSingleSentenceIsKept() throws Exception {
+      SentenceFilter filter = AnalyzingSentenceTokenizerTest.filter(AnalyzingSentenceTokenizer.Scanner.TABLE);
+      assertArrayEquals(new int[] { 0, 28 }, filter.filter("ignore this word ignore this"));
+      assertArrayEquals(new int[0], filter.filter(""));
+   }
+
+   @Test
+   public void testFilterSlice() throws Exception {
+      SentenceFilter filter = AnalyzingSentenceTokenizerTest.filter(AnalyzingSentenceTokenizer.Scanner.TABLE);
+      String input = INPUTS[3];
+      char[] buffer = ("xx" + input + "yy").toCharArray();
+      assertArrayEquals(filter.filter(input), filter.filter(buffer, 2, input.length()));
+      assertArrayEquals(new int[0], filter.filter(""));
+   }
+
+   @Test
+   public void testBatchSameAsSingleTexts() throws Exception {
+      SentenceFilter filter = AnalyzingSentenceTokenizerTest.filter(AnalyzingSentenceTokenizer.Scanner.TABLE);
+      Random random = new Random(42);
+      List<String> texts = new ArrayList<>();
+      for (int i = 0; i < 2000; i++) {
+         StringBuilder text = new StringBuilder();
+         int sentences = 1 + random.nextInt(20);
+         for (int j = 0; j < sentences; j++) {
+            text.append(INPUTS[random.nextInt(INPUTS.length)]).append(' ');
+         }
+         texts.add(text.toString());
+      }
+
+      int[][] spans = filter.filter(texts);
+      assertEquals(texts.size(), spans.length);
+      for (int i = 0; i < texts.size(); i++) {
+         assertArrayEquals(filter.filter(texts.get(i)), spans[i]);
+      }
+   }
+
+   @Test
+   public void testLargeBufferIsReleasedAtEnd() throws Exception {
+      StringBuilder document = new StringBuilder();
+      Random random = new Random(42);
+      while (document.length() < 10000) {
+         document.append(INPUTS[random.nextInt(INPUTS.length)]).append(' ');
+      }
+
+      SentenceFilter uncapped = AnalyzingSentenceTokenizerTest.filter(AnalyzingSentenceTokenizer.Scanner.TABLE);
+      SentenceFilter capped = AnalyzingSentenceTokenizerTest.filter(AnalyzingSentenceTokenizer.Scanner.TABLE);
+      capped.setMaxRetainedChars(64);
+      SentenceFilter.Session session = capped.newSession();
+
+      for (int i = 0; i < 2; i++) {
+         assertArrayEquals(uncapped.filter(document), session.filter(document));
+         assertEquals(0, session.getRetainedChars());
+         for (String input : INPUTS) {
+            assertArrayEquals(uncapped.filter(input), session.filter(input));
+            assertTrue(session.getRetainedChars() <= 64);
+         }
+      }
+      assertArrayEquals(uncapped.filter(document), capped.filter(document));
+   }
+
+}
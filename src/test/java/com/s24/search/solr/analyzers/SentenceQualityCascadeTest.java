@@ -0,0 +1,272 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.junit.Test;
+
+import com.s24.search.solr.analyzers.SentenceQualityRule.Decision;
+
+public class SentenceQualityCascadeTest {
+
+   private static final String[] WORDS = { "ignore", "this", "word", "Schuhe", "rot", "42", "cm", "SALE", "JETZT",
+         "KAUFEN", "Baumwolle", "90%", "und", "mit", "a", "ist" };
+
+   private static SentenceQualityRule rule(final Decision decision, final int cost, final List<String> log,
+         final String name) {
+      return new SentenceQualityRule() {
+         @Override
+         public Decision decide(char[] buffer, int start, int end) {
+            log.add(name);
+            return decision;
+         }
+
+         @Override
+         public int cost() {
+            return cost;
+         }
+      };
+   }
+
+   private static Decision decide(SentenceQualityRule rule, String sentence) {
+      char[] buffer = (" " + sentence + " ").toCharArray();
+      return rule.decide(buffer, 1, sentence.length() + 1);
+   }
+
+   private static Map<String, String> args(String... keysAndValues) {
+      Map<String, String> args = new HashMap<>();
+      for (int i = 0; i < keysAndValues.length; i += 2) {
+         args.put(keysAndValues[i], keysAndValues[i + 1]);
+      }
+      return args;
+   }
+
+   private static ResourceLoader loader() {
+      return new ResourceLoader() {
+         @Override
+         public InputStream openResource(String resource) throws java.io.IOException {
+            return StopwordSetCacheTest.loader("stopwords.txt", "ignore\nthis\nword\n").openResource(resource);
+         }
+
+         @Override
+         public <T> Class<? extends T> findClass(String cname, Class<T> expectedType) {
+            try {
+               return Class.forName(cname).asSubclass(expectedType);
+            } catch (ClassNotFoundException e) {
+               throw new IllegalArgumentException(e);
+            }
+         }
+
+         @Override
+         public <T> T newInstance(String cname, Class<T> expectedType) {
+            throw new UnsupportedOperationException();
+         }
+      };
+   }
+
+   /**
+    * Rejects every sentence.
+    */
+   public static class RejectAllRule implements SentenceQualityRule {
+
+      public RejectAllRule(Map<String, String> args) {
+         // no args
+      }
+
+      @Override
+      public Decision decide(char[] buffer, int start, int end) {
+         return Decision.REJECT;
+      }
+
+      @Override
+      public int cost() {
+         return 0;
+      }
+   }
+
+   @Test
+   public void testRulesAreEvaluatedCheapestFirst() {
+      List<String> log = new ArrayList<>();
+      SentenceQualityCascade cascade = new SentenceQualityCascade(Arrays.asList(
+            new SentenceQualityCascade.Stage("expensive", rule(Decision.REJECT, 20, log, "expensive")),
+            new SentenceQualityCascade.Stage("cheap", rule(Decision.ABSTAIN, 0, log, "cheap")),
+            new SentenceQualityCascade.Stage("medium", rule(Decision.ACCEPT, 10, log, "medium"))));
+
+      assertEquals(Decision.ACCEPT, cascade.decide(new char[0], 0, 0, false));
+      assertEquals(Arrays.asList("cheap", "medium"), log);
+
+      List<String> names = new ArrayList<>();
+      for (SentenceQualityCascade.Stage stage : cascade.getStages()) {
+         names.add(stage.getName());
+      }
+      assertEquals(Arrays.asList("cheap", "medium", "expensive", SentenceQualityCascade.STOPWORDS), names);
+   }
+
+   @Test
+   public void testConfiguredCostTakesPrecedence() {
+      List<String> log = new ArrayList<>();
+      SentenceQualityCascade cascade = new SentenceQualityCascade(Arrays.asList(
+            new SentenceQualityCascade.Stage("a", rule(Decision.ABSTAIN, 0, log, "a"), 30),
+            new SentenceQualityCascade.Stage("b", rule(Decision.ABSTAIN, 20, log, "b"))));
+
+      assertEquals(Decision.ABSTAIN, cascade.decide(new char[0], 0, 0, true));
+      assertEquals(Arrays.asList("b", "a"), log);
+   }
+
+   @Test
+   public void testStatistics() {
+      List<String> log = new ArrayList<>();
+      SentenceQualityRule rule = new SentenceQualityRule() {
+         @Override
+         public Decision decide(char[] buffer, int start, int end) {
+            return end - start > 3 ? Decision.REJECT : Decision.ABSTAIN;
+         }
+
+         @Override
+         public int cost() {
+            return 0;
+         }
+      };
+      SentenceQualityCascade cascade = new SentenceQualityCascade(Arrays.asList(
+            new SentenceQualityCascade.Stage("long", rule),
+            new SentenceQualityCascade.Stage("never", rule(Decision.ACCEPT, 10, log, "never"))));
+
+      char[] buffer = "abcdef".toCharArray();
+      cascade.decide(buffer, 0, 6, true);
+      cascade.decide(buffer, 0, 5, false);
+      cascade.decide(buffer, 0, 2, false);
+      cascade.decide(buffer, 0, 1, false);
+
+      SentenceQualityCascade.Stage stage = cascade.getStages().get(0);
+      assertEquals(4, stage.getEvaluationCount());
+      assertEquals(0, stage.getAcceptCount());
+      assertEquals(2, stage.getRejectCount());
+      assertEquals(0.5, stage.getDecisionRate(), 0.0001);
+
+      SentenceQualityCascade.Stage next = cascade.getStages().get(1);
+      assertEquals(2, next.getEvaluationCount());
+      assertEquals(2, next.getAcceptCount());
+      assertEquals(1.0, next.getDecisionRate(), 0.0001);
+      assertEquals(0, cascade.getStages().get(2).getEvaluationCount());
+   }
+
+   @Test
+   public void testShortSentenceRule() {
+      SentenceQualityRule rule = new ShortSentenceRule(args("minSentenceLength", "5"));
+      assertEquals(Decision.ACCEPT, decide(rule, ""));
+      assertEquals(Decision.ACCEPT, decide(rule, "a b"));
+      assertEquals(Decision.ACCEPT, decide(rule, " a  b, c - 42 d. "));
+      assertEquals(Decision.ACCEPT, decide(rule, "Donaudampfschifffahrtsgesellschaft"));
+      assertEquals(Decision.ABSTAIN, decide(rule, "a b c d e"));
+      assertEquals(Decision.ABSTAIN, decide(rule, "a b c d e f g h i j"));
+   }
+
+   @Test
+   public void testDigitRatioRule() {
+      SentenceQualityRule rule = new DigitRatioRule(args("minRatio", "0.3"));
+      assertEquals(Decision.ACCEPT, decide(rule, "90% cotton, size 42"));
+      assertEquals(Decision.ABSTAIN, decide(rule, "a nice cotton shirt, size 42"));
+      assertEquals(Decision.ABSTAIN, decide(rule, "..."));
+   }
+
+   @Test
+   public void testUppercaseRatioRule() {
+      SentenceQualityRule rule = new UppercaseRatioRule(args("maxRatio", "0.6"));
+      assertEquals(Decision.REJECT, decide(rule, "JETZT KAUFEN UND SPAREN!"));
+      assertEquals(Decision.ABSTAIN, decide(rule, "Jetzt kaufen und sparen!"));
+      assertEquals(Decision.ABSTAIN, decide(rule, "TV HD"));
+      assertEquals(Decision.REJECT, decide(new UppercaseRatioRule(args("maxRatio", "0.6", "minLetters", "2")),
+            "TV HD"));
+   }
+
+   @Test
+   public void testShortSentenceRuleKeepsSameSentences() {
+      Random random = new Random(42);
+      for (AnalyzingSentenceTokenizer.Scanner scanner : AnalyzingSentenceTokenizer.Scanner.values()) {
+         SentenceFilter plain = AnalyzingSentenceTokenizerTest.filter(scanner);
+         SentenceFilter cascaded = AnalyzingSentenceTokenizerTest.filter(scanner);
+         cascaded.setQualityRules(new SentenceQualityCascade(Collections.singletonList(
+               new SentenceQualityCascade.Stage("shortSentence", new ShortSentenceRule(args("minSentenceLength",
+                     Integer.toString(AnalyzingSentenceTokenizerFactory.DEFAULT_MIN_SENTENCE_LENGTH)))))));
+
+         for (int i = 0; i < 500; i++) {
+            StringBuilder text = new StringBuilder();
+            int words = random.nextInt(40);
+            for (int j = 0; j < words; j++) {
+               text.append(WORDS[random.nextInt(WORDS.length)]);
+               int separator = random.nextInt(10);
+               text.append(separator == 0 ? ". " : separator == 1 ? ", " : "  ".substring(0, 1 + separator % 2));
+            }
+            assertArrayEquals(text.toString(), plain.filter(text), cascaded.filter(text));
+         }
+
+         SentenceQualityCascade.Stage stage = cascaded.getQualityRules().getStages().get(0);
+         assertEquals(true, stage.getAcceptCount() > 0);
+      }
+   }
+
+   @Test
+   public void testFactoryCreatesConfiguredRules() throws Exception {
+      AnalyzingSentenceTokenizerFactory factory = new AnalyzingSentenceTokenizerFactory(args(
+            "stopwordfile", "stopwords.txt",
+            "filter", "true",
+            "qualityRules", "uppercaseRatio,shortSentence,digitRatio",
+            "digitRatio.minRatio", "0.3",
+            "uppercaseRatio.maxRatio", "0.6",
+            "uppercaseRatio.cost", "5"));
+      factory.inform(loader());
+
+      List<String> names = new ArrayList<>();
+      for (SentenceQualityCascade.Stage stage : factory.getQualityRules().getStages()) {
+         names.add(stage.getName());
+      }
+      assertEquals(Arrays.asList("shortSentence", "uppercaseRatio", "digitRatio", SentenceQualityCascade.STOPWORDS),
+            names);
+      assertEquals(factory.getQualityRules(), factory.getSentenceFilter().getQualityRules());
+
+      // the digits decide before the stopwords
+      String text = "First sentence with some more words. Ignore this 12 34 56 78 90 ignore this. Last one here.";
+      assertEquals(3, factory.getSentenceFilter().filter(text).length / 2);
+      assertEquals(1, factory.getQualityRules().getStages().get(2).getAcceptCount());
+   }
+
+   @Test
+   public void testCustomRuleClass() throws Exception {
+      AnalyzingSentenceTokenizerFactory factory = new AnalyzingSentenceTokenizerFactory(args(
+            "stopwordfile", "stopwords.txt",
+            "filter", "true",
+            "qualityRules", RejectAllRule.class.getName()));
+      factory.inform(loader());
+
+      assertEquals(0, factory.getSentenceFilter().filter("First sentence here. Second sentence there.").length);
+   }
+
+   @Test
+   public void testRulesCanBeDisabled() throws Exception {
+      AnalyzingSentenceTokenizerFactory factory = new AnalyzingSentenceTokenizerFactory(args(
+            "stopwordfile", "stopwords.txt",
+            "qualityRules", ""));
+      factory.inform(loader());
+      assertEquals(null, factory.getQualityRules());
+   }
+
+   @Test
+   public void testRulesAreDisabledByDefault() throws Exception {
+      AnalyzingSentenceTokenizerFactory factory = new AnalyzingSentenceTokenizerFactory(args(
+            "stopwordfile", "stopwords.txt"));
+      factory.inform(loader());
+      assertEquals(null, factory.getQualityRules());
+      assertEquals(null, factory.getSentenceFilter().getQualityRules());
+   }
+
+}
@@ -0,0 +1,69 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.junit.Test;
+
+public class SentenceVerdictCacheTest {
+
+   private static final StopwordDictionary STOPWORDS = new CharArraySetDictionary(new CharArraySet(0, true));
+
+   private static long hash(String sentence, long seed) {
+      char[] chars = ("  " + sentence).toCharArray();
+      return SentenceVerdictCache.hash(chars, 2, chars.length, seed);
+   }
+
+   @Test
+   public void testCachedVerdictIsReturned() {
+      SentenceVerdictCache cache = new SentenceVerdictCache(16);
+      long seed = SentenceVerdictCache.seed(STOPWORDS, 0.2f, 5);
+
+      assertEquals(SentenceVerdictCache.MISS, cache.get(hash("Versandkostenfrei ab 20 Euro.", seed)));
+      cache.put(hash("Versandkostenfrei ab 20 Euro.", seed), false);
+      cache.put(hash("Aus reiner Baumwolle.", seed), true);
+
+      assertEquals(0, cache.get(hash("Versandkostenfrei ab 20 Euro.", seed)));
+      assertEquals(1, cache.get(hash("Aus reiner Baumwolle.", seed)));
+      assertEquals(2, cache.getHitCount());
+      assertEquals(1, cache.getMissCount());
+      assertEquals(2 / 3.0, cache.getHitRate(), 0.0001);
+   }
+
+   @Test
+   public void testSeedDependsOnStopwordsAndThresholds() {
+      long seed = SentenceVerdictCache.seed(STOPWORDS, 0.2f, 5);
+      assertNotEquals(seed, SentenceVerdictCache.seed(STOPWORDS, 0.3f, 5));
+      assertNotEquals(seed, SentenceVerdictCache.seed(STOPWORDS, 0.2f, 4));
+      assertNotEquals(seed,
+            SentenceVerdictCache.seed(new CharArraySetDictionary(new CharArraySet(0, true)), 0.2f, 5));
+      assertNotEquals(hash("Aus reiner Baumwolle.", seed),
+            hash("Aus reiner Baumwolle.", SentenceVerdictCache.seed(STOPWORDS, 0.3f, 5)));
+   }
+
+   @Test
+   public void testLeastRecentlyUsedVerdictIsEvicted() {
+      // a single set of four entries
+      SentenceVerdictCache cache = new SentenceVerdictCache(4);
+      assertEquals(4, cache.capacity());
+
+      for (int i = 0; i < 4; i++) {
+         cache.put(hash("Satz " + i, 0), true);
+      }
+      cache.get(hash("Satz 0", 0));
+      cache.put(hash("Satz 4", 0), true);
+
+      assertEquals(1, cache.get(hash("Satz 0", 0)));
+      assertEquals(SentenceVerdictCache.MISS, cache.get(hash("Satz 1", 0)));
+      assertEquals(1, cache.get(hash("Satz 4", 0)));
+   }
+
+   @Test
+   public void testCapacityIsRoundedUp() {
+      assertEquals(4, new SentenceVerdictCache(1).capacity());
+      assertEquals(8, new SentenceVerdictCache(5).capacity());
+      assertEquals(1024, new SentenceVerdictCache(1000).capacity());
+   }
+
+}
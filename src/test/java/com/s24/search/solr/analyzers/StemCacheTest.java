@@ -0,0 +1,135 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class StemCacheTest {
+
+   private static String get(StemCache cache, String term) {
+      StemmingBufferAttribute att = new StemmingBufferAttributeImpl();
+      char[] buffer = ("  " + term + " ").toCharArray();
+      if (!cache.get(buffer, 2, term.length(), att)) {
+         return null;
+      }
+      return new String(att.getStemmedToken(), 0, att.getStemmedTokenLength());
+   }
+
+   private static void put(StemCache cache, String term, String stem) {
+      char[] buffer = ("x" + term).toCharArray();
+      char[] stemBuffer = (stem + "   ").toCharArray();
+      cache.put(buffer, 1, term.length(), stemBuffer, stem.length());
+   }
+
+   @Test
+   public void testHitAndMiss() {
+      StemCache cache = new StemCache(16);
+      assertEquals(null, get(cache, "cats"));
+      put(cache, "cats", "cat");
+      assertEquals("cat", get(cache, "cats"));
+      assertEquals(null, get(cache, "cat"));
+      assertEquals(null, get(cache, "catsx"));
+
+      assertEquals(1, cache.getHitCount());
+      assertEquals(3, cache.getMissCount());
+      assertEquals(0.25, cache.getHitRate(), 0.0001);
+   }
+
+   @Test
+   public void testEmptyTerm() {
+      StemCache cache = new StemCache(4);
+      put(cache, "", "");
+      assertEquals("", get(cache, ""));
+   }
+
+   @Test
+   public void testCapacityIsRoundedUp() {
+      assertEquals(2, new StemCache(1).capacity());
+      assertEquals(4, new StemCache(3).capacity());
+      assertEquals(1024, new StemCache(1000).capacity());
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testRejectsEmptyCache() {
+      new StemCache(0);
+   }
+
+   @Test
+   public void testIsBounded() {
+      StemCache cache = new StemCache(64);
+      for (int i = 0; i < 10000; i++) {
+         put(cache, "term" + i, "stem" + i);
+      }
+
+      int cached = 0;
+      for (int i = 0; i < 10000; i++) {
+         String stem = get(cache, "term" + i);
+         if (stem != null) {
+            assertEquals("stem" + i, stem);
+            cached++;
+         }
+      }
+      assertTrue(cached > 0);
+      assertTrue(cached <= cache.capacity());
+   }
+
+   @Test
+   public void testKeepsRecentlyUsedEntryOfSet() {
+      // a single set of two entries
+      StemCache cache = new StemCache(2);
+      put(cache, "a", "1");
+      put(cache, "b", "2");
+      assertEquals("1", get(cache, "a"));
+      put(cache, "c", "3");
+      assertEquals("1", get(cache, "a"));
+      assertEquals(null, get(cache, "b"));
+      assertEquals("3", get(cache, "c"));
+   }
+
+   @Test
+   public void testClear() {
+      StemCache cache = new StemCache(16);
+      put(cache, "cats", "cat");
+      cache.clear();
+      assertFalse(get(cache, "cats") != null);
+   }
+
+   @Test
+   public void testConcurrentAccess() throws Exception {
+      StemCache cache = new StemCache(128);
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+         List<Future<?>> futures = new ArrayList<>();
+         for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit((Callable<Void>) () -> {
+               for (int i = 0; i < 20000; i++) {
+                  String term = "term" + (i % 500);
+                  String stem = get(cache, term);
+                  if (stem == null) {
+                     put(cache, term, "stem" + (i % 500));
+                  } else {
+                     assertEquals("stem" + (i % 500), stem);
+                  }
+               }
+               return null;
+            }));
+         }
+         for (Future<?> future : futures) {
+            future.get();
+         }
+      } finally {
+         executor.shutdown();
+      }
+      assertEquals(80000, cache.getHitCount() + cache.getMissCount());
+   }
+
+}
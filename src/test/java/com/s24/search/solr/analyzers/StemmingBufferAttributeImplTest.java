@@ -0,0 +1,107 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.util.AttributeSource;
+import org.junit.Test;
+
+public class StemmingBufferAttributeImplTest {
+
+   private static StemmingBufferAttributeImpl attribute(String original, String stemmed) {
+      StemmingBufferAttributeImpl attribute = new StemmingBufferAttributeImpl();
+      attribute.setOriginalToken(original.toCharArray(), original.length());
+      attribute.setStemmedToken(stemmed.toCharArray(), stemmed.length());
+      return attribute;
+   }
+
+   @Test
+   public void testGrowsWithOversize() {
+      StemmingBufferAttributeImpl attribute = new StemmingBufferAttributeImpl();
+      attribute.setOriginalToken(new char[17], 17);
+      char[] buffer = attribute.getOriginalToken();
+      assertTrue(buffer.length > 17);
+
+      attribute.setOriginalToken(new char[18], 18);
+      assertSame(buffer, attribute.getOriginalToken());
+   }
+
+   @Test
+   public void testViews() {
+      StemmingBufferAttributeImpl attribute = attribute("running", "run");
+      assertEquals("running", attribute.getOriginalTokenRef().toString());
+      assertEquals("run", attribute.getStemmedTokenRef().toString());
+
+      attribute.setStemmedToken("runs".toCharArray(), 4);
+      assertSame(attribute.getStemmedTokenRef(), attribute.getStemmedTokenRef());
+      assertEquals("runs", attribute.getStemmedTokenRef().toString());
+   }
+
+   @Test
+   public void testCopyToReusesBuffers() {
+      StemmingBufferAttributeImpl source = attribute("running", "run");
+      source.setStemmedTokenHasBeenEmitted(true);
+      StemmingBufferAttributeImpl target = attribute("something longer", "something");
+      char[] originalBuffer = target.getOriginalToken();
+      char[] stemmedBuffer = target.getStemmedToken();
+
+      source.copyTo(target);
+      assertEquals(source, target);
+      assertSame(originalBuffer, target.getOriginalToken());
+      assertSame(stemmedBuffer, target.getStemmedToken());
+   }
+
+   @Test
+   public void testCloneIsIndependent() {
+      StemmingBufferAttributeImpl attribute = attribute("running", "run");
+      StemmingBufferAttributeImpl clone = attribute.clone();
+      assertEquals(attribute, clone);
+      assertEquals(attribute.hashCode(), clone.hashCode());
+      assertNotSame(attribute.getOriginalToken(), clone.getOriginalToken());
+      assertNotSame(attribute.getStemmedTokenRef(), clone.getStemmedTokenRef());
+
+      attribute.setStemmedToken("ran".toCharArray(), 3);
+      assertEquals("run", clone.getStemmedTokenRef().toString());
+      assertNotEquals(attribute, clone);
+   }
+
+   @Test
+   public void testEqualsIgnoresUnusedBuffer() {
+      StemmingBufferAttributeImpl attribute = attribute("running", "run");
+      attribute.setOriginalToken("cats".toCharArray(), 4);
+      attribute.setStemmedToken("cat".toCharArray(), 3);
+      assertEquals(attribute("cats", "cat"), attribute);
+      assertEquals(attribute("cats", "cat").hashCode(), attribute.hashCode());
+      assertNotEquals(attribute("cats", "cats"), attribute);
+   }
+
+   @Test
+   public void testCaptureAndRestoreState() {
+      AttributeSource source = new AttributeSource();
+      StemmingBufferAttribute attribute = source.addAttribute(StemmingBufferAttribute.class);
+      attribute.setOriginalToken("running".toCharArray(), 7);
+      attribute.setStemmedToken("run".toCharArray(), 3);
+      AttributeSource.State state = source.captureState();
+
+      attribute.clear();
+      source.restoreState(state);
+      assertEquals("running", attribute.getOriginalTokenRef().toString());
+      assertEquals("run", attribute.getStemmedTokenRef().toString());
+   }
+
+   @Test
+   public void testReflectsUsedChars() {
+      Map<String, Object> reflected = new LinkedHashMap<>();
+      attribute("running", "run").reflectWith((type, key, value) -> reflected.put(key, value));
+      assertEquals("run", reflected.get("stemmedToken"));
+      assertEquals("running", reflected.get("originalToken"));
+      assertEquals(false, reflected.get("stemmedTokenHasBeenEmitted"));
+   }
+
+}
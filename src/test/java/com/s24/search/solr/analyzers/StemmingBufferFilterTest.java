@@ -0,0 +1,196 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.analysis.util.TokenFilterFactory;
+import org.junit.Test;
+
+import com.s24.util.lucene.test.AbstractTokenFilterTest;
+
+public class StemmingBufferFilterTest extends AbstractTokenFilterTest {
+
+   private TokenStream stream(String input) throws Exception {
+      Map<String, String> args = new HashMap<>();
+      args.put("stemmer", "porterStem");
+      return stream(new StemmingBufferFilterFactory(args), input);
+   }
+
+   private TokenStream stream(StemmingBufferFilterFactory factory, String input) throws Exception {
+      Tokenizer tokenizer = new WhitespaceTokenizer();
+      tokenizer.setReader(new StringReader(input));
+      TokenStream stream = factory.create(tokenizer);
+      stream.reset();
+      return stream;
+   }
+
+   @Test
+   public void testEmitsOriginalAndStemmedForm() throws Exception {
+      assertTokenStream(stream("running cats the"),
+            token(term("running"), offsets(0, 7), positionIncrement(1), stemmingBuffer("running", "run")),
+            token(term("run"), offsets(0, 7), positionIncrement(0), stemmingBuffer("running", "run")),
+            token(term("cats"), offsets(8, 12), positionIncrement(1)),
+            token(term("cat"), offsets(8, 12), positionIncrement(0)),
+            token(term("the"), offsets(13, 16), positionIncrement(1), stemmingBuffer("the", "the")));
+   }
+
+   @Test
+   public void testCachedStemsAreEmitted() throws Exception {
+      Map<String, String> args = new HashMap<>();
+      args.put("stemmer", "porterStem");
+      args.put("cacheSize", "1024");
+      StemmingBufferFilterFactory factory = new StemmingBufferFilterFactory(args);
+      assertNotNull(factory.getStemCache());
+
+      for (int i = 0; i < 2; i++) {
+         assertTokenStream(stream(factory, "running cats the cats"),
+               token(term("running"), positionIncrement(1), stemmingBuffer("running", "run")),
+               token(term("run"), positionIncrement(0), stemmingBuffer("running", "run")),
+               token(term("cats"), positionIncrement(1)),
+               token(term("cat"), positionIncrement(0)),
+               token(term("the"), positionIncrement(1), stemmingBuffer("the", "the")),
+               token(term("cats"), positionIncrement(1)),
+               token(term("cat"), positionIncrement(0)));
+      }
+      assertEquals(5, factory.getStemCache().getHitCount());
+      assertEquals(3, factory.getStemCache().getMissCount());
+   }
+
+   @Test
+   public void testCacheIsDisabledByDefault() throws Exception {
+      Map<String, String> args = new HashMap<>();
+      args.put("stemmer", "porterStem");
+      assertNull(new StemmingBufferFilterFactory(args).getStemCache());
+   }
+
+   @Test
+   public void testStreamIsReusable() throws Exception {
+      Map<String, String> args = new HashMap<>();
+      args.put("stemmer", "porterStem");
+      Tokenizer tokenizer = new WhitespaceTokenizer();
+      TokenStream stream = new StemmingBufferFilterFactory(args).create(tokenizer);
+      for (String input : new String[] { "cats", "dogs" }) {
+         tokenizer.setReader(new StringReader(input));
+         stream.reset();
+         assertTokenStream(stream, token(term(input), positionIncrement(1)),
+               token(term(input.substring(0, 3)), positionIncrement(0)));
+         stream.end();
+         stream.close();
+      }
+   }
+
+   @Test
+   public void testOnlyFirstOfSeveralStemsIsEmitted() throws Exception {
+      Tokenizer tokenizer = new WhitespaceTokenizer();
+      tokenizer.setReader(new StringReader("cats dogs"));
+      TokenStream stream = new StemmingBufferFilter(tokenizer, new TwoStemsFilterFactory());
+      stream.reset();
+      assertTokenStream(stream,
+            token(term("cats"), positionIncrement(1)),
+            token(term("cats1"), positionIncrement(0), stemmingBuffer("cats", "cats1")),
+            token(term("dogs"), positionIncrement(1)),
+            token(term("dogs1"), positionIncrement(0), stemmingBuffer("dogs", "dogs1")));
+   }
+
+   @Test
+   public void testHunspellStemsEveryTermFromCleanState() throws Exception {
+      Map<String, String> args = new HashMap<>();
+      args.put("stemmer", "hunspellStem");
+      args.put("dictionary", "hunspell/test.dic");
+      args.put("affix", "hunspell/test.aff");
+      StemmingBufferFilterFactory factory = new StemmingBufferFilterFactory(args);
+      factory.inform(new ClasspathResourceLoader(getClass().getClassLoader()));
+
+      // "cats" has the two stems "cat" and "ca"
+      List<String> cats = terms(factory, "cats");
+      assertEquals(2, cats.size());
+      assertEquals("cats", cats.get(0));
+      assertTrue(cats.get(1).equals("cat") || cats.get(1).equals("ca"));
+      assertEquals(Arrays.asList("dogs", "dog"), terms(factory, "dogs"));
+
+      List<String> expected = new ArrayList<>();
+      expected.addAll(cats);
+      expected.addAll(terms(factory, "dogs"));
+      expected.addAll(cats);
+      expected.addAll(cats);
+      assertEquals(expected, terms(factory, "cats dogs cats cats"));
+   }
+
+   private static List<String> terms(StemmingBufferFilterFactory factory, String input) throws IOException {
+      Tokenizer tokenizer = new WhitespaceTokenizer();
+      tokenizer.setReader(new StringReader(input));
+      List<String> terms = new ArrayList<>();
+      try (TokenStream stream = factory.create(tokenizer)) {
+         CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+         stream.reset();
+         while (stream.incrementToken()) {
+            terms.add(termAtt.toString());
+         }
+         stream.end();
+      }
+      return terms;
+   }
+
+   /**
+    * Stemmer that emits two stems per token, like Hunspell does for ambiguous words. Fails if it is consumed beyond
+    * its end without a reset, as stemmers with state across tokens may break then.
+    */
+   private static final class TwoStemsFilterFactory extends TokenFilterFactory {
+
+      TwoStemsFilterFactory() {
+         super(new HashMap<>());
+      }
+
+      @Override
+      public TokenStream create(TokenStream input) {
+         return new TokenFilter(input) {
+            private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+            private String pending;
+            private boolean exhausted;
+
+            @Override
+            public boolean incrementToken() throws IOException {
+               if (exhausted) {
+                  throw new IllegalStateException("incrementToken() called after the end of the stream");
+               }
+               if (pending != null) {
+                  termAtt.setEmpty().append(pending);
+                  pending = null;
+                  return true;
+               }
+               if (!input.incrementToken()) {
+                  exhausted = true;
+                  return false;
+               }
+               pending = termAtt.toString() + "2";
+               termAtt.append('1');
+               return true;
+            }
+
+            @Override
+            public void reset() throws IOException {
+               super.reset();
+               pending = null;
+               exhausted = false;
+            }
+         };
+      }
+   }
+
+}
@@ -0,0 +1,177 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.junit.After;
+import org.junit.Test;
+
+public class StopwordSetCacheTest {
+
+   private final Object core1 = new Object();
+   private final Object core2 = new Object();
+
+   @After
+   public void tearDown() {
+      StopwordSetCache.release(core1);
+      StopwordSetCache.release(core2);
+   }
+
+   static ResourceLoader loader(String... namesAndContents) {
+      final Map<String, String> resources = new HashMap<>();
+      for (int i = 0; i < namesAndContents.length; i += 2) {
+         resources.put(namesAndContents[i], namesAndContents[i + 1]);
+      }
+      return new ResourceLoader() {
+         @Override
+         public InputStream openResource(String resource) throws java.io.IOException {
+            if (!resources.containsKey(resource)) {
+               throw new FileNotFoundException(resource);
+            }
+            return new ByteArrayInputStream(resources.get(resource).getBytes(StandardCharsets.UTF_8));
+         }
+
+         @Override
+         public <T> Class<? extends T> findClass(String cname, Class<T> expectedType) {
+            throw new UnsupportedOperationException();
+         }
+
+         @Override
+         public <T> T newInstance(String cname, Class<T> expectedType) {
+            throw new UnsupportedOperationException();
+         }
+      };
+   }
+
+   @Test
+   public void testSameFilesAreShared() throws Exception {
+      int size = StopwordSetCache.size();
+      StopwordDictionary set1 = StopwordSetCache.acquire(core1, loader("stopwords.txt", "# comment\nund\nOder\n"),
+            Arrays.asList("stopwords.txt"), true);
+      StopwordDictionary set2 = StopwordSetCache.acquire(core2, loader("stopwords.txt", "# comment\nund\nOder\n"),
+            Arrays.asList("stopwords.txt"), true);
+
+      assertSame(set1, set2);
+      assertEquals(2, set1.size());
+      assertTrue(set1.contains("oder".toCharArray(), 0, 4));
+      assertEquals(size + 1, StopwordSetCache.size());
+      assertTrue(StopwordSetCache.ramBytesUsed() > 0);
+   }
+
+   @Test
+   public void testChangedContentIsNotShared() throws Exception {
+      StopwordDictionary set1 = StopwordSetCache.acquire(core1, loader("stopwords.txt", "und\n"),
+            Arrays.asList("stopwords.txt"), true);
+      StopwordDictionary set2 = StopwordSetCache.acquire(core2, loader("stopwords.txt", "und\noder\n"),
+            Arrays.asList("stopwords.txt"), true);
+
+      assertNotSame(set1, set2);
+   }
+
+   @Test
+   public void testSetIsEvictedWithLastReference() throws Exception {
+      int size = StopwordSetCache.size();
+      StopwordSetCache.acquire(core1, loader("a.txt", "und\n", "b.txt", "oder\n"), Arrays.asList("a.txt", "b.txt"),
+            true);
+      StopwordSetCache.acquire(core2, loader("a.txt", "und\n", "b.txt", "oder\n"), Arrays.asList("a.txt", "b.txt"),
+            true);
+
+      StopwordSetCache.release(core1);
+      assertEquals(size + 1, StopwordSetCache.size());
+      StopwordSetCache.release(core2);
+      assertEquals(size, StopwordSetCache.size());
+   }
+
+   @Test
+   public void testClosedFactoryReleasesSet() throws Exception {
+      int size = StopwordSetCache.size();
+      Map<String, String> args = new HashMap<>();
+      args.put("stopwordfile", "closed.txt");
+      AnalyzingSentenceTokenizerFactory factory = new AnalyzingSentenceTokenizerFactory(args);
+      factory.inform(loader("closed.txt", "und\noder\naber\n"));
+      assertEquals(size + 1, StopwordSetCache.size());
+
+      factory.close();
+      assertEquals(size, StopwordSetCache.size());
+   }
+
+   @Test
+   public void testPackedFileIsShared() throws Exception {
+      Path file = Files.createTempFile("stopwords", ".dic");
+      try {
+         PackedStopwordDictionary.build(Arrays.asList("und", "Oder"), true).write(file);
+
+         StopwordDictionary set1 = StopwordSetCache.acquire(core1, loader(), Arrays.asList(file.toString()), true,
+               StopwordDictionary.Format.PACKED);
+         StopwordDictionary set2 = StopwordSetCache.acquire(core2, loader(), Arrays.asList(file.toString()), true,
+               StopwordDictionary.Format.PACKED);
+
+         assertSame(set1, set2);
+         assertTrue(set1 instanceof PackedStopwordDictionary);
+         assertTrue(set1.contains("ODER".toCharArray(), 0, 4));
+      } finally {
+         Files.delete(file);
+      }
+   }
+
+   @Test
+   public void testConcurrentLoadsShareSingleSet() throws Exception {
+      StringBuilder words = new StringBuilder();
+      for (int i = 0; i < 50000; i++) {
+         words.append("wort").append(i).append('\n');
+      }
+      String content = words.toString();
+
+      int size = StopwordSetCache.size();
+      List<Object> owners = new ArrayList<>();
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      try {
+         CountDownLatch start = new CountDownLatch(1);
+         List<Future<StopwordDictionary>> sets = new ArrayList<>();
+         for (int i = 0; i < 8; i++) {
+            Object owner = new Object();
+            owners.add(owner);
+            sets.add(executor.submit((Callable<StopwordDictionary>) () -> {
+               start.await();
+               return StopwordSetCache.acquire(owner, loader("stopwords.txt", content),
+                     Arrays.asList("stopwords.txt"), true);
+            }));
+         }
+         start.countDown();
+
+         StopwordDictionary first = sets.get(0).get();
+         for (Future<StopwordDictionary> set : sets) {
+            assertSame(first, set.get());
+         }
+         assertEquals(50000, first.size());
+         assertEquals(size + 1, StopwordSetCache.size());
+      } finally {
+         executor.shutdown();
+         for (Object owner : owners) {
+            StopwordSetCache.release(owner);
+         }
+      }
+      assertEquals(size, StopwordSetCache.size());
+   }
+
+}
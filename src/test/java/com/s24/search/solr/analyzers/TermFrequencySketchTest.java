@@ -0,0 +1,193 @@
+package com.s24.search.solr.analyzers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TermFrequencySketchTest {
+
+   private static final String[] CATALOGUE = {
+         "Rote Schuhe aus Leder. Versandkostenfrei bestellen und sparen.",
+         "Blaue Jeans mit Stretch. Versandkostenfrei bestellen und sparen.",
+         "Waschmaschine mit 8kg Fassungsvermögen. Jetzt versandkostenfrei bestellen.",
+         "Sneaker aus Canvas, Größe 42. Versandkostenfrei bestellen und sparen.",
+         "Bettwäsche aus Baumwolle, 155x220.",
+   };
+
+   private static int documentFrequency(TermFrequencySketch sketch, String word) {
+      return sketch.documentFrequency(word.toCharArray(), 0, word.length());
+   }
+
+   private static double informativeness(TermFrequencySketch sketch, String sentence) {
+      return sketch.meanInformativeness(sentence.toCharArray(), 0, sentence.length());
+   }
+
+   private static TermFrequencySketch.Builder catalogue() {
+      TermFrequencySketch.Builder builder = new TermFrequencySketch.Builder(1024);
+      for (String document : CATALOGUE) {
+         builder.addDocument(document);
+      }
+      return builder;
+   }
+
+   @Test
+   public void testCountsDocumentFrequencies() {
+      TermFrequencySketch sketch = catalogue().build();
+      assertEquals(5, sketch.documents());
+      assertEquals(1024, sketch.width());
+
+      // counted once per document, ignoring case
+      assertEquals(4, documentFrequency(sketch, "versandkostenfrei"));
+      assertEquals(4, documentFrequency(sketch, "Versandkostenfrei"));
+      assertEquals(2, documentFrequency(sketch, "aus"));
+      assertEquals(1, documentFrequency(sketch, "schuhe"));
+      assertEquals(0, documentFrequency(sketch, "fahrrad"));
+
+      // digits are dropped, but do not split words
+      assertEquals(1, documentFrequency(sketch, "kg"));
+      assertEquals(1, documentFrequency(sketch, "x"));
+   }
+
+   @Test
+   public void testNeverUnderestimates() {
+      TermFrequencySketch.Builder builder = new TermFrequencySketch.Builder(16);
+      Map<String, Integer> frequencies = new HashMap<>();
+      for (int i = 0; i < 500; i++) {
+         String word = "wort" + (char) ('a' + i % 26) + (char) ('a' + i % 7);
+         builder.addDocument(word + " " + word);
+         frequencies.merge(word, 1, Integer::sum);
+      }
+
+      TermFrequencySketch sketch = builder.build();
+      for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+         assertTrue(documentFrequency(sketch, frequency.getKey()) >= frequency.getValue());
+      }
+   }
+
+   @Test
+   public void testInformativeness() {
+      TermFrequencySketch sketch = catalogue().build();
+      assertEquals(1.0, sketch.informativeness(0), 0.0001);
+      assertEquals(0.0, sketch.informativeness(5), 0.0001);
+      assertEquals(0.0, sketch.informativeness(10), 0.0001);
+
+      assertTrue(informativeness(sketch, "Versandkostenfrei bestellen und sparen.") < 0.2);
+      assertTrue(informativeness(sketch, "Rote Schuhe aus Leder.") > 0.5);
+      assertEquals(-1, informativeness(sketch, "42, 155."), 0.0001);
+   }
+
+   @Test
+   public void testMergeIsSameAsSequential() {
+      TermFrequencySketch.Builder first = new TermFrequencySketch.Builder(1024);
+      TermFrequencySketch.Builder second = new TermFrequencySketch.Builder(1024);
+      for (int i = 0; i < CATALOGUE.length; i++) {
+         (i % 2 == 0 ? first : second).addDocument(CATALOGUE[i]);
+      }
+      TermFrequencySketch merged = first.merge(second).build();
+      TermFrequencySketch sequential = catalogue().build();
+
+      assertEquals(sequential.documents(), merged.documents());
+      for (String word : Arrays.asList("versandkostenfrei", "aus", "schuhe", "bettwäsche", "fahrrad")) {
+         assertEquals(word, documentFrequency(sequential, word), documentFrequency(merged, word));
+      }
+   }
+
+   @Test
+   public void testFileIsMemoryMapped() throws Exception {
+      Path file = Files.createTempFile("terms", ".sketch");
+      try {
+         catalogue().write(file);
+         TermFrequencySketch sketch = TermFrequencySketch.open(file);
+         assertEquals(5, sketch.documents());
+         assertEquals(1024, sketch.width());
+         assertEquals(4, documentFrequency(sketch, "versandkostenfrei"));
+      } finally {
+         Files.delete(file);
+      }
+   }
+
+   @Test(expected = IOException.class)
+   public void testRejectsOtherFiles() throws Exception {
+      Path file = Files.createTempFile("terms", ".sketch");
+      try {
+         Files.write(file, "not a sketch at all, but long enough".getBytes(StandardCharsets.UTF_8));
+         TermFrequencySketch.open(file);
+      } finally {
+         Files.delete(file);
+      }
+   }
+
+   @Test
+   public void testCommandLineReadsCorpusDump() throws Exception {
+      Path corpus = Files.createTempFile("corpus", ".txt");
+      Path file = Files.createTempFile("terms", ".sketch");
+      try {
+         List<String> lines = new ArrayList<>();
+         for (int i = 0; i < 200; i++) {
+            lines.addAll(Arrays.asList(CATALOGUE));
+         }
+         Files.write(corpus, lines, StandardCharsets.UTF_8);
+
+         TermFrequencySketch.main(new String[] { file.toString(), "4096", corpus.toString() });
+         TermFrequencySketch sketch = TermFrequencySketch.open(file);
+         assertEquals(1000, sketch.documents());
+         assertEquals(800, documentFrequency(sketch, "versandkostenfrei"));
+      } finally {
+         Files.delete(corpus);
+         Files.delete(file);
+      }
+   }
+
+   @Test
+   public void testRuleRejectsCommonSentences() {
+      InformativenessRule rule = new InformativenessRule(catalogue().build(), 0.2f);
+      char[] junk = "Versandkostenfrei bestellen und sparen.".toCharArray();
+      char[] signal = "Rote Schuhe aus Leder.".toCharArray();
+      assertEquals(SentenceQualityRule.Decision.REJECT, rule.decide(junk, 0, junk.length));
+      assertEquals(SentenceQualityRule.Decision.ABSTAIN, rule.decide(signal, 0, signal.length));
+   }
+
+   @Test
+   public void testFactoryDropsCommonSentences() throws Exception {
+      Path file = Files.createTempFile("terms", ".sketch");
+      try {
+         catalogue().write(file);
+         String text = "Sneaker aus Canvas mit weißer Sohle. Versandkostenfrei bestellen und sparen.";
+
+         Map<String, String> args = new HashMap<>();
+         args.put("stopwordfile", "stopwords.txt");
+         args.put("filter", "true");
+         AnalyzingSentenceTokenizerFactory stopwordsOnly = new AnalyzingSentenceTokenizerFactory(
+               new HashMap<>(args));
+         stopwordsOnly.inform(StopwordSetCacheTest.loader("stopwords.txt", "und\nmit\n"));
+         assertEquals(2, stopwordsOnly.getSentenceFilter().filter(text).length / 2);
+
+         args.put("termSketch", file.toString());
+         args.put("minInformativeness", "0.2");
+         AnalyzingSentenceTokenizerFactory factory = new AnalyzingSentenceTokenizerFactory(args);
+         factory.inform(StopwordSetCacheTest.loader("stopwords.txt", "und\nmit\n"));
+         assertEquals(5, factory.getTermSketch().documents());
+         int[] kept = factory.getSentenceFilter().filter(text);
+         assertEquals(1, kept.length / 2);
+         assertEquals(0, kept[0]);
+
+         SentenceQualityCascade.Stage stage = factory.getQualityRules().getStages().get(0);
+         assertEquals("informativeness", stage.getName());
+         assertEquals(1, stage.getRejectCount());
+      } finally {
+         Files.delete(file);
+      }
+   }
+
+}